@@ -0,0 +1,30 @@
+package hudson.plugins.doxygen.benchmark;
+
+import org.junit.Test;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH benchmarks of the plugin.
+ *
+ * Only executed by the <code>benchmark</code> Maven profile: <code>mvn test -Pbenchmark</code>.
+ * A subset can be selected with <code>-Dbenchmark.include=&lt;regexp&gt;</code>.
+ */
+public class BenchmarkRunner {
+
+    @Test
+    public void runJmhBenchmarks() throws Exception {
+        String include = System.getProperty("benchmark.include", getClass().getPackage().getName() + ".*Benchmark.*");
+        Options options = new OptionsBuilder()
+                .include(include)
+                .forks(1)
+                .shouldFailOnError(true)
+                .shouldDoGC(true)
+                .resultFormat(ResultFormatType.JSON)
+                .result("target/jmh-report.json")
+                .build();
+        new Runner(options).run();
+    }
+}
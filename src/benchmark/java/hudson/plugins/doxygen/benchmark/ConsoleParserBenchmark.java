@@ -0,0 +1,98 @@
+package hudson.plugins.doxygen.benchmark;
+
+import hudson.plugins.doxygen.DoxygenConsoleParser;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import jenkins.benchmark.jmh.JmhBenchmarkState;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the throughput of {@link DoxygenConsoleParser} on a synthetic but realistic doxygen log.
+ *
+ * The console notes are signed with the instance key, so this runs against a temporary Jenkins.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConsoleParserBenchmark {
+
+    /** Number of lines of the generated log */
+    private static final int LINES = 100000;
+
+    /** Size of the writes done by the launcher pipe */
+    private static final int CHUNK = 8192;
+
+    public static class LogState extends JmhBenchmarkState {
+
+        /** Percentage of warning lines in the log */
+        @Param({"0", "5", "50"})
+        public int warningRatio;
+
+        byte[] log;
+
+        @Override
+        public void setup() throws Exception {
+            Random random = new Random(42);
+            StringBuilder sb = new StringBuilder(LINES * 80);
+            for (int i = 0; i < LINES; i++) {
+                int module = random.nextInt(50);
+                int file = random.nextInt(200);
+                if (random.nextInt(100) < warningRatio) {
+                    if (random.nextBoolean()) {
+                        sb.append("/var/lib/jenkins/workspace/project/src/module").append(module).append("/file").append(file)
+                          .append(".h:").append(random.nextInt(2000) + 1)
+                          .append(": warning: Member process(int count) (function) of class ns::Class").append(file)
+                          .append(" is not documented.\n");
+                    } else {
+                        sb.append("warning: documented symbol 'ns::Class").append(file)
+                          .append("::helper' was not declared or defined.\n");
+                    }
+                } else if (random.nextInt(1000) == 0) {
+                    sb.append("error: Tag file 'module").append(module).append(".tag' does not exist or is not a file. Skipping it...\n");
+                } else {
+                    switch (random.nextInt(3)) {
+                        case 0:
+                            sb.append("Parsing file /var/lib/jenkins/workspace/project/src/module").append(module)
+                              .append("/file").append(file).append(".h...\n");
+                            break;
+                        case 1:
+                            sb.append("Generating docs for compound ns::Class").append(file).append("...\n");
+                            break;
+                        default:
+                            sb.append("Generating dependency graph for directory /var/lib/jenkins/workspace/project/src/module")
+                              .append(module).append('\n');
+                    }
+                }
+            }
+            log = sb.toString().getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    @Benchmark
+    public void parseLog(LogState state, Blackhole blackhole) throws IOException {
+        DoxygenConsoleParser parser = new DoxygenConsoleParser(OutputStream.nullOutputStream(), StandardCharsets.UTF_8);
+        byte[] log = state.log;
+        for (int off = 0; off < log.length; off += CHUNK) {
+            parser.write(log, off, Math.min(CHUNK, log.length - off));
+        }
+        parser.close();
+        blackhole.consume(parser.getNumberOfWarnings());
+        blackhole.consume(parser.getNumberOfErrors());
+    }
+}
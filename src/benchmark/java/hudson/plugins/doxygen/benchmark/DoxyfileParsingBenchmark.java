@@ -0,0 +1,115 @@
+package hudson.plugins.doxygen.benchmark;
+
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.Util;
+import hudson.plugins.doxygen.DoxygenArchiver.DoxygenArchiverDescriptor;
+import hudson.plugins.doxygen.DoxygenDirectoryParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the Doxyfile parsing done by {@link DoxygenDirectoryParser} when publishing.
+ *
+ * <ul>
+ * <li><code>small</code>: a typical hand written Doxyfile</li>
+ * <li><code>large</code>: a full <code>doxygen -g</code> style Doxyfile with long continued lists</li>
+ * <li><code>included</code>: a chain of nested <code>@INCLUDE</code> files</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DoxyfileParsingBenchmark {
+
+    private static final int INCLUDE_DEPTH = 25;
+
+    @Param({"small", "large", "included"})
+    public String doxyfile;
+
+    private File workspace;
+    private EnvVars environment;
+
+    @Setup
+    public void setup() throws IOException {
+        workspace = Util.createTempDir();
+        environment = new EnvVars("DOC_OUT", "doc-out");
+
+        StringBuilder content = new StringBuilder();
+        if ("small".equals(doxyfile)) {
+            appendKeys(content, 0, 30);
+        } else if ("large".equals(doxyfile)) {
+            appendKeys(content, 0, 300);
+            appendList(content, "INPUT", "src/module", ".h", 2000);
+            appendList(content, "FILE_PATTERNS", "*.", "", 40);
+            appendList(content, "EXCLUDE_PATTERNS", "*/generated/", "/*", 200);
+        } else {
+            for (int i = 0; i < INCLUDE_DEPTH; i++) {
+                StringBuilder included = new StringBuilder();
+                appendKeys(included, i * 10, 10);
+                if (i + 1 < INCLUDE_DEPTH) {
+                    included.append("@INCLUDE = included_").append(i + 1).append('\n');
+                }
+                write("included_" + i, included);
+            }
+            content.append("@INCLUDE = included_0\n");
+        }
+        content.append("OUTPUT_DIRECTORY = $(DOC_OUT)\n");
+        content.append("GENERATE_HTML = YES\n");
+        content.append("HTML_OUTPUT = html\n");
+        write("Doxyfile", content);
+
+        new File(workspace, "doc-out/html").mkdirs();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException, InterruptedException {
+        new FilePath(workspace).deleteRecursive();
+    }
+
+    @Benchmark
+    public FilePath parseDoxyfile() throws IOException {
+        DoxygenDirectoryParser parser = new DoxygenDirectoryParser(
+                DoxygenArchiverDescriptor.DOXYGEN_DOXYFILE_PUBLISHTYPE, "Doxyfile", null, null, environment);
+        return parser.invoke(workspace, null);
+    }
+
+    private void write(String name, CharSequence content) throws IOException {
+        Files.write(new File(workspace, name).toPath(), content.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void appendKeys(StringBuilder sb, int first, int count) {
+        for (int i = first; i < first + count; i++) {
+            sb.append("# Documentation of the option number ").append(i).append(" = with a separator\n");
+            sb.append("OPTION_").append(i).append("            = \"value with spaces ").append(i).append("\"\n");
+        }
+    }
+
+    private static void appendList(StringBuilder sb, String key, String prefix, String suffix, int count) {
+        sb.append(key).append("            = ");
+        for (int i = 0; i < count; i++) {
+            sb.append(prefix).append(i).append(suffix);
+            sb.append(i + 1 < count ? " \\\n                         " : "\n");
+        }
+    }
+}
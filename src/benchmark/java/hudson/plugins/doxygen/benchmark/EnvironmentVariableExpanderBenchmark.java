@@ -0,0 +1,54 @@
+package hudson.plugins.doxygen.benchmark;
+
+import hudson.EnvVars;
+import hudson.plugins.doxygen.DoxygenEnvironmentVariableExpander;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the expansion of <code>$(VAR)</code> references in Doxyfile values.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EnvironmentVariableExpanderBenchmark {
+
+    @Param({"0", "1", "4"})
+    public int variables;
+
+    private DoxygenEnvironmentVariableExpander expander;
+    private String value;
+
+    @Setup
+    public void setup() {
+        EnvVars environment = new EnvVars();
+        StringBuilder sb = new StringBuilder("/workspace/project");
+        for (int i = 0; i < variables; i++) {
+            environment.put("DOXY_VAR_" + i, "/expanded/path" + i);
+            sb.append("/$( DOXY_VAR_").append(i).append(" )");
+        }
+        sb.append("/html");
+        expander = new DoxygenEnvironmentVariableExpander(environment);
+        value = sb.toString();
+    }
+
+    @Benchmark
+    public String expand() {
+        return expander.expand(value);
+    }
+}
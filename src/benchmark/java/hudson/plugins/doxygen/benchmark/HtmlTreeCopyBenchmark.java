@@ -0,0 +1,86 @@
+package hudson.plugins.doxygen.benchmark;
+
+import hudson.FilePath;
+import hudson.Util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the local copy and the tar packing of a synthetic doxygen HTML tree,
+ * i.e. the work done by {@link hudson.plugins.doxygen.DoxygenArchiver} when publishing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+public class HtmlTreeCopyBenchmark {
+
+    /** Number of files per generated directory, as doxygen does with CREATE_SUBDIRS */
+    private static final int FILES_PER_DIRECTORY = 500;
+
+    @Param({"1000", "10000", "100000"})
+    public int files;
+
+    private FilePath source;
+    private FilePath target;
+
+    @Setup(Level.Trial)
+    public void createTree() throws IOException {
+        File root = Util.createTempDir();
+        File html = new File(root, "html");
+        for (int i = 0; i < files; i++) {
+            File dir = new File(html, String.format("d%02x", i / FILES_PER_DIRECTORY));
+            if (i % FILES_PER_DIRECTORY == 0) {
+                dir.mkdirs();
+            }
+            String page = "<!DOCTYPE html>\n<html><head><title>class" + i + "</title>"
+                    + "<link href=\"../doxygen.css\" rel=\"stylesheet\" type=\"text/css\"/></head>\n<body>\n"
+                    + "<div class=\"contents\">\n<p>Documentation of class " + i + ".</p>\n"
+                    + "<pre class=\"fragment\">    int member(int value);\n</pre>\n</div>\n</body></html>\n";
+            Files.write(new File(dir, "class" + i + ".html").toPath(), page.getBytes(StandardCharsets.UTF_8));
+        }
+        source = new FilePath(html);
+        target = new FilePath(new File(root, "published"));
+    }
+
+    @Setup(Level.Invocation)
+    public void cleanTarget() throws IOException, InterruptedException {
+        target.deleteRecursive();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteTree() throws IOException, InterruptedException {
+        source.getParent().deleteRecursive();
+    }
+
+    @Benchmark
+    public int copy() throws IOException, InterruptedException {
+        return source.copyRecursiveTo("**/*", target);
+    }
+
+    @Benchmark
+    public int pack() throws IOException, InterruptedException {
+        return source.tar(OutputStream.nullOutputStream(), "**/*");
+    }
+}
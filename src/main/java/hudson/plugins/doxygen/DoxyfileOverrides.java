@@ -0,0 +1,109 @@
+package hudson.plugins.doxygen;
+
+import hudson.EnvVars;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Doxyfile settings given to doxygen on top of the workspace Doxyfile, without modifying it.
+ *
+ * Doxygen reads the configuration <code>@INCLUDE = &lt;Doxyfile&gt;</code> followed by the overrides from its
+ * standard input when launched as <code>doxygen -</code>. The last assignment of a key wins.
+ */
+public class DoxyfileOverrides {
+
+    /** A quoted string or a word */
+    private static final Pattern VALUE_PATTERN = Pattern.compile("\"([^\"]*)\"|(\\S+)");
+
+    private final List<String> keys = new ArrayList<String>();
+    private final List<String> lines = new ArrayList<String>();
+
+    /**
+     * Adds the assignments of a <code>KEY = value</code> per line text, comments and blank lines being ignored.
+     */
+    public DoxyfileOverrides addAll(String text, EnvVars environment) {
+        if (text == null) {
+            return this;
+        }
+        for (String line : text.split("\\r?\\n")) {
+            String trimmed = line.trim();
+            int separatorIndex = trimmed.indexOf('=');
+            if (trimmed.isEmpty() || trimmed.startsWith("#") || separatorIndex <= 0) {
+                continue;
+            }
+            String key = trimmed.substring(0, separatorIndex).trim();
+            String value = trimmed.substring(separatorIndex + 1).trim();
+            if (key.endsWith("+")) {
+                add(key.substring(0, key.length() - 1).trim(), environment.expand(value), true);
+            } else {
+                add(key, environment.expand(value), false);
+            }
+        }
+        return this;
+    }
+
+    public DoxyfileOverrides add(String key, String value) {
+        return add(key, value, false);
+    }
+
+    /**
+     * Appends a value to a list, like <code>KEY += value</code>.
+     */
+    public DoxyfileOverrides append(String key, String value) {
+        return add(key, value, true);
+    }
+
+    private DoxyfileOverrides add(String key, String value, boolean append) {
+        keys.add(key);
+        lines.add(key + (append ? " += " : " = ") + value);
+        return this;
+    }
+
+    public boolean isEmpty() {
+        return lines.isEmpty();
+    }
+
+    public List<String> getLines() {
+        return Collections.unmodifiableList(lines);
+    }
+
+    /**
+     * Applies the overrides to the values read from the Doxyfile, so that they match what doxygen uses.
+     */
+    public void applyTo(Map<String, List<String>> values) {
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            boolean append = line.startsWith(keys.get(i) + " += ");
+            List<String> list = append ? values.get(keys.get(i)) : null;
+            if (list == null) {
+                list = new ArrayList<String>();
+                values.put(keys.get(i), list);
+            }
+            // space separated list, like in the Doxyfile
+            Matcher m = VALUE_PATTERN.matcher(line.substring(line.indexOf('=') + 1).trim());
+            while (m.find()) {
+                list.add(m.group(1) != null ? m.group(1) : m.group(2));
+            }
+        }
+    }
+
+    /**
+     * Builds the configuration to feed to <code>doxygen -</code>.
+     *
+     * @param doxyfile absolute path of the Doxyfile on the node running doxygen
+     */
+    public byte[] toConfiguration(String doxyfile) {
+        StringBuilder configuration = new StringBuilder();
+        configuration.append("@INCLUDE = \"").append(doxyfile).append("\"\n");
+        for (String line : lines) {
+            configuration.append(line).append('\n');
+        }
+        return configuration.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,49 @@
+package hudson.plugins.doxygen;
+
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.plugins.doxygen.DoxygenArchiver.DoxygenArchiverDescriptor;
+import hudson.remoting.VirtualChannel;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import jenkins.MasterToSlaveFileCallable;
+
+/**
+ * Reads the values of a Doxyfile on the node where it is, the included files being processed.
+ */
+public class DoxyfileReader extends MasterToSlaveFileCallable<Map<String, List<String>>> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String doxyfilePath;
+    private final EnvVars environment;
+
+    /**
+     * @param doxyfilePath path of the Doxyfile, relative to the directory the callable is run on
+     */
+    public DoxyfileReader(String doxyfilePath, EnvVars environment) {
+        this.doxyfilePath = doxyfilePath;
+        this.environment = environment;
+    }
+
+    public Map<String, List<String>> invoke(File base, VirtualChannel channel) throws IOException, InterruptedException {
+        DoxygenDirectoryParser parser = new DoxygenDirectoryParser(
+                DoxygenArchiverDescriptor.DOXYGEN_DOXYFILE_PUBLISHTYPE, doxyfilePath, null, null, environment);
+        return parser.readDoxyfileValues(new FilePath(base));
+    }
+
+    /**
+     * @return the first value of the key, or null if the key isn't set or is empty
+     */
+    public static String getValue(Map<String, List<String>> values, String key) {
+        List<String> list = values.get(key);
+        if (list == null || list.isEmpty() || list.get(0).trim().isEmpty()) {
+            return null;
+        }
+        return list.get(0);
+    }
+}
@@ -3,8 +3,11 @@ package hudson.plugins.doxygen;
 import hudson.AbortException;
 import hudson.EnvVars;
 import hudson.Extension;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
 import hudson.FilePath;
 import hudson.Launcher;
+import hudson.Util;
 import hudson.matrix.MatrixAggregatable;
 import hudson.matrix.MatrixAggregator;
 import hudson.matrix.MatrixConfiguration;
@@ -19,6 +22,7 @@ import hudson.model.AbstractBuild;
 import hudson.model.AbstractItem;
 import hudson.model.AbstractProject;
 import hudson.model.DirectoryBrowserSupport;
+import hudson.model.Item;
 import hudson.model.Hudson;
 import hudson.model.Label;
 import hudson.model.Run;
@@ -26,24 +30,44 @@ import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.BuildStepMonitor;
 import hudson.tasks.Publisher;
 import hudson.tasks.Recorder;
+import hudson.util.DaemonThreadFactory;
 import hudson.util.FormValidation;
+import hudson.util.NamingThreadFactory;
 
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
 
 import jenkins.model.Jenkins;
+import jenkins.model.RunAction2;
+import jenkins.model.TransientActionFactory;
+import jenkins.util.VirtualFile;
 import net.sf.json.JSONObject;
 
 import org.kohsuke.stapler.AncestorInPath;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
+import org.kohsuke.stapler.verb.POST;
 
 /**
  * 
@@ -53,6 +77,10 @@ public class DoxygenArchiver extends Recorder implements Serializable,MatrixAggr
 
 	private static final long serialVersionUID = 1L;
 	private static final Logger LOGGER = Logger.getLogger(DoxygenArchiver.class.getName());
+
+	private static final String DOXYGEN_KEY_GENERATE_TAGFILE = "GENERATE_TAGFILE";
+
+	private static final String MAX_GROWTH_ERROR = "The maximum growth must be a number of percents, such as 10 or 10%%, not \"%s\"";
 	
 	@Extension
 	public static final DoxygenArchiverDescriptor DESCRIPTOR = new DoxygenArchiverDescriptor();
@@ -77,6 +105,52 @@ public class DoxygenArchiver extends Recorder implements Serializable,MatrixAggr
 	
 	public String folderWhereYouRunDoxygen;
 
+	/**
+	 * If true, the documentation is left on the agent and fetched when it's browsed, see {@link DoxygenRemoteDocs}.
+	 */
+	private boolean publishLazily;
+
+	/**
+	 * If true, the HTML, CSS and JavaScript files are minified while they are copied, see {@link DoxygenMinifier}.
+	 */
+	private boolean minify;
+
+	/**
+	 * If true, the documentation of an agent is copied in chunks resumed after a reconnection, see {@link DoxygenChunkedTransfer}.
+	 */
+	private boolean resumableTransfer;
+
+	/**
+	 * If true, the files are stored by the hash of their path, see {@link DoxygenListingIndex}.
+	 */
+	private boolean shardedStorage;
+
+	/**
+	 * If true, the documentation is stored with the artifacts of the build, see {@link DoxygenStorage}.
+	 */
+	private boolean storeWithArtifacts;
+
+	/**
+	 * If true, the links of the documentation are checked while it's copied, see {@link DoxygenLinkChecker}.
+	 */
+	private boolean checkLinks;
+
+	/**
+	 * Growth of the documentation over the reference build, in percent, above which the build is unstable.
+	 * Null if the growth isn't checked, see {@link DoxygenSizeAction}.
+	 */
+	private Integer maxGrowth;
+
+	/**
+	 * Additional documentation published with the main one, see {@link DoxygenDocSet}.
+	 */
+	private List<DoxygenDocSet> docSets;
+
+	/**
+	 * Maximum number of doc sets published at a time, 0 for all of them.
+	 */
+	private int maxParallelDocSets;
+
 	/**
 	 * The doxygen html directory
 	 */
@@ -90,6 +164,112 @@ public class DoxygenArchiver extends Recorder implements Serializable,MatrixAggr
 		return keepAll;
 	}
 
+	public boolean isPublishLazily() {
+		return publishLazily;
+	}
+
+	@DataBoundSetter
+	public void setPublishLazily(boolean publishLazily) {
+		this.publishLazily = publishLazily;
+	}
+
+	public boolean isMinify() {
+		return minify;
+	}
+
+	@DataBoundSetter
+	public void setMinify(boolean minify) {
+		this.minify = minify;
+	}
+
+	public boolean isResumableTransfer() {
+		return resumableTransfer;
+	}
+
+	@DataBoundSetter
+	public void setResumableTransfer(boolean resumableTransfer) {
+		this.resumableTransfer = resumableTransfer;
+	}
+
+	public boolean isShardedStorage() {
+		return shardedStorage;
+	}
+
+	@DataBoundSetter
+	public void setShardedStorage(boolean shardedStorage) {
+		this.shardedStorage = shardedStorage;
+	}
+
+	public boolean isStoreWithArtifacts() {
+		return storeWithArtifacts;
+	}
+
+	@DataBoundSetter
+	public void setStoreWithArtifacts(boolean storeWithArtifacts) {
+		this.storeWithArtifacts = storeWithArtifacts;
+	}
+
+	public boolean isCheckLinks() {
+		return checkLinks;
+	}
+
+	@DataBoundSetter
+	public void setCheckLinks(boolean checkLinks) {
+		this.checkLinks = checkLinks;
+	}
+
+	public String getMaxGrowth() {
+		return maxGrowth != null ? maxGrowth.toString() : null;
+	}
+
+	@DataBoundSetter
+	public void setMaxGrowth(String maxGrowth) {
+		this.maxGrowth = parseMaxGrowth(maxGrowth);
+	}
+
+	/**
+	 * Parses a growth in percent, with or without the percent sign.
+	 *
+	 * @return the growth, or null if none is given
+	 * @throws IllegalArgumentException if the value isn't a number of percents
+	 */
+	static Integer parseMaxGrowth(String maxGrowth) {
+		String value = Util.fixEmptyAndTrim(maxGrowth);
+		if (value == null) {
+			return null;
+		}
+		if (value.endsWith("%")) {
+			value = value.substring(0, value.length() - 1).trim();
+		}
+		try {
+			int growth = Integer.parseInt(value);
+			if (growth >= 0) {
+				return growth;
+			}
+		} catch (NumberFormatException e) {
+			// reported below
+		}
+		throw new IllegalArgumentException(String.format(MAX_GROWTH_ERROR, maxGrowth));
+	}
+
+	public List<DoxygenDocSet> getDocSets() {
+		return docSets != null ? Collections.unmodifiableList(docSets) : Collections.<DoxygenDocSet>emptyList();
+	}
+
+	@DataBoundSetter
+	public void setDocSets(List<DoxygenDocSet> docSets) {
+		this.docSets = docSets != null && !docSets.isEmpty() ? new ArrayList<DoxygenDocSet>(docSets) : null;
+	}
+
+	public int getMaxParallelDocSets() {
+		return maxParallelDocSets;
+	}
+
+	@DataBoundSetter
+	public void setMaxParallelDocSets(int maxParallelDocSets) {
+		this.maxParallelDocSets = Math.max(0, maxParallelDocSets);
+	}
+
     @Deprecated
 	public String getPublishType() {
 		return publishType;
@@ -118,14 +298,42 @@ public class DoxygenArchiver extends Recorder implements Serializable,MatrixAggr
 
 		@Override
 		public Publisher newInstance(StaplerRequest req, JSONObject formData) throws FormException {
+			try {
+				parseMaxGrowth(formData.optString("maxGrowth"));
+			} catch (IllegalArgumentException e) {
+				throw new FormException(e.getMessage(), "maxGrowth");
+			}
 			return req.bindJSON(DoxygenArchiver.class, formData);
 		}
         
-        public FormValidation doCheckDoxyfilePath(@AncestorInPath AbstractProject project, @QueryParameter String value) throws IOException {
+        @POST
+        public FormValidation doCheckDoxyfilePath(@AncestorInPath AbstractProject project, @QueryParameter String value) throws IOException, InterruptedException {
+            if (project == null) {
+                return FormValidation.ok();
+            }
+            // the workspace of the project is only revealed to who may configure it
+            project.checkPermission(Item.CONFIGURE);
+            String mask = Util.fixEmpty(value);
+            if (mask == null) {
+                return FormValidation.ok();
+            }
             FilePath ws = project.getSomeWorkspace();
-            return ws!=null ? ws.validateFileMask(value, true) : FormValidation.ok();
+            if (ws == null || !ws.exists()) {
+                return FormValidation.ok();
+            }
+            // the workspace is scanned in the background, within a time budget
+            return DoxygenFileMaskCheck.validate(project, ws, mask);
         }
 
+		public FormValidation doCheckMaxGrowth(@QueryParameter String value) {
+			try {
+				parseMaxGrowth(value);
+				return FormValidation.ok();
+			} catch (IllegalArgumentException e) {
+				return FormValidation.error(e.getMessage());
+			}
+		}
+
 		@Override
 		public String getHelpFile() {
 			return "/plugin/doxygen/help.html";
@@ -155,19 +363,46 @@ public class DoxygenArchiver extends Recorder implements Serializable,MatrixAggr
 	}
 
 	/**
-	 * Gets the directory where the Doxygen is stored for the given project.
+	 * Gets the directory where the Doxygen is stored for the given project, see {@link DoxygenProjectDocs}.
 	 */
 	private static File getDoxygenDir(AbstractItem project) {
-		return new File(project.getRootDir(), "doxygen/html");
+		return DoxygenProjectDocs.resolve(getDoxygenRootDir(project));
+	}
+
+	static File getDoxygenRootDir(AbstractItem project) {
+		return new File(project.getRootDir(), "doxygen");
 	}
 
 	/**
 	 * Gets the directory where the Doxygen is stored for the given build.
 	 */
-	private static File getDoxygenDir(Run run) {
+	static File getDoxygenDir(Run run) {
 		return new File(run.getRootDir(), "doxygen/html");
 	}
 
+	/**
+	 * Gets the documentation published by the given build.
+	 *
+	 * @return the directory or its pack, or null if the documentation of the build isn't available anymore
+	 */
+	static File getPublishedDir(Run<?, ?> run) {
+		File dir = getDoxygenDir(run);
+		if (dir.isDirectory()) {
+			return dir;
+		}
+		if (DoxygenPackedDocs.getPack(dir).isFile()) {
+			return DoxygenPackedDocs.getPack(dir);
+		}
+		// only the latest documentation is kept when the builds don't keep their own
+		if (run.getParent() instanceof AbstractProject && run.equals(((AbstractProject<?, ?>) run.getParent()).getLastSuccessfulBuild())) {
+			dir = getDoxygenDir((AbstractItem) run.getParent());
+			if (dir.isDirectory()) {
+				return dir;
+			}
+		}
+		return null;
+	}
+
 	@SuppressWarnings("unchecked")
 	@Override
 	public boolean perform(AbstractBuild<?, ?> build, Launcher launcher,
@@ -200,6 +435,7 @@ public class DoxygenArchiver extends Recorder implements Serializable,MatrixAggr
 				// If we are matrix project then we will take from the node as we passed,
 				// otherwise from current build 
 				FilePath doxygenGeneratedDir = null;
+				FilePath workspace = build.getWorkspace();
 				if ((getDescriptor().isMatrixProject(build.getProject())) && (null != runOnChild)){
 					MatrixBuild _thebuild = (MatrixBuild)build;					
 					Label childLabel = Jenkins.get().getLabel(runOnChild);
@@ -210,7 +446,8 @@ public class DoxygenArchiver extends Recorder implements Serializable,MatrixAggr
 					for (MatrixRun run : _thebuild.getRuns()){
 						// Check if this run runs on the node that is assigned this label 
 						if (run.getBuiltOn().getAssignedLabels().contains(childLabel)){														
-							doxygenGeneratedDir = run.getWorkspace().act(parser);
+							workspace = run.getWorkspace();
+							doxygenGeneratedDir = workspace.act(parser);
                             listener.getLogger().println("Selected node is " + run.getBuiltOn().getDisplayName());
 							break;
 						}
@@ -221,37 +458,83 @@ public class DoxygenArchiver extends Recorder implements Serializable,MatrixAggr
 						throw new AbortException("Build does not run on any node with label" + runOnChild);
 					}
 				}else{
-					doxygenGeneratedDir = build.getWorkspace().act(parser);
+					doxygenGeneratedDir = workspace.act(parser);
 				}
 
 
 				listener.getLogger().println(
 						"The determined Doxygen directory is '" + doxygenGeneratedDir + "'.");
 
-				// Determine the future stored doxygen directory
-				FilePath target = new FilePath(keepAll ? getDoxygenDir(build)
-						: getDoxygenDir(build.getProject()));
+				// the additional doc sets are published while the main documentation is
+				DocSetPublication docSetPublication = DocSetPublication.start(this, build, workspace, environment, listener);
+				try {
+					// Determine the future stored doxygen directory, the project documentation is staged
+					// and replaced at once when the copy is complete
+					File projectDir = getDoxygenRootDir(build.getProject());
+
+					// the doxygen build step may have published the documentation while generating it, see getStreamingConflict
+					File streamed = keepAll ? getDoxygenDir(build) : DoxygenProjectDocs.getTree(projectDir, build.getNumber());
+					boolean published = streamed.isDirectory();
+					FilePath target = null;
+					// size of the published files, read from the listings written while publishing
+					Map<String, Long> sizes = null;
+					if (published) {
+						listener.getLogger().println("The doxygen html documentation was already published with the build.");
+						sizes = DoxygenListingIndex.getSizes(streamed);
+					} else if (publishLazily) {
+						int files = DoxygenRemoteDocs.record(build.getRootDir(), doxygenGeneratedDir);
+						listener.getLogger().println("Recorded the location of the " + files
+								+ " doxygen html files, they are fetched from the workspace when browsed.");
+						sizes = DoxygenRemoteDocs.getSizes(build.getRootDir());
+					} else if (storeWithArtifacts) {
+						sizes = DoxygenStorage.get().publish(build, doxygenGeneratedDir, launcher, listener);
+						listener.getLogger().println("Stored the " + sizes.size() + " doxygen html files with the artifacts of the build.");
+					} else {
+						target = new FilePath(keepAll ? getDoxygenDir(build)
+								: DoxygenProjectDocs.stage(projectDir, build.getNumber()));
+					}
 
-				if (doxygenGeneratedDir.copyRecursiveTo("**/*", target) == 0) {
-					if (build.getResult().isBetterOrEqualTo(Result.UNSTABLE)) {
-						// If the build failed, don't complain that there was no
-						// javadoc.
-						// The build probably didn't even get to the point where
-						// it produces javadoc.
+					// the links are checked while the documentation is copied, the other publications don't read it
+					DoxygenLinkChecker linkChecker = checkLinks && target != null ? new DoxygenLinkChecker() : null;
+					if (checkLinks && target == null) {
+						listener.getLogger().println("The links of the doxygen html documentation are only checked when it's copied to the controller.");
 					}
 
-					listener.getLogger().println(
-							"Failure to copy the generated doxygen html documentation at '"
-									+ doxygenHtmlDirectory + "' to '" + target
-									+ "'");
+					if (target != null && copy(doxygenGeneratedDir, target, linkChecker, listener) == 0) {
+						if (build.getResult().isBetterOrEqualTo(Result.UNSTABLE)) {
+							// If the build failed, don't complain that there was no
+							// javadoc.
+							// The build probably didn't even get to the point where
+							// it produces javadoc.
+						}
 
-					build.setResult(Result.FAILURE);
-					return true;
-				}
+						listener.getLogger().println(
+								"Failure to copy the generated doxygen html documentation at '"
+										+ doxygenHtmlDirectory + "' to '" + target
+										+ "'");
+
+						if (!keepAll)
+							DoxygenProjectDocs.discard(projectDir, build.getNumber());
+						build.setResult(Result.FAILURE);
+						return true;
+					}
+					if (target != null) {
+						sizes = DoxygenListingIndex.getSizes(new File(target.getRemote()));
+					}
+					if (target != null && !keepAll && !DoxygenProjectDocs.commit(projectDir, build.getNumber())) {
+						listener.getLogger().println("A newer build already published its doxygen html documentation, this one is discarded.");
+					}
 
-				// add build action, if doxygen is recorded for each build
-				if (keepAll)
-					build.addAction(new DoxygenBuildAction(build));
+					recordSize(build, sizes, listener);
+					recordLinks(build, linkChecker, listener);
+
+					// keep the tag file, so that the downstream projects can link to this documentation
+					archiveTagFile(build, workspace, environment, listener);
+
+					// the build action is contributed by DoxygenBuildActionFactory, if doxygen is recorded for each build
+				} finally {
+					docSetPublication.finish(build, listener);
+				}
 
 			} catch (Exception e) {
 				e.printStackTrace(listener.fatalError("error"));
@@ -269,6 +552,226 @@ public class DoxygenArchiver extends Recorder implements Serializable,MatrixAggr
 	
 	
 	
+	/**
+	 * Gets the option of this publisher which needs the documentation to be published by it, the doxygen build step
+	 * not publishing it while it's generated then.
+	 *
+	 * @return the title of the option, or null if the build step may publish the documentation
+	 */
+	String getStreamingConflict() {
+		if (publishLazily) {
+			return "Leave the documentation on the agent";
+		}
+		if (storeWithArtifacts) {
+			return "Store the documentation with the artifacts";
+		}
+		if (minify) {
+			return "Minify";
+		}
+		if (shardedStorage) {
+			return "Store the files in hashed subdirectories";
+		}
+		if (checkLinks) {
+			return "Check the links";
+		}
+		return null;
+	}
+
+	/**
+	 * Copies the documentation to the controller, minifying it and storing it in shards on the way if configured,
+	 * then indexes it with the files listed by the transfer. The documentation of an agent is copied in chunks resumed
+	 * after a reconnection if configured, unless it's minified.
+	 *
+	 * @param linkChecker checks the links of the pages while they are copied, or null
+	 * @return the number of files copied
+	 */
+	private int copy(FilePath source, FilePath target, DoxygenLinkChecker linkChecker, BuildListener listener) throws IOException, InterruptedException {
+		int files;
+		Map<String, long[]> written;
+		if (source.isRemote() && resumableTransfer && !minify) {
+			DoxygenChunkedTransfer transfer = new DoxygenChunkedTransfer(shardedStorage);
+			transfer.setLinkChecker(linkChecker);
+			files = transfer.copy(source, new File(target.getRemote()), listener);
+			written = transfer.getWrittenFiles();
+			if (transfer.getRetries() > 0) {
+				listener.getLogger().println(String.format("Copied the doxygen html documentation in %s chunks, %s of them retried",
+						transfer.getChunks(), transfer.getRetries()));
+			}
+		} else {
+			// streamed like copyRecursiveTo, but listing the files on the way
+			DoxygenTransfer transfer = new DoxygenTransfer(minify, shardedStorage);
+			transfer.setLinkChecker(linkChecker);
+			files = transfer.copy(source, new File(target.getRemote()));
+			written = transfer.getWrittenFiles();
+			if (minify) {
+				long saved = transfer.getReceived() - transfer.getWritten();
+				listener.getLogger().println(String.format("Minified the doxygen html documentation: %s bytes received, %s bytes saved (%s%%)",
+						transfer.getReceived(), saved, transfer.getReceived() > 0 ? saved * 100 / transfer.getReceived() : 0));
+			}
+		}
+		// the sharded documentation is indexed by the transfer, its index being the only way to browse it
+		if (!shardedStorage && files > 0) {
+			// browsing uses the listing instead of the directories
+			try {
+				DoxygenListingIndex.write(new File(target.getRemote()), written, false);
+			} catch (IOException e) {
+				listener.getLogger().println("Unable to index the doxygen html documentation, it is browsed without index: " + e.getMessage());
+			}
+		}
+		return files;
+	}
+
+	/**
+	 * Publishes a doc set to the build or the project, depending on the retention option.
+	 *
+	 * @return the number of files published
+	 */
+	private int publishDocSet(AbstractBuild<?, ?> build, FilePath workspace, EnvVars environment, DoxygenDocSet docSet,
+			BuildListener listener) throws IOException, InterruptedException {
+		String prefix = "[" + docSet.getName() + "] ";
+		FilePath source = workspace.act(new DoxygenDirectoryParser(docSet.getPublishType(), docSet.getDoxyfilePath(),
+				docSet.getHtmlDirectory(), folderWhereYouRunDoxygen, environment, listener));
+		listener.getLogger().println(prefix + "The determined Doxygen directory is '" + source + "'.");
+		File root = DoxygenDocSet.getRootDir(build.getProject(), docSet.getName());
+		FilePath target = new FilePath(keepAll ? DoxygenDocSet.getDir(build, docSet.getName())
+				: DoxygenProjectDocs.stage(root, build.getNumber()));
+		int files = copy(source, target, null, listener);
+		if (files == 0) {
+			if (!keepAll) {
+				DoxygenProjectDocs.discard(root, build.getNumber());
+			}
+			throw new AbortException(prefix + "No doxygen html documentation found in '" + source + "'.");
+		}
+		if (!keepAll && !DoxygenProjectDocs.commit(root, build.getNumber())) {
+			listener.getLogger().println(prefix + "A newer build already published this documentation, this one is discarded.");
+		}
+		return files;
+	}
+
+	/**
+	 * Concurrent publication of the doc sets of a build.
+	 */
+	private static final class DocSetPublication {
+		private final ExecutorService executor;
+		private final Map<String, Future<Integer>> results = new LinkedHashMap<String, Future<Integer>>();
+
+		private DocSetPublication(ExecutorService executor) {
+			this.executor = executor;
+		}
+
+		/**
+		 * Starts publishing the doc sets, at most maxParallelDocSets at a time.
+		 */
+		static DocSetPublication start(final DoxygenArchiver archiver, final AbstractBuild<?, ?> build, final FilePath workspace,
+				final EnvVars environment, final BuildListener listener) {
+			List<DoxygenDocSet> docSets = archiver.getDocSets();
+			if (docSets.isEmpty()) {
+				return new DocSetPublication(null);
+			}
+			int parallelism = archiver.maxParallelDocSets > 0 ? Math.min(archiver.maxParallelDocSets, docSets.size()) : docSets.size();
+			DocSetPublication publication = new DocSetPublication(Executors.newFixedThreadPool(parallelism,
+					new NamingThreadFactory(new DaemonThreadFactory(), "Doxygen publication " + build.getFullDisplayName())));
+			listener.getLogger().println(String.format("Publishing %s doxygen documentation sets, %s at a time.", docSets.size(), parallelism));
+			for (final DoxygenDocSet docSet : docSets) {
+				if (!DoxygenDocSet.isValidName(docSet.getName()) || publication.results.containsKey(docSet.getName())) {
+					listener.error("Skipping the doxygen documentation set with an invalid or duplicated name '" + docSet.getName() + "'.");
+					continue;
+				}
+				publication.results.put(docSet.getName(), publication.executor.submit(
+						() -> archiver.publishDocSet(build, workspace, environment, docSet, listener)));
+			}
+			return publication;
+		}
+
+		/**
+		 * Waits for the doc sets, the build failing if one of them wasn't published.
+		 */
+		void finish(AbstractBuild<?, ?> build, BuildListener listener) {
+			if (executor == null) {
+				return;
+			}
+			try {
+				for (Map.Entry<String, Future<Integer>> result : results.entrySet()) {
+					try {
+						listener.getLogger().println("[" + result.getKey() + "] Published " + result.getValue().get() + " doxygen html files.");
+					} catch (ExecutionException e) {
+						listener.error("[" + result.getKey() + "] Failed publishing the doxygen documentation: " + e.getCause().getMessage());
+						build.setResult(Result.FAILURE);
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				// stops the publications still running when the build is aborted
+				executor.shutdownNow();
+			}
+		}
+	}
+
+	/**
+	 * Records the size of the documentation with the build, which is unstable if the documentation grew too much.
+	 */
+	private void recordSize(AbstractBuild<?, ?> build, Map<String, Long> sizes, BuildListener listener) {
+		if (sizes == null) {
+			return;
+		}
+		DoxygenSizeAction size = DoxygenSizeAction.summarize(sizes);
+		build.replaceAction(size);
+		if (maxGrowth == null) {
+			return;
+		}
+		DoxygenSizeAction reference = DoxygenSizeAction.getReference(build);
+		if (reference == null) {
+			listener.getLogger().println("No previous successful or unstable build recorded the size of the doxygen html documentation, its growth isn't checked.");
+			return;
+		}
+		double growth = size.getGrowth(reference);
+		if (growth > maxGrowth) {
+			listener.getLogger().println(String.format("The doxygen html documentation grew by %.1f%% since %s, more than %s%%: %s bytes instead of %s.",
+					growth, reference.getRun().getFullDisplayName(), maxGrowth, size.getBytes(), reference.getBytes()));
+			// the next builds are compared with the documentation before the growth
+			size.setExceededMaxGrowth(true);
+			build.setResult(Result.UNSTABLE);
+		}
+	}
+
+	/**
+	 * Records the links of the documentation which don't resolve with the build, see {@link DoxygenLinksAction}.
+	 */
+	private void recordLinks(AbstractBuild<?, ?> build, DoxygenLinkChecker linkChecker, BuildListener listener) {
+		if (linkChecker == null) {
+			return;
+		}
+		DoxygenLinkChecker.Report report = linkChecker.getReport();
+		build.replaceAction(new DoxygenLinksAction(report));
+		listener.getLogger().println(String.format("Checked %s links of %s doxygen html pages: %s broken links, %s missing assets.",
+				report.getLinks(), report.getPages(), report.getBrokenLinks(), report.getMissingAssets()));
+	}
+
+	/**
+	 * Archives the GENERATE_TAGFILE of the Doxyfile with the build, see {@link DoxygenTagFiles}.
+	 */
+	private void archiveTagFile(AbstractBuild<?, ?> build, FilePath workspace, EnvVars environment, BuildListener listener) throws InterruptedException {
+		try {
+			String tagFile = DoxyfileReader.getValue(workspace.act(new DoxyfileReader(doxyfilePath, environment)), DOXYGEN_KEY_GENERATE_TAGFILE);
+			if (tagFile == null) {
+				return;
+			}
+			FilePath runDirectory = (folderWhereYouRunDoxygen != null && !folderWhereYouRunDoxygen.trim().isEmpty())
+					? workspace.child(folderWhereYouRunDoxygen) : workspace;
+			FilePath source = runDirectory.child(tagFile.trim());
+			if (!source.exists()) {
+				listener.getLogger().println("The doxygen tag file '" + source + "' doesn't exist, it isn't archived.");
+				return;
+			}
+			source.copyTo(new FilePath(new File(DoxygenTagFiles.getDirectory(build), source.getName())));
+			listener.getLogger().println("Archived the doxygen tag file '" + source.getName() + "'.");
+		} catch (IOException e) {
+			// the documentation is published anyway
+			listener.getLogger().println("Unable to archive the doxygen tag file: " + e.getMessage());
+		}
+	}
+
 	public BuildStepMonitor getRequiredMonitorService() {
 		return BuildStepMonitor.STEP;
 	}
@@ -279,8 +782,19 @@ public class DoxygenArchiver extends Recorder implements Serializable,MatrixAggr
 	}
 
 	@Override
-	public Action getProjectAction(AbstractProject<?, ?> project) {
-		return new DoxygenAction(project);
+	public Collection<? extends Action> getProjectActions(AbstractProject<?, ?> project) {
+		List<Action> actions = new ArrayList<Action>(Arrays.asList(new DoxygenAction(project), new DoxygenSizeProjectAction(project)));
+		List<String> names = new ArrayList<String>();
+		for (DoxygenDocSet docSet : getDocSets()) {
+			if (DoxygenDocSet.isValidName(docSet.getName()) && !names.contains(docSet.getName())) {
+				names.add(docSet.getName());
+				actions.add(new DoxygenDocSetAction(project, docSet.getName()));
+			}
+		}
+		if (!names.isEmpty()) {
+			actions.add(new DoxygenDocSetsAction(project, names));
+		}
+		return actions;
 	}
 
 	protected static abstract class BaseDoxygenAction implements Action {
@@ -293,7 +807,7 @@ public class DoxygenArchiver extends Recorder implements Serializable,MatrixAggr
 		}
 
 		public String getIconFileName() {
-			if (dir().exists())
+			if (exists())
 				return "help.gif";
 			else
 				// hide it since we don't have doxygen yet.
@@ -302,9 +816,64 @@ public class DoxygenArchiver extends Recorder implements Serializable,MatrixAggr
 
 
         public void doDynamic(StaplerRequest req, StaplerResponse rsp) throws IOException, ServletException {
-            DirectoryBrowserSupport dbs = new DirectoryBrowserSupport(this, new FilePath(this.dir()), this.getTitle(), "graph.gif", false);
+            VirtualFile base;
+            try {
+                base = browse();
+            } catch (FileNotFoundException e) {
+                rsp.sendError(HttpServletResponse.SC_NOT_FOUND, e.getMessage());
+                return;
+            }
+            DoxygenListingIndex.Page page = getListingPage(base, req);
+            if (page != null) {
+                // the directory browser would render the whole directory
+                req.setAttribute("page", page);
+                req.getView(this, "listing.jelly").forward(req, rsp);
+                return;
+            }
+            DirectoryBrowserSupport dbs = new DirectoryBrowserSupport(this, base, this.getTitle(), "graph.gif", false);
             dbs.generateResponse(req, rsp, this);
         }
+
+		/**
+		 * Gets the page requested of the listing of a large indexed directory, which is listed a page at a time.
+		 *
+		 * @return the page, or null if the request isn't the listing of such a directory
+		 */
+		private static DoxygenListingIndex.Page getListingPage(VirtualFile base, StaplerRequest req) throws IOException {
+			String path = req.getRestOfPath();
+			// the patterns and the archives are left to the directory browser
+			if (!path.endsWith("/") || path.contains("*")) {
+				return null;
+			}
+			VirtualFile dir = base;
+			for (String name : path.split("/")) {
+				if (!name.isEmpty()) {
+					dir = dir.child(Util.rawDecode(name));
+				}
+			}
+			if (dir.child("index.html").exists()) {
+				// the directory is browsed through its index page
+				return null;
+			}
+			int start = 0;
+			try {
+				start = Integer.parseInt(Util.fixNull(req.getParameter("start")));
+			} catch (NumberFormatException e) {
+				// first page
+			}
+			return DoxygenListingIndex.getPage(dir, start);
+		}
+
+		protected boolean exists() {
+			return DoxygenPackedDocs.exists(dir());
+		}
+
+		/**
+		 * Gets the documentation, the one of the old builds is packed, see DoxygenCompactionWork.
+		 */
+		protected VirtualFile browse() throws IOException {
+			return DoxygenPackedDocs.browse(dir());
+		}
         
 
 
@@ -341,24 +910,263 @@ public class DoxygenArchiver extends Recorder implements Serializable,MatrixAggr
 		protected String getTitle() {
 			return project.getDisplayName() + " doxygen";
 		}
+
+		@Override
+		protected boolean exists() {
+			return getOffloadedBuild() != null || super.exists();
+		}
+
+		@Override
+		protected VirtualFile browse() throws IOException {
+			Run<?, ?> offloaded = getOffloadedBuild();
+			return offloaded != null ? browseOffloaded(offloaded) : super.browse();
+		}
+
+		/**
+		 * @return the last successful build if its documentation was left on the agent or stored with its artifacts
+		 */
+		private Run<?, ?> getOffloadedBuild() {
+			if (project instanceof AbstractProject) {
+				Run<?, ?> run = ((AbstractProject<?, ?>) project).getLastSuccessfulBuild();
+				if (run != null && !DoxygenPackedDocs.exists(getDoxygenDir(run)) && isOffloaded(run.getRootDir())) {
+					return run;
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Doc set of a project, the one of the last successful build if it kept its own.
+	 */
+	public static class DoxygenDocSetAction extends BaseDoxygenAction {
+		private final AbstractItem project;
+		private final String name;
+
+		public DoxygenDocSetAction(AbstractItem project, String name) {
+			this.project = project;
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		@Override
+		public String getUrlName() {
+			return DoxygenDocSet.getUrlName(name);
+		}
+
+		@Override
+		public String getDisplayName() {
+			return name + " DoxyGen HTML";
+		}
+
+		protected File dir() {
+			if (project instanceof AbstractProject) {
+				Run<?, ?> run = ((AbstractProject<?, ?>) project).getLastSuccessfulBuild();
+				if (run != null) {
+					File dir = DoxygenDocSet.getDir(run, name);
+					if (dir.exists()) {
+						return dir;
+					}
+				}
+			}
+			return DoxygenProjectDocs.resolve(DoxygenDocSet.getRootDir(project, name));
+		}
+
+		protected String getTitle() {
+			return project.getDisplayName() + " " + name + " doxygen";
+		}
 	}
 
+	/**
+	 * Doc set of a build, contributed by {@link DoxygenBuildActionFactory}.
+	 */
+	public static class DoxygenDocSetBuildAction extends BaseDoxygenAction {
+		private final String name;
+		private final File dir;
+		private final String title;
+
+		public DoxygenDocSetBuildAction(Run<?, ?> build, String name) {
+			this.name = name;
+			this.dir = DoxygenDocSet.getDir(build, name);
+			this.title = build.getDisplayName() + " " + name + " doxygen/html";
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		@Override
+		public String getUrlName() {
+			return DoxygenDocSet.getUrlName(name);
+		}
+
+		@Override
+		public String getDisplayName() {
+			return name + " DoxyGen HTML";
+		}
+
+		protected String getTitle() {
+			return title;
+		}
+
+		protected File dir() {
+			return dir;
+		}
+	}
+
+	/**
+	 * Index page of the doc sets of a project.
+	 */
+	public static class DoxygenDocSetsAction implements Action {
+		private final AbstractItem project;
+		private final List<String> names;
+
+		public DoxygenDocSetsAction(AbstractItem project, List<String> names) {
+			this.project = project;
+			this.names = names;
+		}
+
+		public AbstractItem getProject() {
+			return project;
+		}
+
+		public List<DoxygenDocSetAction> getDocSets() {
+			List<DoxygenDocSetAction> docSets = new ArrayList<DoxygenDocSetAction>();
+			for (String name : names) {
+				docSets.add(new DoxygenDocSetAction(project, name));
+			}
+			return docSets;
+		}
+
+		public String getIconFileName() {
+			return "help.gif";
+		}
+
+		public String getDisplayName() {
+			return "DoxyGen documentation sets";
+		}
+
+		public String getUrlName() {
+			return "doxygenSets";
+		}
+	}
+
+	/**
+	 * Checks if the documentation of a build isn't on the controller disk: left on the agent, or stored with the
+	 * artifacts.
+	 */
+	static boolean isOffloaded(File buildDir) {
+		return DoxygenRemoteDocs.isRecorded(buildDir) || DoxygenStorage.isStored(buildDir);
+	}
+
+	static VirtualFile browseOffloaded(Run<?, ?> build) throws IOException {
+		return DoxygenStorage.isStored(build.getRootDir()) ? DoxygenStorage.browseStored(build)
+				: DoxygenRemoteDocs.browse(build.getRootDir());
+	}
+
+	/**
+	 * Documentation of a build, contributed by {@link DoxygenBuildActionFactory} and never persisted.
+	 */
 	public static class DoxygenBuildAction extends BaseDoxygenAction {
-		private final AbstractBuild<?, ?> build;
+		private final Run<?, ?> build;
+		private final File dir;
+		private final String title;
 
-		public DoxygenBuildAction(AbstractBuild<?, ?> build) {
+		public DoxygenBuildAction(Run<?, ?> build) {
 			this.build = build;
+			this.dir = getDoxygenDir(build);
+			this.title = build.getDisplayName() + " doxygen/html";
+		}
+
+		@Override
+		protected boolean exists() {
+			return super.exists() || isOffloaded(build.getRootDir());
+		}
+
+		@Override
+		protected VirtualFile browse() throws IOException {
+			// an archived copy is preferred to the workspace
+			if (!super.exists() && isOffloaded(build.getRootDir())) {
+				return browseOffloaded(build);
+			}
+			return super.browse();
 		}
 
 		protected String getTitle() {
-			return build.getDisplayName() + " doxygen/html";
+			return title;
 		}
 
 		protected File dir() {
-			return new File(build.getRootDir(), "doxygen/html");
+			return dir;
+		}
+	}
+
+	/**
+	 * Adds the documentation link to the builds which recorded their documentation, found from its directory.
+	 */
+	@Extension
+	public static final class DoxygenBuildActionFactory extends TransientActionFactory<AbstractBuild> {
+		@Override
+		public Class<AbstractBuild> type() {
+			return AbstractBuild.class;
+		}
+
+		@Override
+		public Collection<? extends Action> createFor(AbstractBuild target) {
+			List<Action> actions = new ArrayList<Action>();
+			if (DoxygenPackedDocs.exists(getDoxygenDir(target)) || isOffloaded(target.getRootDir())) {
+				actions.add(new DoxygenBuildAction(target));
+			}
+			String[] names = DoxygenDocSet.getSetsDir(target).list();
+			if (names != null) {
+				Arrays.sort(names);
+				for (String name : names) {
+					if (DoxygenPackedDocs.exists(DoxygenDocSet.getDir(target, name))) {
+						actions.add(new DoxygenDocSetBuildAction(target, name));
+					}
+				}
+			}
+			return actions;
 		}
 	}
 
+	/**
+	 * Build action persisted by the previous versions, removed from the builds when they are loaded.
+	 * The builds are saved without it the next time they are saved.
+	 */
+	static final class LegacyDoxygenBuildAction implements RunAction2 {
+		@SuppressWarnings("unused")
+		private AbstractBuild<?, ?> build;
+
+		public String getIconFileName() {
+			return null;
+		}
+
+		public String getDisplayName() {
+			return null;
+		}
+
+		public String getUrlName() {
+			return null;
+		}
+
+		public void onAttached(Run<?, ?> r) {
+		}
+
+		public void onLoad(Run<?, ?> r) {
+			build = null;
+			r.removeAction(this);
+		}
+	}
+
+	@Initializer(before = InitMilestone.PLUGINS_STARTED)
+	public static void addAliases() {
+		Run.XSTREAM2.addCompatibilityAlias("hudson.plugins.doxygen.DoxygenArchiver$DoxygenBuildAction", LegacyDoxygenBuildAction.class);
+	}
+
 	public MatrixAggregator createAggregator(MatrixBuild build,
 			Launcher launcher, BuildListener listener) {
 		
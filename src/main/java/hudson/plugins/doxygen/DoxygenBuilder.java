@@ -5,19 +5,48 @@ import hudson.EnvVars;
 import hudson.Extension;
 import hudson.FilePath;
 import hudson.Launcher;
+import hudson.Proc;
 import hudson.Util;
 import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
+import hudson.model.Action;
 import hudson.model.BuildListener;
 import hudson.model.Computer;
 import hudson.model.Descriptor;
+import hudson.model.Node;
 import hudson.model.Result;
+import hudson.model.Run;
+import hudson.slaves.WorkspaceList;
 import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.Builder;
 import hudson.tools.ToolInstallation;
 import hudson.util.ArgumentListBuilder;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.security.MasterToSlaveCallable;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 
 
 
@@ -25,10 +54,54 @@ import org.kohsuke.stapler.DataBoundConstructor;
  * Implementation of the "Generate documentation using Doxygen" build step
  */
 public class DoxygenBuilder extends Builder {
+    private static final Logger LOGGER = Logger.getLogger(DoxygenBuilder.class.getName());
+
+    private static final String DOXYGEN_KEY_WARN_LOGFILE = "WARN_LOGFILE";
+
+    /** Delay between two reads of the WARN_LOGFILE while doxygen runs, in milliseconds */
+    private static final long LOG_POLL_INTERVAL = 1000;
+
+    /** Delay between two batches of files published while doxygen runs, in milliseconds */
+    private static final long PUBLISH_INTERVAL = 5000;
+
+    private static final String DOXYGEN_KEY_OUTPUT_DIRECTORY = "OUTPUT_DIRECTORY";
+    private static final String DOXYGEN_KEY_GENERATE_HTML = "GENERATE_HTML";
+    private static final String DOXYGEN_KEY_HTML_OUTPUT = "HTML_OUTPUT";
+    private static final String DOXYGEN_DEFAULT_HTML_OUTPUT = "html";
+    private static final String DOXYGEN_KEY_QUIET = "QUIET";
+    private static final String DOXYGEN_KEY_HAVE_DOT = "HAVE_DOT";
+    private static final String DOXYGEN_KEY_DOT_PATH = "DOT_PATH";
+    private static final String DOXYGEN_KEY_DOT_IMAGE_FORMAT = "DOT_IMAGE_FORMAT";
+    private static final String DOXYGEN_KEY_INTERACTIVE_SVG = "INTERACTIVE_SVG";
+    private static final String DOXYGEN_DEFAULT_DOT = "dot";
+    private static final String DOXYGEN_KEY_TAGFILES = "TAGFILES";
+
+    /** Directory of the upstream tag files, in the temporary directory of the workspace */
+    private static final String TAG_FILES_DIRECTORY = "doxygen-tags";
+    private static final String DOXYGEN_DEFAULT_DOT_IMAGE_FORMAT = "png";
+
+    /** Directory of the dot graph cache, relative to the root directory of the agent */
+    private static final String DOT_CACHE_DIRECTORY = "caches/doxygen-dot";
+    private static final String DOXYGEN_DEBUG_TIME = "time";
+    private static final String DOXYGEN_KEY_NUM_PROC_THREADS = "NUM_PROC_THREADS";
+    private static final String DOXYGEN_KEY_DOT_NUM_THREADS = "DOT_NUM_THREADS";
+
+    /** Upper bound of NUM_PROC_THREADS and DOT_NUM_THREADS accepted by doxygen */
+    private static final int MAX_THREADS = 32;
+
     private final String doxyfilePath;
     private final String installationName;
     private final boolean continueOnBuildFailure;
     private final boolean unstableIfWarnings;
+    private boolean unstableIfNewWarnings;
+    private String doxyfileOverrides;
+    private boolean autoThreads;
+    private boolean skipUnchangedInputs;
+    private int maxParallelDoxyfiles;
+    private boolean timePhases;
+    private boolean cacheDotGraphs;
+    private boolean useUpstreamTagFiles;
+    private boolean publishWhileGenerating;
     
     @DataBoundConstructor
     public DoxygenBuilder(String doxyfilePath, String installationName, boolean continueOnBuildFailure, boolean unstableIfWarnings) {
@@ -57,7 +130,137 @@ public class DoxygenBuilder extends Builder {
     public boolean getUnstableIfWarnings() {
         return unstableIfWarnings;
     }
+
+    @SuppressWarnings("unused")
+    public boolean getUnstableIfNewWarnings() {
+        return unstableIfNewWarnings;
+    }
+
+    /**
+     * Set the build to unstable only if there are warnings which weren't reported by the reference build.
+     */
+    @DataBoundSetter
+    public void setUnstableIfNewWarnings(boolean unstableIfNewWarnings) {
+        this.unstableIfNewWarnings = unstableIfNewWarnings;
+    }
+
+    @SuppressWarnings("unused")
+    public String getDoxyfileOverrides() {
+        return doxyfileOverrides;
+    }
+
+    /**
+     * Doxyfile settings, one <code>KEY = VALUE</code> per line, applied on top of the Doxyfile of the workspace.
+     */
+    @DataBoundSetter
+    public void setDoxyfileOverrides(String doxyfileOverrides) {
+        this.doxyfileOverrides = Util.fixEmptyAndTrim(doxyfileOverrides);
+    }
+
+    @SuppressWarnings("unused")
+    public boolean getAutoThreads() {
+        return autoThreads;
+    }
+
+    /**
+     * Set NUM_PROC_THREADS and DOT_NUM_THREADS from the cores of the agent and its executor load.
+     */
+    @DataBoundSetter
+    public void setAutoThreads(boolean autoThreads) {
+        this.autoThreads = autoThreads;
+    }
     
+    @SuppressWarnings("unused")
+    public boolean getSkipUnchangedInputs() {
+        return skipUnchangedInputs;
+    }
+
+    /**
+     * Skip doxygen when the inputs are the ones of the last successful build, whose documentation is reused.
+     */
+    @DataBoundSetter
+    public void setSkipUnchangedInputs(boolean skipUnchangedInputs) {
+        this.skipUnchangedInputs = skipUnchangedInputs;
+    }
+
+    @SuppressWarnings("unused")
+    public int getMaxParallelDoxyfiles() {
+        return maxParallelDoxyfiles;
+    }
+
+    /**
+     * Maximum number of Doxyfiles processed concurrently, 0 for the number of cores of the agent.
+     */
+    @DataBoundSetter
+    public void setMaxParallelDoxyfiles(int maxParallelDoxyfiles) {
+        this.maxParallelDoxyfiles = Math.max(0, maxParallelDoxyfiles);
+    }
+
+    @SuppressWarnings("unused")
+    public boolean getTimePhases() {
+        return timePhases;
+    }
+
+    /**
+     * Run doxygen with its "time" debug output and record the duration of each phase.
+     */
+    @DataBoundSetter
+    public void setTimePhases(boolean timePhases) {
+        this.timePhases = timePhases;
+    }
+
+    @SuppressWarnings("unused")
+    public boolean getCacheDotGraphs() {
+        return cacheDotGraphs;
+    }
+
+    /**
+     * Reuse the dot graphs rendered by the previous builds of the agent, see {@link DoxygenDotCache}.
+     */
+    @DataBoundSetter
+    public void setCacheDotGraphs(boolean cacheDotGraphs) {
+        this.cacheDotGraphs = cacheDotGraphs;
+    }
+
+    @SuppressWarnings("unused")
+    public boolean getUseUpstreamTagFiles() {
+        return useUpstreamTagFiles;
+    }
+
+    /**
+     * Link to the documentation of the upstream projects with the tag files they archived, see {@link DoxygenTagFiles}.
+     */
+    @DataBoundSetter
+    public void setUseUpstreamTagFiles(boolean useUpstreamTagFiles) {
+        this.useUpstreamTagFiles = useUpstreamTagFiles;
+    }
+
+    @SuppressWarnings("unused")
+    public boolean getPublishWhileGenerating() {
+        return publishWhileGenerating;
+    }
+
+    /**
+     * Publish the HTML documentation with the build while doxygen generates it, see {@link DoxygenStreamingPublisher}.
+     */
+    @DataBoundSetter
+    public void setPublishWhileGenerating(boolean publishWhileGenerating) {
+        this.publishWhileGenerating = publishWhileGenerating;
+    }
+
+    @Override
+    public Collection<? extends Action> getProjectActions(AbstractProject<?, ?> project) {
+        List<Action> actions = new ArrayList<Action>();
+        if (timePhases) {
+            actions.add(new DoxygenTimingsProjectAction(project));
+        }
+        // the publisher already contributes the documentation link
+        if (publishWhileGenerating && project.getPublishersList().get(DoxygenArchiver.class) == null) {
+            actions.add(new DoxygenArchiver.DoxygenAction(project));
+        }
+        return actions;
+    }
+
     /**
      * Finds the doxygen installation to use for this build among all installations configured in the Jenkins administration
      * @return selected Doxygen installation
@@ -108,6 +311,7 @@ public class DoxygenBuilder extends Builder {
         if (pathToDoxyfile == null || pathToDoxyfile.trim().length() == 0)
         {
             listener.fatalError("The Doxyfile path is empty. Please review the build step configuration.");
+            return false;
         }
         
         // Raise an error if the doxyfile path doesn't exists
@@ -123,36 +327,648 @@ public class DoxygenBuilder extends Builder {
             return false;
         }
         
-        // Build the command line to run
-        ArgumentListBuilder args = new ArgumentListBuilder();
-        args.add(pathToDoxygen);
-        args.add(pathToDoxyfile);
+        // Resolve the Doxyfiles to process, the path can be a list or a pattern
         FilePath executionDirectory = build.getWorkspace();
+        List<String> doxyfiles;
+        try {
+            doxyfiles = resolveDoxyfiles(executionDirectory, pathToDoxyfile);
+        } catch (IOException e) {
+            listener.fatalError(String.format("Failed resolving the Doxyfiles : \"%s\"", pathToDoxyfile));
+            Util.displayIOException(e, listener);
+            return false;
+        }
+        if (doxyfiles.isEmpty()) {
+            listener.fatalError(String.format("No Doxyfile matches : \"%s\"", pathToDoxyfile));
+            return false;
+        }
+        int cores = launcher.getChannel().call(new AvailableProcessors());
+        int parallelism = Math.min(doxyfiles.size(), maxParallelDoxyfiles > 0 ? maxParallelDoxyfiles : cores);
+        DoxyfileOverrides overrides = getOverrides(executionDirectory.toComputer(), cores, parallelism, envVariables, listener);
+        if (useUpstreamTagFiles) {
+            FilePath tagFilesDirectory = WorkspaceList.tempDir(executionDirectory);
+            try {
+                for (String tagFile : DoxygenTagFiles.fetch(build, (tagFilesDirectory != null ? tagFilesDirectory : executionDirectory).child(TAG_FILES_DIRECTORY), listener)) {
+                    overrides.append(DOXYGEN_KEY_TAGFILES, "\"" + tagFile + "\"");
+                }
+            } catch (IOException e) {
+                listener.getLogger().println(String.format("Unable to fetch the tag files of the upstream projects: %s", e.getMessage()));
+            }
+        }
 
         try {
-            listener.getLogger().println(String.format("Executing the command %s from %s", args.toStringWithQuote(), executionDirectory));
-            // Doxygen output parser to handle warnings and errors
-            DoxygenConsoleParser outputParser = new DoxygenConsoleParser(listener.getLogger(), build.getCharset());
-            // Run the doxygen command line
-            int r = launcher.launch().cmds(args).envs(envVariables).stdout(outputParser).pwd(executionDirectory).join();
+            for (String override : overrides.getLines()) {
+                listener.getLogger().println(String.format("> Doxyfile override: %s", override));
+            }
+
+            // Doxygen warnings and errors of all the Doxyfiles, they are stored in the build for browsing
+            DoxygenWarnings.Writer warnings = new DoxygenWarnings.Writer(DoxygenWarnings.getFile(build), executionDirectory.getRemote());
+            AtomicInteger totalErrors = new AtomicInteger();
+            AtomicInteger totalWarnings = new AtomicInteger();
+            DoxygenTimings timings = timePhases ? new DoxygenTimings() : null;
+            boolean success;
+            try {
+                if (doxyfiles.size() == 1) {
+                    success = generate(build, launcher, listener, pathToDoxygen, doxyfiles.get(0), null, publishWhileGenerating, overrides, envVariables, warnings, totalWarnings, totalErrors, timings) == 0;
+                } else {
+                    if (publishWhileGenerating) {
+                        listener.getLogger().println("The documentation of several Doxyfiles isn't published while it's generated.");
+                    }
+                    listener.getLogger().println(String.format("Generating the documentation of %s Doxyfiles, %s at a time", doxyfiles.size(), parallelism));
+                    success = generateAll(build, launcher, listener, pathToDoxygen, doxyfiles, parallelism, overrides, envVariables, warnings, totalWarnings, totalErrors, timings);
+                }
+            } finally {
+                warnings.close();
+            }
+            int numberOfErrors = totalErrors.get();
+            int numberOfWarnings = totalWarnings.get();
             // Output doxygen execution result
-            listener.getLogger().println(String.format("Doxygen documentation generation ended with %s errors and %s warnings", outputParser.getNumberOfErrors(), outputParser.getNumberOfWarnings()));
+            listener.getLogger().println(String.format("Doxygen documentation generation ended with %s errors and %s warnings", numberOfErrors, numberOfWarnings));
+            if (timings != null) {
+                listener.getLogger().println(String.format("Doxygen phases: %s", timings));
+                build.replaceAction(new DoxygenTimingsAction(timings.getDurations()));
+            }
+
+            // Compare the warnings with the ones of the reference build
+            Run<?, ?> reference = DoxygenFingerprints.findReference(build);
+            long[] referenceFingerprints = reference != null ? DoxygenFingerprints.read(DoxygenFingerprints.getFile(reference)) : null;
+            DoxygenFingerprints.Diff diff = null;
+            if (referenceFingerprints != null) {
+                diff = DoxygenFingerprints.diff(warnings.getFingerprints(), referenceFingerprints);
+                listener.getLogger().println(String.format("%s new and %s fixed warnings compared to %s", diff.getNewWarnings(), diff.getFixedWarnings(), reference.getFullDisplayName()));
+            } else {
+                listener.getLogger().println("No previous successful or unstable build recorded doxygen warnings, the new warnings aren't counted.");
+            }
+            boolean unstableByNewWarnings = unstableIfNewWarnings && diff != null && diff.getNewWarnings() > 0;
+            build.replaceAction(new DoxygenWarningsAction(numberOfWarnings, numberOfErrors, reference, diff, executionDirectory.getRemote(), unstableByNewWarnings));
             
             // Check the number of warnings
-            if (unstableIfWarnings && outputParser.getNumberOfWarnings() > 0) {
+            if (unstableIfWarnings && numberOfWarnings > 0) {
                 listener.getLogger().println("> Set build UNSTABLE because there are warnings.");
                 build.setResult(Result.UNSTABLE);
             }
+            if (unstableByNewWarnings) {
+                listener.getLogger().println("> Set build UNSTABLE because there are new warnings.");
+                build.setResult(Result.UNSTABLE);
+            }
             
             // Return the result of the documentation generation
-            return continueOnBuildFailure ? true : (r == 0);
+            return continueOnBuildFailure ? true : success;
         } catch (IOException e) {
             Util.displayIOException(e, listener);
             build.setResult(Result.FAILURE);
             return false;
         }
     }
+
+    /**
+     * Gets the Doxyfiles to process: a comma or line separated list of paths relative to the workspace,
+     * which can be Ant style patterns like <code>components/&#42;&#42;/Doxyfile</code>.
+     */
+    static List<String> resolveDoxyfiles(FilePath executionDirectory, String doxyfilePath) throws IOException, InterruptedException {
+        Set<String> doxyfiles = new LinkedHashSet<String>();
+        for (String path : doxyfilePath.split("[,\\r\\n]+")) {
+            path = path.trim();
+            if (path.isEmpty()) {
+                continue;
+            }
+            if (path.indexOf('*') < 0 && path.indexOf('?') < 0) {
+                doxyfiles.add(path);
+                continue;
+            }
+            String base = executionDirectory.getRemote();
+            List<String> matches = new ArrayList<String>();
+            for (FilePath doxyfile : executionDirectory.list(path)) {
+                matches.add(doxyfile.getRemote().substring(base.length() + 1).replace('\\', '/'));
+            }
+            Collections.sort(matches);
+            doxyfiles.addAll(matches);
+        }
+        return new ArrayList<String>(doxyfiles);
+    }
+
+    /**
+     * Runs doxygen for several Doxyfiles concurrently, at most <code>parallelism</code> at a time.
+     * The console lines are prefixed with the path of their Doxyfile.
+     *
+     * @return true if doxygen succeeded for all the Doxyfiles
+     */
+    private boolean generateAll(final AbstractBuild<?, ?> build, final Launcher launcher, final BuildListener listener, final String pathToDoxygen,
+            List<String> doxyfiles, int parallelism, final DoxyfileOverrides overrides, final EnvVars envVariables,
+            final DoxygenWarnings.Writer warnings, final AtomicInteger numberOfWarnings, final AtomicInteger numberOfErrors,
+            final DoxygenTimings timings) throws InterruptedException, IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism,
+                new NamingThreadFactory(new DaemonThreadFactory(), "Doxygen " + build.getFullDisplayName()));
+        try {
+            List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+            for (final String doxyfile : doxyfiles) {
+                results.add(executor.submit(() -> {
+                    String prefix = "[" + doxyfile + "] ";
+                    try {
+                        return generate(build, launcher, listener, pathToDoxygen, doxyfile, prefix, false, overrides, envVariables, warnings, numberOfWarnings, numberOfErrors, timings);
+                    } catch (IOException e) {
+                        // the other Doxyfiles are still processed
+                        listener.error(prefix + "Failed generating the documentation: " + e);
+                        return -1;
+                    }
+                }));
+            }
+            boolean success = true;
+            for (Future<Integer> result : results) {
+                try {
+                    success &= result.get() == 0;
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) e.getCause();
+                    }
+                    throw new IOException(e.getCause());
+                }
+            }
+            return success;
+        } finally {
+            // kills the doxygen processes still running when the build is aborted
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs doxygen for one Doxyfile, unless the documentation of the last successful build can be reused.
+     *
+     * @param prefix prefix of the console lines of this Doxyfile, null when it's the only one
+     * @param publish whether the HTML documentation is published with the build while doxygen generates it
+     * @param timings receives the phase durations of this Doxyfile, null when they aren't recorded
+     * @return the exit code of doxygen
+     */
+    private int generate(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener, String pathToDoxygen, String pathToDoxyfile,
+            String prefix, boolean publish, DoxyfileOverrides overrides, EnvVars envVariables, DoxygenWarnings.Writer warnings,
+            AtomicInteger numberOfWarnings, AtomicInteger numberOfErrors, DoxygenTimings timings) throws IOException, InterruptedException {
+        // Build the command line to run
+        FilePath executionDirectory = build.getWorkspace();
+        ArgumentListBuilder args = new ArgumentListBuilder();
+        args.add(pathToDoxygen);
+        if (timings != null) {
+            // timestamps the progress messages
+            args.add("-d", DOXYGEN_DEBUG_TIME);
+        }
+        byte[] configuration = null;
+        if (overrides.isEmpty()) {
+            args.add(pathToDoxyfile);
+        } else {
+            // Doxygen reads the configuration from stdin: the Doxyfile of the workspace followed by the overrides
+            args.add("-");
+            configuration = overrides.toConfiguration(executionDirectory.child(pathToDoxyfile).getRemote());
+        }
+        Map<String, List<String>> values = readDoxyfileValues(executionDirectory, pathToDoxyfile, overrides, envVariables, listener, prefix);
+
+        // Skip doxygen if the documentation of the last successful build was generated from the same inputs
+        String inputs = null;
+        if (skipUnchangedInputs && values != null) {
+            inputs = getInputs(build, launcher, pathToDoxygen, executionDirectory, values, listener, prefix);
+            if (inputs != null && reuseOutput(build, executionDirectory, pathToDoxyfile, values, inputs, listener, prefix, warnings, numberOfWarnings, numberOfErrors)) {
+                if (publish) {
+                    DoxygenStreamingPublisher publisher = startPublishing(build, executionDirectory, values, listener, prefix);
+                    if (publisher != null) {
+                        commitPublishing(publisher, listener, prefix);
+                    }
+                }
+                return 0;
+            }
+        }
+
+        // Restore the dot graphs already rendered on this agent, doxygen doesn't render them again
+        String dotVariant = null;
+        FilePath htmlDirectory = null;
+        String dotCacheDirectory = null;
+        String dotCacheIndex = build.getParent().getFullName() + "/" + pathToDoxyfile;
+        if (cacheDotGraphs && values != null && "YES".equalsIgnoreCase(Util.fixNull(DoxyfileReader.getValue(values, DOXYGEN_KEY_HAVE_DOT)).trim())) {
+            dotVariant = getDotVariant(launcher, executionDirectory, values, envVariables, listener, prefix);
+            if (dotVariant != null) {
+                htmlDirectory = getHtmlDirectory(executionDirectory, values);
+                dotCacheDirectory = getDotCacheDirectory(executionDirectory);
+                try {
+                    DoxygenDotCache.Stats stats = htmlDirectory.act(new DoxygenDotCache.Restore(dotCacheDirectory, dotCacheIndex, dotVariant));
+                    log(listener, prefix, String.format("Restored %s dot graphs from the cache of the agent", stats.getRestored()));
+                } catch (IOException e) {
+                    log(listener, prefix, String.format("Unable to restore the dot graphs, they are rendered again: %s", e.getMessage()));
+                }
+            }
+        }
+
+        // The output is only reused once doxygen generated it successfully from these inputs
+        FilePath inputsMarker = values != null ? DoxygenInputs.getMarker(getHtmlDirectory(executionDirectory, values)) : null;
+        if (inputsMarker != null) {
+            inputsMarker.delete();
+        }
+
+        log(listener, prefix, String.format("Executing the command %s from %s", args.toStringWithQuote(), executionDirectory));
+        // Doxygen writes its warnings to stderr, or to the WARN_LOGFILE
+        FilePath warnLogFile = getWarnLogFile(executionDirectory, values, listener, prefix);
+
+        // Doxygen output parsers to handle warnings and errors, one set per doxygen process
+        DoxygenConsoleParser outputParser = newParser(listener.getLogger(), build, warnings, pathToDoxyfile, prefix);
+        DoxygenConsoleParser errorParser = newParser(listener.getLogger(), build, warnings, pathToDoxyfile, prefix);
+        DoxygenTimings processTimings = timings != null ? new DoxygenTimings() : null;
+        outputParser.setTimings(processTimings);
+        // The log file is only parsed, its content isn't copied to the console
+        DoxygenConsoleParser logParser = newParser(OutputStream.nullOutputStream(), build, warnings, pathToDoxyfile, null);
+        // Run the doxygen command line
+        int r;
+        Launcher.ProcStarter starter = launcher.launch().cmds(args).envs(envVariables).stdout(outputParser).stderr(errorParser).pwd(executionDirectory);
+        if (configuration != null) {
+            starter.stdin(new ByteArrayInputStream(configuration));
+        }
+        // Files of the HTML output are published in batches while doxygen writes the others
+        DoxygenStreamingPublisher publisher = publish ? startPublishing(build, executionDirectory, values, listener, prefix) : null;
+        Proc proc = starter.start();
+        if (warnLogFile != null || publisher != null) {
+            DoxygenLogTail tail = warnLogFile != null ? new DoxygenLogTail(warnLogFile, logParser) : null;
+            long nextBatch = System.currentTimeMillis() + PUBLISH_INTERVAL;
+            try {
+                while (proc.isAlive()) {
+                    if (tail != null) {
+                        tail.poll();
+                    }
+                    if (publisher != null && System.currentTimeMillis() >= nextBatch) {
+                        publisher = publishBatch(publisher, listener, prefix);
+                        nextBatch = System.currentTimeMillis() + PUBLISH_INTERVAL;
+                    }
+                    Thread.sleep(LOG_POLL_INTERVAL);
+                }
+            } catch (InterruptedException e) {
+                proc.kill();
+                if (publisher != null) {
+                    abort(publisher);
+                }
+                throw e;
+            }
+            r = proc.join();
+            if (tail != null) {
+                tail.poll();
+            }
+        } else {
+            r = proc.join();
+        }
+        // the output of doxygen may end without a new line, the console stays open for the next steps
+        outputParser.finish();
+        errorParser.finish();
+        logParser.close();
+        if (publisher != null) {
+            if (r == 0) {
+                commitPublishing(publisher, listener, prefix);
+            } else {
+                abort(publisher);
+            }
+        }
+
+        int errors = outputParser.getNumberOfErrors() + errorParser.getNumberOfErrors() + logParser.getNumberOfErrors();
+        int warningCount = outputParser.getNumberOfWarnings() + errorParser.getNumberOfWarnings() + logParser.getNumberOfWarnings();
+        numberOfErrors.addAndGet(errors);
+        numberOfWarnings.addAndGet(warningCount);
+        if (processTimings != null) {
+            timings.add(processTimings);
+        }
+        if (prefix != null) {
+            log(listener, prefix, String.format("Doxygen ended with exit code %s, %s errors and %s warnings", r, errors, warningCount));
+        }
+        if (inputs != null && r == 0) {
+            DoxygenInputs.write(build, pathToDoxyfile, inputs);
+            inputsMarker.write(inputs, "UTF-8");
+        }
+        if (dotVariant != null && r == 0) {
+            try {
+                DoxygenDotCache.Stats stats = htmlDirectory.act(new DoxygenDotCache.Store(dotCacheDirectory, dotCacheIndex, dotVariant, DoxygenDotCache.MAX_SIZE));
+                log(listener, prefix, String.format("Dot graph cache: %s graphs already cached, %s added, %s evicted, %s MB in total",
+                        stats.getCached(), stats.getAdded(), stats.getEvicted(), stats.getSize() / (1024 * 1024)));
+            } catch (IOException e) {
+                log(listener, prefix, String.format("Unable to store the dot graphs in the cache of the agent: %s", e.getMessage()));
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Prepares the publication of the HTML output of doxygen while it runs.
+     *
+     * @return the publisher, or null if the documentation isn't published while it's generated
+     */
+    private static DoxygenStreamingPublisher startPublishing(AbstractBuild<?, ?> build, FilePath executionDirectory, Map<String, List<String>> values,
+            BuildListener listener, String prefix) {
+        if (values == null) {
+            log(listener, prefix, "The HTML output directory is unknown, the documentation isn't published while it's generated.");
+            return null;
+        }
+        String generateHtml = DoxyfileReader.getValue(values, DOXYGEN_KEY_GENERATE_HTML);
+        if (generateHtml != null && !"YES".equalsIgnoreCase(generateHtml.trim())) {
+            log(listener, prefix, "The HTML output is disabled, the documentation isn't published while it's generated.");
+            return null;
+        }
+        // the documentation is published where the post-build action would have, with the same retention
+        DoxygenArchiver archiver = build.getProject().getPublishersList().get(DoxygenArchiver.class);
+        String conflict = archiver != null ? archiver.getStreamingConflict() : null;
+        if (conflict != null) {
+            log(listener, prefix, String.format("The documentation isn't published while it's generated, the \"%s\" option of the publisher needs to publish it.", conflict));
+            return null;
+        }
+        FilePath htmlDirectory = getHtmlDirectory(executionDirectory, values);
+        DoxygenStreamingPublisher publisher = archiver != null && !archiver.isKeepAll()
+                ? new DoxygenStreamingPublisher(htmlDirectory, DoxygenArchiver.getDoxygenRootDir(build.getProject()), build.getNumber())
+                : new DoxygenStreamingPublisher(htmlDirectory, DoxygenArchiver.getDoxygenDir(build));
+        try {
+            publisher.start();
+            return publisher;
+        } catch (IOException e) {
+            log(listener, prefix, String.format("Unable to prepare the publication of the documentation: %s", e.getMessage()));
+            return null;
+        }
+    }
+
+    /**
+     * @return the publisher, or null if the publication failed and was given up
+     */
+    private static DoxygenStreamingPublisher publishBatch(DoxygenStreamingPublisher publisher, BuildListener listener, String prefix) throws InterruptedException {
+        try {
+            publisher.publishBatch();
+            return publisher;
+        } catch (IOException e) {
+            log(listener, prefix, String.format("Unable to publish the documentation while it's generated: %s", e.getMessage()));
+            abort(publisher);
+            return null;
+        }
+    }
+
+    private static void commitPublishing(DoxygenStreamingPublisher publisher, BuildListener listener, String prefix) throws InterruptedException {
+        try {
+            int remaining = publisher.commit();
+            log(listener, prefix, String.format("Published %s documentation files, %s of them after doxygen ended", publisher.getTransferred(), remaining));
+            if (!publisher.isPublished()) {
+                log(listener, prefix, "A newer build already published its documentation, this one is discarded.");
+            }
+        } catch (IOException e) {
+            log(listener, prefix, String.format("Unable to publish the documentation: %s", e.getMessage()));
+            abort(publisher);
+        }
+    }
+
+    private static void abort(DoxygenStreamingPublisher publisher) {
+        try {
+            publisher.abort();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to delete the documentation staged for publication", e);
+        }
+    }
+
+    private static DoxygenConsoleParser newParser(OutputStream out, AbstractBuild<?, ?> build, DoxygenWarnings.Writer warnings, String pathToDoxyfile, String prefix) {
+        DoxygenConsoleParser parser = new DoxygenConsoleParser(out, build.getCharset(), warnings);
+        parser.setSource(pathToDoxyfile);
+        parser.setLinePrefix(prefix);
+        return parser;
+    }
+
+    private static void log(BuildListener listener, String prefix, String message) {
+        listener.getLogger().println(prefix != null ? prefix + message : message);
+    }
     
+    /**
+     * Gets the Doxyfile settings to apply for this build: the thread counts in auto mode, then the configured overrides
+     * which therefore win.
+     *
+     * @param computer the computer running doxygen, null if it's gone
+     * @param parallelism number of doxygen processes run concurrently by this step
+     */
+    private DoxyfileOverrides getOverrides(Computer computer, int cores, int parallelism, EnvVars envVariables, BuildListener listener) {
+        DoxyfileOverrides overrides = new DoxyfileOverrides();
+        if (autoThreads) {
+            // this build is one of the busy executors
+            int busyExecutors = computer != null ? computer.countBusy() : 1;
+            int threads = getAutoThreads(cores, Math.max(1, busyExecutors) * parallelism);
+            listener.getLogger().println(String.format("Using %s doxygen threads: %s cores shared by %s busy executors and %s doxygen processes",
+                    threads, cores, busyExecutors, parallelism));
+            overrides.add(DOXYGEN_KEY_NUM_PROC_THREADS, String.valueOf(threads));
+            overrides.add(DOXYGEN_KEY_DOT_NUM_THREADS, String.valueOf(threads));
+        }
+        if (timePhases) {
+            // the progress messages are needed for the timings
+            overrides.add(DOXYGEN_KEY_QUIET, "NO");
+        }
+        return overrides.addAll(doxyfileOverrides, envVariables);
+    }
+
+    /**
+     * Splits the cores of the agent between the doxygen processes running on it.
+     */
+    static int getAutoThreads(int cores, int processes) {
+        return Math.min(MAX_THREADS, Math.max(1, cores / Math.max(1, processes)));
+    }
+
+    /**
+     * Reads the values of the Doxyfile, the overrides being applied.
+     *
+     * @return the values, or null if the Doxyfile can't be read
+     */
+    private static Map<String, List<String>> readDoxyfileValues(FilePath executionDirectory, String pathToDoxyfile, DoxyfileOverrides overrides,
+            EnvVars envVariables, BuildListener listener, String prefix) throws InterruptedException {
+        try {
+            Map<String, List<String>> values = executionDirectory.act(new DoxyfileReader(pathToDoxyfile, envVariables));
+            overrides.applyTo(values);
+            return values;
+        } catch (IOException e) {
+            log(listener, prefix, String.format("Unable to read the Doxyfile, only the console output is parsed: %s", e.getMessage()));
+            return null;
+        }
+    }
+
+    /**
+     * Gets the WARN_LOGFILE configured in the Doxyfile, after deleting the one of a previous run.
+     *
+     * @return the log file, or null if doxygen writes its warnings to stderr
+     */
+    private static FilePath getWarnLogFile(FilePath executionDirectory, Map<String, List<String>> values, BuildListener listener, String prefix) throws InterruptedException {
+        String warnLogFile = values != null ? DoxyfileReader.getValue(values, DOXYGEN_KEY_WARN_LOGFILE) : null;
+        if (warnLogFile == null || "-".equals(warnLogFile.trim())) {
+            return null;
+        }
+        try {
+            FilePath logFile = executionDirectory.child(warnLogFile.trim());
+            logFile.delete();
+            log(listener, prefix, String.format("Parsing the doxygen warnings written to %s", logFile.getRemote()));
+            return logFile;
+        } catch (IOException e) {
+            log(listener, prefix, String.format("Unable to delete the %s of a previous run, only the console output is parsed: %s", DOXYGEN_KEY_WARN_LOGFILE, e.getMessage()));
+            return null;
+        }
+    }
+
+    /**
+     * Fingerprints the inputs of doxygen on the node of the workspace.
+     *
+     * @return the fingerprint, or null if it can't be computed
+     */
+    private static String getInputs(AbstractBuild<?, ?> build, Launcher launcher, String pathToDoxygen, FilePath executionDirectory,
+            Map<String, List<String>> values, BuildListener listener, String prefix) throws InterruptedException {
+        try {
+            ByteArrayOutputStream version = new ByteArrayOutputStream();
+            int r = launcher.launch().cmds(pathToDoxygen, "--version").stdout(version).pwd(executionDirectory).quiet(true).join();
+            if (r != 0) {
+                log(listener, prefix, "Unable to get the doxygen version, doxygen is run.");
+                return null;
+            }
+            FilePath cacheDirectory = WorkspaceList.tempDir(executionDirectory);
+            long start = System.currentTimeMillis();
+            String inputs = executionDirectory.act(new DoxygenInputs(values, version.toString(build.getCharset().name()).trim(),
+                    cacheDirectory != null ? cacheDirectory.getRemote() : null));
+            log(listener, prefix, String.format("Fingerprinted the doxygen inputs in %s ms", System.currentTimeMillis() - start));
+            return inputs;
+        } catch (IOException e) {
+            log(listener, prefix, String.format("Unable to fingerprint the doxygen inputs, doxygen is run: %s", e.getMessage()));
+            return null;
+        }
+    }
+
+    /**
+     * Reuses the documentation of the last successful build if it was generated from the same inputs.
+     * The HTML output of the workspace is kept if its marker records these inputs, it's restored from the
+     * published documentation otherwise: a later failed, aborted or different run may have left it.
+     * The warnings reported for the Doxyfile by that build are reported again.
+     *
+     * @return true if doxygen doesn't need to run
+     */
+    private boolean reuseOutput(AbstractBuild<?, ?> build, FilePath executionDirectory, String pathToDoxyfile,
+            Map<String, List<String>> values, String inputs, BuildListener listener, String prefix,
+            DoxygenWarnings.Writer warnings, AtomicInteger numberOfWarnings, AtomicInteger numberOfErrors) throws IOException, InterruptedException {
+        Run<?, ?> previous = build.getPreviousSuccessfulBuild();
+        if (previous == null || !inputs.equals(DoxygenInputs.read(previous, pathToDoxyfile))) {
+            return false;
+        }
+        String generateHtml = DoxyfileReader.getValue(values, DOXYGEN_KEY_GENERATE_HTML);
+        if (generateHtml != null && !"YES".equalsIgnoreCase(generateHtml.trim())) {
+            // only the HTML output can be restored
+            return false;
+        }
+        FilePath htmlDirectory = getHtmlDirectory(executionDirectory, values);
+        FilePath marker = DoxygenInputs.getMarker(htmlDirectory);
+        if (!htmlDirectory.isDirectory() || !marker.exists() || !inputs.equals(marker.readToString())) {
+            File published = DoxygenArchiver.getPublishedDir(previous);
+            if (published == null) {
+                return false;
+            }
+            log(listener, prefix, String.format("Restoring the documentation of %s to %s", previous.getFullDisplayName(), htmlDirectory.getRemote()));
+            // the marker is only written back once the output is complete
+            marker.delete();
+            htmlDirectory.deleteRecursive();
+            if (published.isFile()) {
+                new FilePath(published).unzip(htmlDirectory);
+            } else if (DoxygenListingIndex.isSharded(published)) {
+                restoreSharded(published, htmlDirectory);
+            } else {
+                new FilePath(published).copyRecursiveTo(htmlDirectory);
+            }
+            marker.write(inputs, "UTF-8");
+        }
+        log(listener, prefix, String.format("The doxygen inputs didn't change since %s, the documentation isn't generated again.", previous.getFullDisplayName()));
+        DoxygenInputs.write(build, pathToDoxyfile, inputs);
+
+        // streamed from the previous store to the new one
+        DoxygenWarnings.visit(DoxygenWarnings.getFile(previous), new DoxygenWarnings.Filter(null, null, null).fromSource(pathToDoxyfile), warning -> {
+            warnings.add(pathToDoxyfile, warning.getFile(), warning.getLine(), warning.getCategory(), warning.getMessage());
+            (warning.getCategory() == DoxygenWarnings.Category.ERROR ? numberOfErrors : numberOfWarnings).incrementAndGet();
+        });
+        return true;
+    }
+
+    /**
+     * Restores a sharded tree in the layout written by doxygen, streamed to the agent as a single archive.
+     */
+    private static void restoreSharded(final File published, FilePath htmlDirectory) throws IOException, InterruptedException {
+        final PipedOutputStream pipe = new PipedOutputStream();
+        PipedInputStream in = new PipedInputStream(pipe, 64 * 1024);
+        // the archive is written while it's sent, the archiver closes the pipe when done
+        Future<Integer> archiver = Computer.threadPoolForRemoting.submit(() -> {
+            try {
+                return DoxygenListingIndex.tar(published, pipe);
+            } finally {
+                pipe.close();
+            }
+        });
+        try {
+            htmlDirectory.untarFrom(in, FilePath.TarCompression.NONE);
+        } finally {
+            // stops the archiver if the agent failed
+            in.close();
+        }
+        try {
+            archiver.get();
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to archive the documentation", e.getCause());
+        }
+    }
+
+    /**
+     * Gets what changes the files rendered by dot for the same graph: the dot version and the image format.
+     *
+     * @return the variant, or null if dot can't be run
+     */
+    private static String getDotVariant(Launcher launcher, FilePath executionDirectory, Map<String, List<String>> values,
+            EnvVars envVariables, BuildListener listener, String prefix) throws InterruptedException {
+        String dot = DOXYGEN_DEFAULT_DOT;
+        String dotPath = DoxyfileReader.getValue(values, DOXYGEN_KEY_DOT_PATH);
+        if (dotPath != null) {
+            // DOT_PATH is either the dot executable or its directory
+            dot = dotPath.matches("(?i)(.*[/\\\\])?dot(\\.exe)?") ? dotPath : dotPath + "/" + DOXYGEN_DEFAULT_DOT;
+        }
+        try {
+            ByteArrayOutputStream version = new ByteArrayOutputStream();
+            int r = launcher.launch().cmds(dot, "-V").envs(envVariables).stdout(version).stderr(version).pwd(executionDirectory).quiet(true).join();
+            if (r != 0) {
+                log(listener, prefix, "Unable to get the dot version, the dot graphs aren't cached.");
+                return null;
+            }
+            String imageFormat = DoxyfileReader.getValue(values, DOXYGEN_KEY_DOT_IMAGE_FORMAT);
+            return version.toString("UTF-8").trim() + "|" + (imageFormat != null ? imageFormat.trim() : DOXYGEN_DEFAULT_DOT_IMAGE_FORMAT)
+                    + "|" + Util.fixNull(DoxyfileReader.getValue(values, DOXYGEN_KEY_INTERACTIVE_SVG));
+        } catch (IOException e) {
+            log(listener, prefix, String.format("Unable to run dot, the dot graphs aren't cached: %s", e.getMessage()));
+            return null;
+        }
+    }
+
+    /**
+     * Gets the dot graph cache of the agent, in its root directory.
+     */
+    private static String getDotCacheDirectory(FilePath executionDirectory) {
+        // from the workspace, the Doxyfiles being processed outside of the executor thread
+        Computer computer = executionDirectory.toComputer();
+        Node node = computer != null ? computer.getNode() : null;
+        FilePath root = node != null ? node.getRootPath() : null;
+        if (root == null) {
+            root = WorkspaceList.tempDir(executionDirectory);
+        }
+        return root.child(DOT_CACHE_DIRECTORY).getRemote();
+    }
+
+    /**
+     * Gets the HTML output directory of doxygen, relative paths being resolved from the workspace like doxygen does.
+     */
+    private static FilePath getHtmlDirectory(FilePath executionDirectory, Map<String, List<String>> values) {
+        FilePath directory = executionDirectory;
+        String outputDirectory = DoxyfileReader.getValue(values, DOXYGEN_KEY_OUTPUT_DIRECTORY);
+        if (outputDirectory != null) {
+            directory = directory.child(outputDirectory.trim());
+        }
+        String htmlOutput = DoxyfileReader.getValue(values, DOXYGEN_KEY_HTML_OUTPUT);
+        return directory.child(htmlOutput != null ? htmlOutput.trim() : DOXYGEN_DEFAULT_HTML_OUTPUT);
+    }
+
+
+    /**
+     * Gets the number of cores of the node running doxygen.
+     */
+    private static final class AvailableProcessors extends MasterToSlaveCallable<Integer, RuntimeException> {
+        private static final long serialVersionUID = 1L;
+
+        public Integer call() {
+            return Runtime.getRuntime().availableProcessors();
+        }
+    }
+
     @Override
     public Descriptor<Builder> getDescriptor() {
         return (DescriptorImpl)super.getDescriptor();
@@ -0,0 +1,445 @@
+package hudson.plugins.doxygen;
+
+import hudson.FilePath;
+import hudson.model.Computer;
+import hudson.model.Node;
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import jenkins.MasterToSlaveFileCallable;
+import jenkins.model.Jenkins;
+
+/**
+ * Copies the documentation from an agent in checksummed chunks, resuming after the agent reconnects.
+ *
+ * The agent first lists the files with their size. The files, concatenated in the order of the list, are then read
+ * in chunks of {@link #CHUNK_SIZE} bytes, {@link #PIPELINE} chunks being requested at a time so that the latency of
+ * the connection doesn't limit the throughput. The agent computes the checksum of each chunk while reading it, and of
+ * the files ending in it; the controller verifies the chunk before writing it, and the files against the checksums of
+ * the bytes it wrote. When the connection drops, the transfer waits for the agent to come back and continues with the
+ * first chunk not verified yet.
+ */
+public class DoxygenChunkedTransfer {
+
+    /** Size of the chunks, in bytes */
+    static final int CHUNK_SIZE = Integer.getInteger(DoxygenChunkedTransfer.class.getName() + ".chunkSize", 4 * 1024 * 1024);
+
+    /** Number of chunks requested at a time */
+    static final int PIPELINE = Integer.getInteger(DoxygenChunkedTransfer.class.getName() + ".pipeline", 4);
+
+    /** Number of failed chunks retried before the transfer is given up */
+    static final int MAX_RETRIES = Integer.getInteger(DoxygenChunkedTransfer.class.getName() + ".maxRetries", 10);
+
+    /** Time waited for the agent to reconnect, in milliseconds */
+    static final long RECONNECT_TIMEOUT = Long.getLong(DoxygenChunkedTransfer.class.getName() + ".reconnectTimeout", 5 * 60 * 1000);
+
+    private static final long RECONNECT_POLL_INTERVAL = 5000;
+
+    private final boolean sharded;
+    private final int chunkSize;
+    private final int pipeline;
+
+    /** Checks the links of the pages received, if set */
+    private DoxygenLinkChecker linkChecker;
+
+    /** Checksums of the files partly written, the chunks being written in order */
+    private final Map<String, MessageDigest> digests = new HashMap<String, MessageDigest>();
+
+    /** Size and modification time of the files written, by path in the documentation */
+    private final Map<String, long[]> written = new HashMap<String, long[]>();
+
+    private int chunks = 0;
+    private int retries = 0;
+    private long transferred = 0;
+
+    /**
+     * @param sharded store the files by the hash of their path, see {@link DoxygenListingIndex}
+     */
+    public DoxygenChunkedTransfer(boolean sharded) {
+        this(sharded, CHUNK_SIZE, PIPELINE);
+    }
+
+    DoxygenChunkedTransfer(boolean sharded, int chunkSize, int pipeline) {
+        this.sharded = sharded;
+        this.chunkSize = chunkSize;
+        this.pipeline = Math.max(1, pipeline);
+    }
+
+    /**
+     * Checks the links of the documentation while it's received.
+     */
+    public void setLinkChecker(DoxygenLinkChecker linkChecker) {
+        this.linkChecker = linkChecker;
+    }
+
+    /**
+     * Copies the content of a directory to a local directory, indexing it if it's sharded.
+     *
+     * @return the number of files copied
+     * @throws IOException if the agent didn't come back in time, or a file changed during the transfer
+     */
+    public int copy(FilePath source, File target, TaskListener listener) throws IOException, InterruptedException {
+        Computer computer = source.toComputer();
+        String nodeName = computer != null ? computer.getName() : "";
+        List<Entry> entries = null;
+        while (entries == null) {
+            try {
+                entries = source.act(new ListFiles());
+            } catch (IOException e) {
+                source = retry(nodeName, source, e, listener);
+            }
+        }
+
+        List<List<Span>> plan = plan(entries);
+        // the chunk to write next, and the requests of the following ones
+        int next = 0;
+        int requested = 0;
+        Deque<Future<Chunk>> pending = new ArrayDeque<Future<Chunk>>();
+        try {
+            while (next < plan.size()) {
+                List<Span> spans = plan.get(next);
+                IOException failure = null;
+                Chunk chunk = null;
+                try {
+                    while (pending.size() < pipeline && requested < plan.size()) {
+                        pending.add(fetch(source, plan.get(requested++)));
+                    }
+                    chunk = pending.removeFirst().get();
+                    if (chunk.data.length != length(spans) || !Arrays.equals(chunk.checksum, digest(chunk.data, 0, chunk.data.length))) {
+                        failure = new IOException("Corrupted chunk " + next);
+                    }
+                } catch (IOException e) {
+                    failure = e;
+                } catch (ExecutionException e) {
+                    failure = e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+                }
+                if (failure != null) {
+                    // the chunks following the failed one are requested again
+                    cancel(pending);
+                    requested = next;
+                    source = retry(nodeName, source, failure, listener);
+                    continue;
+                }
+                write(target, spans, chunk);
+                next++;
+                chunks++;
+                transferred += chunk.data.length;
+            }
+        } finally {
+            cancel(pending);
+        }
+
+        for (Entry entry : entries) {
+            File file = getFile(target, entry.path);
+            if (!file.exists()) {
+                // the empty files have no chunk
+                Files.createDirectories(file.getParentFile().toPath());
+                Files.createFile(file.toPath());
+            }
+            if (file.length() != entry.size) {
+                throw new IOException("The copy of " + entry.path + " doesn't match the documentation on the agent, it changed during the transfer");
+            }
+            file.setLastModified(entry.lastModified);
+            written.put(entry.path, new long[] {entry.size, file.lastModified()});
+            if (linkChecker != null) {
+                linkChecker.add(entry.path);
+            }
+        }
+        if (sharded) {
+            // the index maps the paths of the documentation to the shards
+            DoxygenListingIndex.write(target, written, true);
+        }
+        return entries.size();
+    }
+
+    /**
+     * Splits the files, concatenated in the order of the list, in chunks.
+     */
+    private List<List<Span>> plan(List<Entry> entries) {
+        List<List<Span>> plan = new ArrayList<List<Span>>();
+        List<Span> spans = new ArrayList<Span>();
+        int length = 0;
+        for (Entry entry : entries) {
+            long offset = 0;
+            while (offset < entry.size) {
+                int spanLength = (int) Math.min(chunkSize - length, entry.size - offset);
+                spans.add(new Span(entry.path, offset, spanLength, entry.size));
+                offset += spanLength;
+                length += spanLength;
+                if (length == chunkSize) {
+                    plan.add(spans);
+                    spans = new ArrayList<Span>();
+                    length = 0;
+                }
+            }
+        }
+        if (!spans.isEmpty()) {
+            plan.add(spans);
+        }
+        return plan;
+    }
+
+    private static int length(List<Span> spans) {
+        int length = 0;
+        for (Span span : spans) {
+            length += span.length;
+        }
+        return length;
+    }
+
+    private static void cancel(Deque<Future<Chunk>> pending) {
+        for (Future<Chunk> request : pending) {
+            request.cancel(true);
+        }
+        pending.clear();
+    }
+
+    /**
+     * Requests a chunk from the agent.
+     */
+    Future<Chunk> fetch(FilePath source, List<Span> spans) throws IOException, InterruptedException {
+        return source.actAsync(new ReadChunk(spans));
+    }
+
+    /**
+     * Waits for the agent to be online again after a failure.
+     *
+     * @return the documentation directory, on the current channel of the agent
+     */
+    FilePath retry(String nodeName, FilePath source, IOException failure, TaskListener listener) throws IOException, InterruptedException {
+        if (++retries > MAX_RETRIES) {
+            throw new IOException("Giving up the transfer of the documentation after " + MAX_RETRIES + " retries", failure);
+        }
+        listener.getLogger().println("The transfer of the doxygen html documentation failed, it is resumed: " + failure.getMessage());
+        long deadline = System.currentTimeMillis() + RECONNECT_TIMEOUT;
+        while (true) {
+            Node node = nodeName.isEmpty() ? Jenkins.get() : Jenkins.get().getNode(nodeName);
+            VirtualChannel channel = node != null ? node.getChannel() : null;
+            if (channel != null) {
+                return new FilePath(channel, source.getRemote());
+            }
+            if (node == null || System.currentTimeMillis() >= deadline) {
+                throw new IOException(String.format("The agent %s didn't come back, the transfer of the documentation is given up", nodeName), failure);
+            }
+            Thread.sleep(RECONNECT_POLL_INTERVAL);
+        }
+    }
+
+    private File getFile(File target, String path) {
+        return new File(target, sharded ? DoxygenListingIndex.shard(path) : path);
+    }
+
+    /**
+     * Writes a verified chunk, verifying the files ending in it.
+     */
+    private void write(File target, List<Span> spans, Chunk chunk) throws IOException {
+        int offset = 0;
+        for (Span span : spans) {
+            File file = getFile(target, span.path);
+            if (!file.toPath().normalize().startsWith(target.toPath().normalize())) {
+                throw new IOException("Invalid path in the documentation: " + span.path);
+            }
+            Files.createDirectories(file.getParentFile().toPath());
+            try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+                out.seek(span.offset);
+                out.write(chunk.data, offset, span.length);
+            }
+            MessageDigest digest = digests.computeIfAbsent(span.path, path -> newDigest());
+            digest.update(chunk.data, offset, span.length);
+            if (span.isLast()) {
+                digests.remove(span.path);
+                if (!Arrays.equals(digest.digest(), chunk.files.get(span.path))) {
+                    throw new IOException("The copy of " + span.path + " doesn't match the documentation on the agent, it changed during the transfer");
+                }
+            }
+            if (linkChecker != null) {
+                // the chunks are verified and written in order, so the pages are fed one after the other
+                linkChecker.feed(span.path, chunk.data, offset, span.length);
+            }
+            offset += span.length;
+        }
+    }
+
+    /**
+     * Gets the size and modification time of the files copied, by path in the documentation.
+     */
+    public Map<String, long[]> getWrittenFiles() {
+        return written;
+    }
+
+    public int getChunks() {
+        return chunks;
+    }
+
+    public int getRetries() {
+        return retries;
+    }
+
+    public long getTransferred() {
+        return transferred;
+    }
+
+    static byte[] digest(byte[] data, int offset, int length) {
+        MessageDigest digest = newDigest();
+        digest.update(data, offset, length);
+        return digest.digest();
+    }
+
+    static byte[] digest(File file) throws IOException {
+        MessageDigest digest = newDigest();
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file.toPath()), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        return digest.digest();
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * File of the documentation, as listed by the agent.
+     */
+    static final class Entry implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final String path;
+        final long size;
+        final long lastModified;
+
+        Entry(String path, long size, long lastModified) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+    }
+
+    /**
+     * Part of a file belonging to a chunk.
+     */
+    static final class Span implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final String path;
+        final long offset;
+        final int length;
+        /** Size of the file, as listed */
+        final long size;
+
+        Span(String path, long offset, int length, long size) {
+            this.path = path;
+            this.offset = offset;
+            this.length = length;
+            this.size = size;
+        }
+
+        /**
+         * @return true if the file ends in this span
+         */
+        boolean isLast() {
+            return offset + length == size;
+        }
+    }
+
+    /**
+     * Bytes of a chunk with the checksums computed by the agent: of the chunk, and of the files ending in it.
+     */
+    static final class Chunk implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final byte[] data;
+        final byte[] checksum;
+        final Map<String, byte[]> files;
+
+        Chunk(byte[] data, byte[] checksum, Map<String, byte[]> files) {
+            this.data = data;
+            this.checksum = checksum;
+            this.files = files;
+        }
+    }
+
+    /**
+     * Lists the files of the documentation, sorted by path.
+     */
+    private static final class ListFiles extends MasterToSlaveFileCallable<List<Entry>> {
+        private static final long serialVersionUID = 1L;
+
+        public List<Entry> invoke(File dir, VirtualChannel channel) throws IOException {
+            List<Entry> entries = new ArrayList<Entry>();
+            list(dir, "", entries);
+            return entries;
+        }
+
+        private static void list(File dir, String path, List<Entry> entries) throws IOException {
+            String[] names = dir.list();
+            if (names == null) {
+                return;
+            }
+            Arrays.sort(names);
+            for (String name : names) {
+                File child = new File(dir, name);
+                if (child.isDirectory()) {
+                    list(child, path + name + "/", entries);
+                } else {
+                    entries.add(new Entry(path + name, child.length(), child.lastModified()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the spans of a chunk, computing its checksum and the ones of the files ending in it on the way.
+     */
+    private static final class ReadChunk extends MasterToSlaveFileCallable<Chunk> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Span> spans;
+
+        ReadChunk(List<Span> spans) {
+            this.spans = new ArrayList<Span>(spans);
+        }
+
+        public Chunk invoke(File dir, VirtualChannel channel) throws IOException {
+            byte[] data = new byte[length(spans)];
+            Map<String, byte[]> files = new HashMap<String, byte[]>();
+            int offset = 0;
+            for (Span span : spans) {
+                File file = new File(dir, span.path);
+                try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+                    in.seek(span.offset);
+                    in.readFully(data, offset, span.length);
+                }
+                if (span.isLast()) {
+                    // most files are in a single chunk, the others are read again from their start
+                    files.put(span.path, span.offset == 0 ? digest(data, offset, span.length) : digest(file));
+                }
+                offset += span.length;
+            }
+            return new Chunk(data, digest(data, 0, data.length), files);
+        }
+    }
+}
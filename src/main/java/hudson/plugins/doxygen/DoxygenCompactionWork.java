@@ -0,0 +1,104 @@
+package hudson.plugins.doxygen;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.Job;
+import hudson.model.TaskListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import jenkins.model.Jenkins;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Packs the documentation recorded by the old builds, see {@link DoxygenPackedDocs}: the main documentation and the
+ * doc sets of each build.
+ *
+ * The build directories are scanned without loading the builds. A documentation tree is packed once it wasn't
+ * modified for {@link #MIN_AGE_DAYS} days, which leaves the running builds alone, and the I/O is limited to
+ * {@link #BYTES_PER_SECOND}. An interrupted task resumes with the next run: a partial pack is written again, and a
+ * directory whose pack is complete is deleted.
+ */
+@Extension
+public class DoxygenCompactionWork extends AsyncPeriodicWork {
+
+    /** Age of the documentation trees to pack, 0 to disable the packing */
+    static final int MIN_AGE_DAYS = Integer.getInteger(DoxygenCompactionWork.class.getName() + ".minAgeDays", 30);
+
+    /** Maximum number of bytes packed per second */
+    static final long BYTES_PER_SECOND = Long.getLong(DoxygenCompactionWork.class.getName() + ".bytesPerSecond", 10 * 1024 * 1024);
+
+    public DoxygenCompactionWork() {
+        super("Doxygen documentation compaction");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return TimeUnit.HOURS.toMillis(6);
+    }
+
+    @Override
+    protected void execute(TaskListener listener) throws IOException, InterruptedException {
+        if (MIN_AGE_DAYS <= 0) {
+            return;
+        }
+        long maxModified = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(MIN_AGE_DAYS);
+        DoxygenPackedDocs.Throttle throttle = new DoxygenPackedDocs.Throttle(BYTES_PER_SECOND);
+        int packed = 0;
+        for (Job<?, ?> job : Jenkins.get().allItems(Job.class)) {
+            File[] builds = job.getBuildDir().listFiles();
+            if (builds == null) {
+                continue;
+            }
+            for (File build : builds) {
+                // the build numbers, not the permalinks
+                if (!build.getName().matches("\\d+")) {
+                    continue;
+                }
+                List<File> dirs = new ArrayList<File>();
+                dirs.add(new File(build, "doxygen/html"));
+                File[] sets = new File(build, "doxygen/sets").listFiles();
+                if (sets != null) {
+                    for (File set : sets) {
+                        dirs.add(new File(set, "html"));
+                    }
+                }
+                for (File dir : dirs) {
+                    if (compact(dir, maxModified, throttle, listener)) {
+                        packed++;
+                    }
+                }
+            }
+        }
+        listener.getLogger().println(String.format("Packed %s doxygen documentation trees", packed));
+    }
+
+    /**
+     * Packs a documentation tree if it's old enough, or deletes the leftover of a packed one.
+     *
+     * @return true if the tree was packed
+     */
+    static boolean compact(File dir, long maxModified, DoxygenPackedDocs.Throttle throttle, TaskListener listener) throws InterruptedException {
+        if (!dir.isDirectory()) {
+            return false;
+        }
+        try {
+            if (DoxygenPackedDocs.getPack(dir).isFile()) {
+                FileUtils.deleteDirectory(dir);
+            } else if (dir.lastModified() < maxModified) {
+                long size = DoxygenPackedDocs.pack(dir, throttle);
+                listener.getLogger().println(String.format("Packed %s, %s bytes", dir, size));
+                return true;
+            }
+        } catch (IOException e) {
+            // the other trees are still packed
+            e.printStackTrace(listener.error("Failed to pack " + dir));
+        }
+        return false;
+    }
+}
@@ -1,59 +1,311 @@
 package hudson.plugins.doxygen;
 
+import hudson.console.ConsoleNote;
 import hudson.console.LineTransformationOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Parser for the Doxygen output
  */
 public class DoxygenConsoleParser extends LineTransformationOutputStream {
+    private static final Logger LOGGER = Logger.getLogger(DoxygenConsoleParser.class.getName());
+
+    /** Characters which must be encoded as plain ASCII bytes for the byte level matching */
+    private static final String ASCII_PROBE = "WARNING: warning: ERROR: error:\t\r\n";
+
+    private static final byte[] ERROR_MARKER = "rror".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] WARNING_MARKER = "arning:".getBytes(StandardCharsets.US_ASCII);
+
+    /** "$file:$line: $text", the default WARN_FORMAT of doxygen */
+    private static final Pattern LOCATION_PATTERN = Pattern.compile("^(.+):(\\d+):\\s(.*)$");
+
+    private static final int MAX_LINE_NUMBER = 100000000;
+
     private final OutputStream out;
     private final Charset charset;
-    
+    private final boolean asciiCompatible;
+
+    private DoxygenWarnings.Writer warnings;
+    private String source;
+    private byte[] linePrefix;
+    private DoxygenTimings timings;
+
+    /** Serialized notes, computed once and written in front of each matching line */
+    private final byte[] errorNote;
+    private final byte[] warningNote;
+
     private int numberOfWarnings = 0;
     private int numberOfErrors = 0;
-    
+
     public DoxygenConsoleParser(OutputStream out, Charset charset) {
+        this(out, charset, null);
+    }
+
+    /**
+     * @param warnings store receiving every warning and error, can be null
+     */
+    public DoxygenConsoleParser(OutputStream out, Charset charset, DoxygenWarnings.Writer warnings) {
+        this(out, charset, warnings, encode(new DoxygenErrorNote()), encode(new DoxygenWarningNote()));
+    }
+
+    DoxygenConsoleParser(OutputStream out, Charset charset, DoxygenWarnings.Writer warnings, byte[] errorNote, byte[] warningNote) {
         this.out = out;
         this.charset = charset;
+        this.asciiCompatible = isAsciiCompatible(charset);
+        this.warnings = warnings;
+        this.errorNote = errorNote;
+        this.warningNote = warningNote;
+    }
+
+    /**
+     * @param source the Doxyfile the messages are recorded for in the warnings store
+     */
+    public void setSource(String source) {
+        this.source = source;
+    }
+
+    /**
+     * @param linePrefix text written in front of every line copied to the output, can be null
+     */
+    public void setLinePrefix(String linePrefix) {
+        this.linePrefix = linePrefix != null ? linePrefix.getBytes(charset) : null;
     }
-    
+
+    /**
+     * @param timings receives the progress messages timestamped by <code>doxygen -d time</code>, can be null
+     */
+    public void setTimings(DoxygenTimings timings) {
+        this.timings = timings;
+    }
+
     public int getNumberOfWarnings() {
         return numberOfWarnings;
     }
-    
+
     public int getNumberOfErrors() {
         return numberOfErrors;
     }
-    
+
     @Override
     protected void eol(byte[] b, int len) throws IOException {
-        String line = charset.decode(ByteBuffer.wrap(b, 0, len)).toString();
-        
-        // trim off CR/LF from the end
-        line = trimEOL(line);
-        
-        // Error messages handler
-        Matcher m = DoxygenErrorNote.PATTERN.matcher(line);
-        if (m.matches()) { // Match the number of warnings
-            new DoxygenErrorNote().encodeTo(out);
+        byte[] note = null;
+        if (asciiCompatible) {
+            // trim off CR/LF from the end
+            int end = len;
+            while (end > 0 && (b[end - 1] == '\n' || b[end - 1] == '\r')) {
+                end--;
+            }
+
+            // The message either starts the line, or follows the "$file:$line: " of the default WARN_FORMAT
+            int text = 0;
+            int location = -1;
+            DoxygenWarnings.Category category = category(b, 0, end);
+            for (int i = 2; category == null && i + 2 < end; i++) {
+                if (b[i] == ':' && b[i + 1] == ' ' && isDigit(b[i - 1])) {
+                    location = lineNumberStart(b, i) - 1;
+                    if (location > 0) {
+                        text = i + 2;
+                        category = category(b, text, end);
+                    }
+                }
+            }
+
+            if (category != null) {
+                note = count(category);
+                if (warnings != null) {
+                    String file = null;
+                    int line = 0;
+                    if (text > 0) {
+                        file = new String(b, 0, location, charset);
+                        for (int i = location + 1; i < text - 2 && line < MAX_LINE_NUMBER; i++) {
+                            line = line * 10 + (b[i] - '0');
+                        }
+                    }
+                    int message = text + (category == DoxygenWarnings.Category.WARNING ? WARNING_MARKER.length : ERROR_MARKER.length) + 1;
+                    while (message < end && (b[message] == ':' || isWhitespace(b[message]))) {
+                        message++;
+                    }
+                    record(file, line, category, new String(b, message, end - message, charset));
+                }
+            }
+        } else {
+            String line = charset.decode(ByteBuffer.wrap(b, 0, len)).toString();
+
+            // trim off CR/LF from the end
+            line = trimEOL(line);
+
+            String text = line;
+            String file = null;
+            int lineNumber = 0;
+            DoxygenWarnings.Category category = category(text);
+            if (category == null) {
+                Matcher m = LOCATION_PATTERN.matcher(line);
+                if (m.matches()) {
+                    text = m.group(3);
+                    category = category(text);
+                    file = m.group(1);
+                    lineNumber = m.group(2).length() > 9 ? MAX_LINE_NUMBER : Integer.parseInt(m.group(2));
+                }
+            }
+
+            if (category != null) {
+                note = count(category);
+                if (warnings != null) {
+                    String message = text.substring(category == DoxygenWarnings.Category.WARNING ? WARNING_MARKER.length + 1 : ERROR_MARKER.length + 1);
+                    record(file, lineNumber, category, message.replaceFirst("^[:\\s]+", ""));
+                }
+            }
+        }
+
+        if (timings != null && note == null) {
+            timings.parse(trimEOL(charset.decode(ByteBuffer.wrap(b, 0, len)).toString()));
+        }
+
+        // the output can be shared with other parsers, e.g. the one of stderr: never split a line
+        synchronized (out) {
+            if (linePrefix != null) {
+                out.write(linePrefix);
+            }
+            if (note != null) {
+                out.write(note);
+            }
+            out.write(b, 0, len);
+        }
+    }
+
+    /**
+     * @return the note annotating the line
+     */
+    private byte[] count(DoxygenWarnings.Category category) {
+        if (category == DoxygenWarnings.Category.ERROR) {
             this.numberOfErrors++;
+            return errorNote;
         }
-        
-        // Warning messages handler
-        m = DoxygenWarningNote.PATTERN.matcher(line);
-        if (m.matches()) { // Match the number of warnings
-            new DoxygenWarningNote().encodeTo(out);
-            this.numberOfWarnings++;
+        this.numberOfWarnings++;
+        return warningNote;
+    }
+
+    private void record(String file, int line, DoxygenWarnings.Category category, String message) {
+        try {
+            warnings.add(source, file, line, category, message);
+        } catch (IOException e) {
+            // never break the console because of the warnings store
+            LOGGER.log(Level.WARNING, "Failed to record the doxygen warnings, the remaining ones are only counted", e);
+            warnings = null;
         }
-        
-        out.write(b, 0, len);
     }
-    
+
+    private static DoxygenWarnings.Category category(String text) {
+        if (DoxygenErrorNote.PATTERN.matcher(text).matches()) {
+            return DoxygenWarnings.Category.ERROR;
+        }
+        if (DoxygenWarningNote.PATTERN.matcher(text).matches()) {
+            return DoxygenWarnings.Category.WARNING;
+        }
+        return null;
+    }
+
+    private static DoxygenWarnings.Category category(byte[] b, int start, int end) {
+        if (isError(b, start, end)) {
+            return DoxygenWarnings.Category.ERROR;
+        }
+        if (isWarning(b, start, end)) {
+            return DoxygenWarnings.Category.WARNING;
+        }
+        return null;
+    }
+
+    /**
+     * Byte level equivalent of {@link DoxygenErrorNote#PATTERN}.
+     */
+    private static boolean isError(byte[] b, int start, int end) {
+        return end - start > ERROR_MARKER.length + 1
+                && (b[start] == 'E' || b[start] == 'e')
+                && startsWith(b, start + 1, ERROR_MARKER)
+                && (b[start + ERROR_MARKER.length + 1] == ':' || isWhitespace(b[start + ERROR_MARKER.length + 1]));
+    }
+
+    /**
+     * Byte level equivalent of {@link DoxygenWarningNote#PATTERN}.
+     */
+    private static boolean isWarning(byte[] b, int start, int end) {
+        return end - start > WARNING_MARKER.length + 1
+                && (b[start] == 'W' || b[start] == 'w')
+                && startsWith(b, start + 1, WARNING_MARKER)
+                && isWhitespace(b[start + WARNING_MARKER.length + 1]);
+    }
+
+    /**
+     * @param colon index of the colon following a line number
+     * @return the index of the first digit of the line number if it is preceded by a non empty file name, -1 otherwise
+     */
+    private static int lineNumberStart(byte[] b, int colon) {
+        int i = colon;
+        while (i > 0 && isDigit(b[i - 1])) {
+            i--;
+        }
+        return i > 1 && b[i - 1] == ':' ? i : -1;
+    }
+
+    private static boolean isDigit(byte c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean startsWith(byte[] b, int offset, byte[] marker) {
+        for (int i = 0; i < marker.length; i++) {
+            if (b[offset + i] != marker[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Same characters as the regular expression <code>\s</code>.
+     */
+    private static boolean isWhitespace(byte c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Determine if the markers can be matched on the raw bytes, i.e. if the charset encodes ASCII as ASCII.
+     */
+    private static boolean isAsciiCompatible(Charset charset) {
+        return Arrays.equals(ASCII_PROBE.getBytes(charset), ASCII_PROBE.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static byte[] encode(ConsoleNote<?> note) {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        try {
+            note.encodeTo(buf);
+        } catch (IOException e) {
+            // the lines are still counted, only the highlighting is lost
+            LOGGER.log(Level.WARNING, "Failed to encode the console note " + note.getClass().getName(), e);
+        }
+        return buf.toByteArray();
+    }
+
+    /**
+     * Parses and copies the last line even if it isn't terminated, leaving the output open for the other writers.
+     */
+    public void finish() throws IOException {
+        forceEol();
+        out.flush();
+    }
+
+    /**
+     * Parses the last line, then closes the output.
+     */
     @Override
     public void close() throws IOException {
         super.close();
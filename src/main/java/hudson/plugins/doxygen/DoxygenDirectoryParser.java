@@ -30,6 +30,12 @@ public class DoxygenDirectoryParser implements FilePath.FileCallable<FilePath>,
 
     private transient Map<String, String> doxyfileInfos = new HashMap<String, String>();
 
+    /** All the values of each key, "+=" assignments being appended */
+    private transient Map<String, List<String>> doxyfileValues = new LinkedHashMap<String, List<String>>();
+
+    /** Space-separated list, preserving quoted strings */
+    private static final Pattern VALUE_PATTERN = Pattern.compile("((?:[^\"]\\S*)|\"(?:.*?[^\\\\])\")\\s*");
+
     private static final String DOXYGEN_KEY_OUTPUT_DIRECTORY = "OUTPUT_DIRECTORY";
     private static final String DOXYGEN_KEY_GENERATE_HTML = "GENERATE_HTML";
     private static final String DOXYGEN_KEY_HTML_OUTPUT = "HTML_OUTPUT";
@@ -182,6 +188,9 @@ public class DoxygenDirectoryParser implements FilePath.FileCallable<FilePath>,
         if (doxyfileInfos == null) {
             doxyfileInfos = new HashMap<String, String>();
         }
+        if (doxyfileValues == null) {
+            doxyfileValues = new LinkedHashMap<String, List<String>>();
+        }
         while ((line = br.readLine()) != null) {
 
             if (doxyfileLineIsAComment(line)) {
@@ -189,6 +198,12 @@ public class DoxygenDirectoryParser implements FilePath.FileCallable<FilePath>,
                 continue;
             }
 
+            // Join the continued lines of the lists
+            String next;
+            while (line.trim().endsWith("\\") && (next = br.readLine()) != null) {
+                line = line.substring(0, line.lastIndexOf('\\')) + " " + next;
+            }
+
             String[] elements = line.split(separator);
             if (elements.length == 1) {
                 // Either there is no separator in the line or there is nothing behind the separator (i.e. there's no value to the key)
@@ -196,7 +211,7 @@ public class DoxygenDirectoryParser implements FilePath.FileCallable<FilePath>,
             }
             // split space-separated list, preserving quoted strings
             List<String> rhs = new ArrayList<String>();
-            Matcher m = Pattern.compile("((?:[^\"]\\S*)|\"(?:.*?[^\\\\])\")\\s*").matcher(elements[1].trim());
+            Matcher m = VALUE_PATTERN.matcher(elements[1].trim());
             while (m.find())
             {
                 // Replace delimiting quotes and escaped quotes
@@ -222,6 +237,7 @@ public class DoxygenDirectoryParser implements FilePath.FileCallable<FilePath>,
                 }
                 else {
                     doxyfileInfos.put(elements[0].trim(), rhs.get(0));
+                    addDoxyfileValues(line);
                 }
             }
 
@@ -232,6 +248,41 @@ public class DoxygenDirectoryParser implements FilePath.FileCallable<FilePath>,
     }
 
 
+    /**
+     * Records all the values of an assignment, the values containing a separator included.
+     */
+    private void addDoxyfileValues(String line) {
+        int separatorIndex = line.indexOf('=');
+        String key = line.substring(0, separatorIndex).trim();
+        boolean append = key.endsWith("+");
+        if (append) {
+            key = key.substring(0, key.length() - 1).trim();
+        }
+
+        List<String> values = append ? doxyfileValues.get(key) : null;
+        if (values == null) {
+            values = new ArrayList<String>();
+            doxyfileValues.put(key, values);
+        }
+        Matcher m = VALUE_PATTERN.matcher(line.substring(separatorIndex + 1).trim());
+        while (m.find()) {
+            String s = m.group(1).replace("\\\"", "\"").replaceAll("^\"(.*)\"$", "$1");
+            if (!s.equals("\\")) {
+                values.add(expander.expand(s));
+            }
+        }
+    }
+
+    /**
+     * Reads all the values of the Doxyfile, the included files being processed.
+     *
+     * @return the values of each key, in the order of the Doxyfile, with the environment variables expanded
+     */
+    Map<String, List<String>> readDoxyfileValues(FilePath base) throws IOException, InterruptedException {
+        loadDoxyFile(base.child(doxyfilePath));
+        return doxyfileValues;
+    }
+
     private boolean doxyfileLineIsAComment(String line) {
         return line.trim().startsWith("#");
     }
@@ -0,0 +1,113 @@
+package hudson.plugins.doxygen;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.AbstractDescribableImpl;
+import hudson.model.AbstractItem;
+import hudson.model.Descriptor;
+import hudson.model.Run;
+import hudson.util.FormValidation;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.regex.Pattern;
+
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
+
+/**
+ * Additional documentation published by {@link DoxygenArchiver}, from its own Doxyfile or HTML directory.
+ *
+ * Each set is stored under <code>doxygen/sets/&lt;name&gt;</code>, of the builds or of the project like the main
+ * documentation, and browsed under the <code>doxygen-&lt;name&gt;</code> URL.
+ */
+public class DoxygenDocSet extends AbstractDescribableImpl<DoxygenDocSet> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The names are part of the URLs and of the directories, "." and ".." would point to other directories */
+    private static final Pattern NAME_PATTERN = Pattern.compile("[A-Za-z0-9][A-Za-z0-9_.-]*");
+
+    private final String name;
+
+    private final String doxyfilePath;
+
+    /**
+     * Directory of the HTML documentation, used instead of the Doxyfile if set.
+     */
+    private String htmlDirectory;
+
+    @DataBoundConstructor
+    public DoxygenDocSet(String name, String doxyfilePath) {
+        this.name = Util.fixNull(name).trim();
+        this.doxyfilePath = Util.fixEmptyAndTrim(doxyfilePath);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDoxyfilePath() {
+        return doxyfilePath;
+    }
+
+    public String getHtmlDirectory() {
+        return htmlDirectory;
+    }
+
+    @DataBoundSetter
+    public void setHtmlDirectory(String htmlDirectory) {
+        this.htmlDirectory = Util.fixEmptyAndTrim(htmlDirectory);
+    }
+
+    /**
+     * Gets how the HTML directory is found, see {@link DoxygenDirectoryParser}.
+     */
+    String getPublishType() {
+        return htmlDirectory != null ? DoxygenArchiver.DoxygenArchiverDescriptor.DOXYGEN_HTMLDIRECTORY_PUBLISHTYPE
+                : DoxygenArchiver.DoxygenArchiverDescriptor.DOXYGEN_DOXYFILE_PUBLISHTYPE;
+    }
+
+    static boolean isValidName(String name) {
+        return NAME_PATTERN.matcher(name).matches();
+    }
+
+    static String getUrlName(String name) {
+        return "doxygen-" + name;
+    }
+
+    /**
+     * Gets the directory where the doc set is stored for the given build.
+     */
+    static File getDir(Run<?, ?> run, String name) {
+        return new File(getSetsDir(run), name + "/html");
+    }
+
+    /**
+     * Gets the directory holding the doc sets of the given build.
+     */
+    static File getSetsDir(Run<?, ?> run) {
+        return new File(run.getRootDir(), "doxygen/sets");
+    }
+
+    /**
+     * Gets the directory where the doc set is stored for the given project, see {@link DoxygenProjectDocs}.
+     */
+    static File getRootDir(AbstractItem project, String name) {
+        return new File(project.getRootDir(), "doxygen/sets/" + name);
+    }
+
+    @Extension
+    public static class DescriptorImpl extends Descriptor<DoxygenDocSet> {
+        @Override
+        public String getDisplayName() {
+            return "Doxygen documentation set";
+        }
+
+        public FormValidation doCheckName(@QueryParameter String value) {
+            return isValidName(Util.fixNull(value).trim()) ? FormValidation.ok()
+                    : FormValidation.error("The name must start with a letter or a digit, and may only contain letters, digits, '.', '_' and '-'.");
+        }
+    }
+}
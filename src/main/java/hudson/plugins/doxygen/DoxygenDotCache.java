@@ -0,0 +1,398 @@
+package hudson.plugins.doxygen;
+
+import hudson.remoting.VirtualChannel;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import jenkins.MasterToSlaveFileCallable;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Cache of the dot graphs rendered by doxygen, shared by the builds of an agent.
+ *
+ * Doxygen writes the MD5 of the dot source of each graph to a <code>.md5</code> file next to the image, and doesn't run dot
+ * again when the signature and the image are already in the output directory. After a run, the images and image maps
+ * are stored in the cache by the hash of the signature, the dot version and the image format. Before the next run,
+ * the graphs of the previous run are restored, so that doxygen only renders the graphs which changed.
+ *
+ * The layout of the cache directory is:
+ * <pre>
+ * objects/xx/hash/   : the files of a graph, named by extension, the modification time giving the LRU order
+ * index/hash         : the graphs of the last run of a Doxyfile, "relative path TAB signature" per line
+ * size               : the total size of the graphs in bytes, so that the cache is only scanned to evict graphs
+ * </pre>
+ */
+public final class DoxygenDotCache {
+
+    private static final Logger LOGGER = Logger.getLogger(DoxygenDotCache.class.getName());
+
+    /** Maximum size of the cache of an agent, in megabytes */
+    static final long MAX_SIZE = Long.getLong(DoxygenDotCache.class.getName() + ".maxSize", 2048);
+
+    /** The cache is trimmed to this ratio of its maximum size, so that it's not trimmed by every build */
+    private static final double EVICTION_RATIO = 0.9;
+
+    private static final String SIGNATURE_EXTENSION = "md5";
+
+    private static final String SIZE_FILE = "size";
+
+    /** Files rendered by dot for a graph */
+    private static final String[] DELIVERABLE_EXTENSIONS = {"png", "svg", "jpg", "jpeg", "gif", "map"};
+
+    private DoxygenDotCache() {
+    }
+
+    /**
+     * Counters of a cache operation, printed to the console.
+     */
+    public static final class Stats implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        int restored;
+        int cached;
+        int added;
+        int evicted;
+        long size;
+
+        public int getRestored() {
+            return restored;
+        }
+
+        /**
+         * @return the number of graphs of the run which were already in the cache, whether doxygen reused them or not
+         */
+        public int getCached() {
+            return cached;
+        }
+
+        /**
+         * @return the number of graphs of the run added to the cache
+         */
+        public int getAdded() {
+            return added;
+        }
+
+        public int getEvicted() {
+            return evicted;
+        }
+
+        public long getSize() {
+            return size;
+        }
+    }
+
+    /**
+     * Base of the operations, run on the HTML output directory.
+     */
+    private abstract static class Operation extends MasterToSlaveFileCallable<Stats> {
+        private static final long serialVersionUID = 1L;
+
+        protected final String cacheDirectory;
+        protected final String indexName;
+        protected final String variant;
+
+        /**
+         * @param cacheDirectory cache directory on the agent
+         * @param indexName identifies the Doxyfile, e.g. the job name and the Doxyfile path
+         * @param variant the dot version and the image format, which change the rendered files
+         */
+        Operation(String cacheDirectory, String indexName, String variant) {
+            this.cacheDirectory = cacheDirectory;
+            this.indexName = indexName;
+            this.variant = variant;
+        }
+
+        protected Path getIndex() {
+            return new File(cacheDirectory, "index/" + hash(indexName)).toPath();
+        }
+
+        protected Path getEntry(String signature) {
+            String key = hash(signature + '\0' + variant);
+            return new File(cacheDirectory, "objects/" + key.substring(0, 2) + "/" + key.substring(2)).toPath();
+        }
+    }
+
+    /**
+     * Restores the graphs of the last run of the Doxyfile which are in the cache, before running doxygen.
+     */
+    public static final class Restore extends Operation {
+        private static final long serialVersionUID = 1L;
+
+        public Restore(String cacheDirectory, String indexName, String variant) {
+            super(cacheDirectory, indexName, variant);
+        }
+
+        public Stats invoke(File html, VirtualChannel channel) throws IOException {
+            Stats stats = new Stats();
+            Path index = getIndex();
+            if (!Files.isRegularFile(index)) {
+                return stats;
+            }
+            FileTime now = FileTime.fromMillis(System.currentTimeMillis());
+            for (Map.Entry<String, String> graph : readIndex(index).entrySet()) {
+                Path base = html.toPath().resolve(graph.getKey()).normalize();
+                Path signature = sibling(base, SIGNATURE_EXTENSION);
+                Path entry = getEntry(graph.getValue());
+                if (!base.startsWith(html.toPath()) || Files.exists(signature) || !Files.isDirectory(entry)) {
+                    // never overwrite what doxygen left in the output directory
+                    continue;
+                }
+                try {
+                    Files.createDirectories(base.getParent());
+                    try (DirectoryStream<Path> files = Files.newDirectoryStream(entry)) {
+                        for (Path file : files) {
+                            Files.copy(file, sibling(base, file.getFileName().toString()), StandardCopyOption.REPLACE_EXISTING);
+                        }
+                    }
+                    Files.setLastModifiedTime(entry, now);
+                    stats.restored++;
+                } catch (NoSuchFileException e) {
+                    // evicted by a concurrent build
+                    Files.deleteIfExists(signature);
+                }
+            }
+            return stats;
+        }
+    }
+
+    /**
+     * Stores the graphs rendered by doxygen, records the graphs of the run and evicts the least recently used graphs.
+     */
+    public static final class Store extends Operation {
+        private static final long serialVersionUID = 1L;
+
+        private final long maxSize;
+
+        public Store(String cacheDirectory, String indexName, String variant, long maxSize) {
+            super(cacheDirectory, indexName, variant);
+            this.maxSize = maxSize;
+        }
+
+        public Stats invoke(File html, VirtualChannel channel) throws IOException {
+            final Stats stats = new Stats();
+            final Path root = html.toPath();
+            final Map<String, String> graphs = new LinkedHashMap<String, String>();
+            final long[] addedBytes = {0};
+            final FileTime now = FileTime.fromMillis(System.currentTimeMillis());
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    String name = file.getFileName().toString();
+                    if (!name.endsWith("." + SIGNATURE_EXTENSION)) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                    Path base = file.resolveSibling(name.substring(0, name.length() - SIGNATURE_EXTENSION.length() - 1));
+                    String signature = new String(Files.readAllBytes(file), StandardCharsets.US_ASCII).trim();
+                    List<Path> deliverables = new ArrayList<Path>();
+                    for (String extension : DELIVERABLE_EXTENSIONS) {
+                        Path deliverable = sibling(base, extension);
+                        if (Files.isRegularFile(deliverable)) {
+                            deliverables.add(deliverable);
+                        }
+                    }
+                    if (signature.isEmpty() || deliverables.isEmpty()) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                    graphs.put(root.relativize(base).toString().replace('\\', '/'), signature);
+
+                    Path entry = getEntry(signature);
+                    if (Files.isDirectory(entry)) {
+                        Files.setLastModifiedTime(entry, now);
+                        stats.cached++;
+                    } else {
+                        deliverables.add(file);
+                        addedBytes[0] += store(entry, deliverables);
+                        stats.added++;
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            writeIndex(getIndex(), graphs);
+            evict(stats, addedBytes[0]);
+            return stats;
+        }
+
+        /**
+         * @return the number of bytes stored, 0 if a concurrent build stored the graph
+         */
+        private long store(Path entry, List<Path> files) throws IOException {
+            Files.createDirectories(entry.getParent());
+            // written aside then moved, so that concurrent builds never restore a partial graph
+            Path temp = Files.createTempDirectory(entry.getParent(), "tmp");
+            try {
+                long size = 0;
+                for (Path file : files) {
+                    String name = file.getFileName().toString();
+                    Path copy = temp.resolve(name.substring(name.lastIndexOf('.') + 1));
+                    Files.copy(file, copy);
+                    size += Files.size(copy);
+                }
+                Files.move(temp, entry, StandardCopyOption.ATOMIC_MOVE);
+                return size;
+            } catch (FileAlreadyExistsException e) {
+                // stored by a concurrent build
+                return 0;
+            } finally {
+                if (Files.exists(temp)) {
+                    FileUtils.deleteDirectory(temp.toFile());
+                }
+            }
+        }
+
+        /**
+         * Adds the graphs stored by the run to the recorded size of the cache, and deletes the least recently used
+         * graphs if it's over its maximum size. The cache is only scanned to evict, or when its size isn't recorded:
+         * the scan also corrects the recorded size, which doesn't see the graphs deleted by hand.
+         *
+         * @param added number of bytes stored by the run
+         */
+        private void evict(Stats stats, long added) throws IOException {
+            // the builds running on the agent share the recorded size
+            synchronized (DoxygenDotCache.class) {
+                Path sizeFile = new File(cacheDirectory, SIZE_FILE).toPath();
+                long max = maxSize * 1024 * 1024;
+                long total = readSize(sizeFile);
+                if (total >= 0) {
+                    total += added;
+                }
+                if (total < 0 || total > max) {
+                    total = trim(stats, max);
+                }
+                writeSize(sizeFile, total);
+                stats.size = total;
+            }
+        }
+
+        /**
+         * Deletes the least recently used graphs until the cache is under its maximum size.
+         *
+         * @return the size of the cache
+         */
+        private long trim(Stats stats, long max) throws IOException {
+            File objects = new File(cacheDirectory, "objects");
+            final List<File> entries = new ArrayList<File>();
+            final Map<File, Long> sizes = new LinkedHashMap<File, Long>();
+            final Map<File, Long> lastUsed = new LinkedHashMap<File, Long>();
+            long total = 0;
+            File[] shards = objects.listFiles();
+            for (File shard : shards != null ? shards : new File[0]) {
+                File[] graphEntries = shard.listFiles();
+                for (File entry : graphEntries != null ? graphEntries : new File[0]) {
+                    if (entry.getName().startsWith("tmp")) {
+                        continue;
+                    }
+                    long size = FileUtils.sizeOfDirectory(entry);
+                    entries.add(entry);
+                    sizes.put(entry, size);
+                    lastUsed.put(entry, entry.lastModified());
+                    total += size;
+                }
+            }
+            if (total > max) {
+                Collections.sort(entries, Comparator.comparing(lastUsed::get));
+                for (File entry : entries) {
+                    if (total <= max * EVICTION_RATIO) {
+                        break;
+                    }
+                    try {
+                        FileUtils.deleteDirectory(entry);
+                        total -= sizes.get(entry);
+                        stats.evicted++;
+                    } catch (IOException e) {
+                        LOGGER.log(Level.FINE, "Failed to evict the dot graph " + entry, e);
+                    }
+                }
+            }
+            return total;
+        }
+    }
+
+    /**
+     * @return the recorded size of the cache, or -1 if it isn't recorded
+     */
+    static long readSize(Path sizeFile) {
+        try {
+            return Long.parseLong(new String(Files.readAllBytes(sizeFile), StandardCharsets.US_ASCII).trim());
+        } catch (IOException | NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void writeSize(Path sizeFile, long size) throws IOException {
+        Files.createDirectories(sizeFile.getParent());
+        Path temp = Files.createTempFile(sizeFile.getParent(), SIZE_FILE, ".tmp");
+        Files.write(temp, Long.toString(size).getBytes(StandardCharsets.US_ASCII));
+        Files.move(temp, sizeFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static Path sibling(Path base, String extension) {
+        return base.resolveSibling(base.getFileName() + "." + extension);
+    }
+
+    static Map<String, String> readIndex(Path index) throws IOException {
+        Map<String, String> graphs = new LinkedHashMap<String, String>();
+        try (BufferedReader reader = Files.newBufferedReader(index, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int tab = line.lastIndexOf('\t');
+                if (tab > 0) {
+                    graphs.put(line.substring(0, tab), line.substring(tab + 1));
+                }
+            }
+        }
+        return graphs;
+    }
+
+    static void writeIndex(Path index, Map<String, String> graphs) throws IOException {
+        Files.createDirectories(index.getParent());
+        Path temp = Files.createTempFile(index.getParent(), index.getFileName().toString(), ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, String> graph : graphs.entrySet()) {
+                writer.write(graph.getKey());
+                writer.write('\t');
+                writer.write(graph.getValue());
+                writer.newLine();
+            }
+        }
+        Files.move(temp, index, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static String hash(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package hudson.plugins.doxygen;
+
+import hudson.FilePath;
+import hudson.Util;
+import hudson.model.Computer;
+import hudson.model.Item;
+import hudson.remoting.VirtualChannel;
+import hudson.util.FormValidation;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import jenkins.MasterToSlaveFileCallable;
+import jenkins.util.Timer;
+
+import org.apache.tools.ant.types.selectors.SelectorUtils;
+
+/**
+ * Validation of a file mask against a workspace which doesn't hold the request thread while the workspace is scanned.
+ *
+ * The workspace is scanned in the background, visiting at most {@link FilePath#VALIDATE_ANT_FILE_MASK_BOUND} entries
+ * for at most {@link #TIME_BUDGET} milliseconds: the scan runs on the node of the workspace and stops by itself at its
+ * deadline, so it doesn't go on once the form answered. The request waits {@link #WAIT} milliseconds for the result, then
+ * answers that the validation is pending. The results are kept {@link #TTL} milliseconds for the project, so the next
+ * check of the same mask, while typing or when the page is reloaded, gets the result of the scan without scanning again.
+ * The callers check that the user may configure the project first.
+ */
+public final class DoxygenFileMaskCheck {
+
+    /** Maximum duration of a scan, in milliseconds */
+    static final long TIME_BUDGET = Long.getLong(DoxygenFileMaskCheck.class.getName() + ".timeBudget", 10000);
+
+    /** Time a request waits for the scan, in milliseconds */
+    static final long WAIT = Long.getLong(DoxygenFileMaskCheck.class.getName() + ".wait", 1000);
+
+    /** Time a result is kept, in milliseconds */
+    static final long TTL = Long.getLong(DoxygenFileMaskCheck.class.getName() + ".ttl", 60000);
+
+    /** Number of results kept */
+    private static final int MAX_RESULTS = 256;
+
+    private static final Map<String, Check> CHECKS = new ConcurrentHashMap<String, Check>();
+
+    private DoxygenFileMaskCheck() {
+    }
+
+    /**
+     * Validates that the file mask matches files of the workspace of a project.
+     */
+    public static FormValidation validate(Item project, final FilePath workspace, final String mask) {
+        Computer computer = workspace.toComputer();
+        // the results are only shared by the users of the same project
+        String key = project.getFullName() + "\n" + (computer != null ? computer.getName() : "") + ":" + workspace.getRemote() + "\n" + mask;
+        return check(key, new Callable<FormValidation>() {
+            public FormValidation call() throws IOException, InterruptedException {
+                return toFormValidation(workspace.act(new Scan(mask, FilePath.VALIDATE_ANT_FILE_MASK_BOUND, TIME_BUDGET)));
+            }
+        });
+    }
+
+    static FormValidation toFormValidation(Outcome outcome) {
+        if (outcome.unmatched == null) {
+            return FormValidation.ok();
+        }
+        if (outcome.timedOut) {
+            return tooLarge();
+        }
+        if (!outcome.complete) {
+            return FormValidation.ok(String.format("No file matched in the first %s entries of the workspace, the rest wasn't checked.",
+                    FilePath.VALIDATE_ANT_FILE_MASK_BOUND));
+        }
+        return FormValidation.error(String.format("'%s' doesn't match any file of the workspace.", outcome.unmatched));
+    }
+
+    private static FormValidation tooLarge() {
+        return FormValidation.ok(String.format("The workspace is too large to be checked in %s seconds, the pattern wasn't validated.", TIME_BUDGET / 1000));
+    }
+
+    /**
+     * Gets the result of a check, starting it if there's no recent result.
+     */
+    static FormValidation check(String key, Callable<FormValidation> validation) {
+        Check check = CHECKS.get(key);
+        if (check == null || check.isExpired()) {
+            prune();
+            // the concurrent requests for the same mask share the check
+            check = CHECKS.compute(key, (k, existing) -> existing != null && !existing.isExpired() ? existing : new Check(validation));
+        }
+        check.start();
+        return check.get();
+    }
+
+    /**
+     * Removes the expired results, then any result if there are still too many.
+     */
+    private static void prune() {
+        CHECKS.values().removeIf(Check::isExpired);
+        Iterator<Check> checks = CHECKS.values().iterator();
+        while (CHECKS.size() >= MAX_RESULTS && checks.hasNext()) {
+            checks.next();
+            checks.remove();
+        }
+    }
+
+    static void clear() {
+        CHECKS.clear();
+    }
+
+    /**
+     * Scan of a workspace, running or done.
+     */
+    private static final class Check {
+        private final Callable<FormValidation> validation;
+        private volatile Future<FormValidation> future;
+        /** End of the scan, 0 while it runs */
+        private volatile long end = 0;
+
+        Check(Callable<FormValidation> validation) {
+            this.validation = validation;
+        }
+
+        synchronized void start() {
+            if (future != null) {
+                return;
+            }
+            future = Computer.threadPoolForRemoting.submit(() -> {
+                try {
+                    return validation.call();
+                } finally {
+                    end = System.currentTimeMillis();
+                }
+            });
+            final Future<FormValidation> scan = future;
+            // the scan stops at its deadline, unless the node doesn't answer
+            Timer.get().schedule(() -> scan.cancel(true), TIME_BUDGET + WAIT, TimeUnit.MILLISECONDS);
+        }
+
+        boolean isExpired() {
+            return end != 0 && System.currentTimeMillis() - end > TTL;
+        }
+
+        FormValidation get() {
+            try {
+                return future.get(WAIT, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                return FormValidation.ok("The workspace is being checked, edit the field again in a few seconds to see the result.");
+            } catch (CancellationException e) {
+                if (end == 0) {
+                    // cancelled before it ran
+                    end = System.currentTimeMillis();
+                }
+                return tooLarge();
+            } catch (ExecutionException e) {
+                return FormValidation.warning(String.format("Unable to check the workspace: %s", e.getCause().getMessage()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return FormValidation.ok();
+            }
+        }
+    }
+
+    /**
+     * Result of a scan.
+     */
+    static final class Outcome implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        /** First pattern of the mask which matched nothing, null if they all matched */
+        String unmatched;
+        /** False if the scan stopped before the end of the workspace */
+        boolean complete = true;
+        /** True if the scan stopped at its deadline */
+        boolean timedOut;
+    }
+
+    /**
+     * Checks that each pattern of a file mask matches a file or a directory of the workspace, like
+     * {@link FilePath#validateAntFileMask}, but stops at its deadline, measured with the clock of the node.
+     */
+    static final class Scan extends MasterToSlaveFileCallable<Outcome> {
+        private static final long serialVersionUID = 1L;
+
+        private final String mask;
+        private final int bound;
+        private final long budget;
+
+        /**
+         * @param mask comma separated Ant patterns
+         * @param bound maximum number of entries visited
+         * @param budget maximum duration of the scan, in milliseconds
+         */
+        Scan(String mask, int bound, long budget) {
+            this.mask = mask;
+            this.bound = bound;
+            this.budget = budget;
+        }
+
+        public Outcome invoke(File workspace, VirtualChannel channel) throws IOException {
+            final long deadline = System.currentTimeMillis() + budget;
+            final Set<String> unmatched = new LinkedHashSet<String>();
+            for (String pattern : mask.split(",")) {
+                pattern = Util.fixEmptyAndTrim(pattern);
+                if (pattern != null) {
+                    pattern = pattern.replace('/', File.separatorChar).replace('\\', File.separatorChar);
+                    // like Ant, a directory matches its whole content
+                    unmatched.add(pattern.endsWith(File.separator) ? pattern + "**" : pattern);
+                }
+            }
+            final Outcome outcome = new Outcome();
+            final Path root = workspace.toPath();
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                private int visited = 0;
+
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    return dir.equals(root) ? FileVisitResult.CONTINUE : visit(dir);
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    return visit(file);
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    return FileVisitResult.CONTINUE;
+                }
+
+                private FileVisitResult visit(Path path) {
+                    String relativePath = root.relativize(path).toString();
+                    unmatched.removeIf(pattern -> SelectorUtils.matchPath(pattern, relativePath, true));
+                    if (unmatched.isEmpty()) {
+                        return FileVisitResult.TERMINATE;
+                    }
+                    if (++visited >= bound) {
+                        outcome.complete = false;
+                        return FileVisitResult.TERMINATE;
+                    }
+                    if (System.currentTimeMillis() > deadline) {
+                        outcome.complete = false;
+                        outcome.timedOut = true;
+                        return FileVisitResult.TERMINATE;
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            outcome.unmatched = unmatched.isEmpty() ? null : unmatched.iterator().next();
+            return outcome;
+        }
+    }
+}
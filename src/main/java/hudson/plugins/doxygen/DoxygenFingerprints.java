@@ -0,0 +1,216 @@
+package hudson.plugins.doxygen;
+
+import hudson.model.Result;
+import hudson.model.Run;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+/**
+ * Fingerprints of the doxygen warnings of a build, used to tell the new warnings from the standing ones.
+ *
+ * A fingerprint is a 64 bits FNV-1a hash of the category, the file path relative to the workspace and the message.
+ * Line numbers are ignored, so moving code around doesn't make a warning new.
+ * The fingerprints of a build are stored as a sorted array of longs, duplicates included.
+ */
+public final class DoxygenFingerprints {
+
+    public static final String FILE_NAME = "fingerprints.bin";
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /** Line numbers quoted in the messages, e.g. "at line 12" or "file.h:12" */
+    private static final Pattern LINE_NUMBERS = Pattern.compile("(line |:)\\d+");
+
+    private DoxygenFingerprints() {
+    }
+
+    /**
+     * Gets the fingerprints file of the given build.
+     */
+    public static File getFile(Run<?, ?> run) {
+        return new File(run.getRootDir(), "doxygen/" + FILE_NAME);
+    }
+
+    /**
+     * Computes the fingerprint of a warning.
+     *
+     * @param workspace absolute path of the workspace, stripped from the paths so that the fingerprints
+     * don't depend on the agent. Can be null.
+     */
+    public static long fingerprint(DoxygenWarnings.Category category, String file, String message, String workspace) {
+        long hash = FNV_OFFSET_BASIS;
+        hash = hash(hash, category.name());
+        hash = hash(hash, normalizePath(file, workspace));
+        hash = hash(hash, normalizeMessage(message, workspace));
+        return hash;
+    }
+
+    static String normalizePath(String file, String workspace) {
+        if (file == null) {
+            return "";
+        }
+        String path = file.replace('\\', '/');
+        if (workspace != null) {
+            String base = workspace.replace('\\', '/');
+            if (!base.endsWith("/")) {
+                base += "/";
+            }
+            if (path.startsWith(base)) {
+                path = path.substring(base.length());
+            }
+        }
+        return path;
+    }
+
+    static String normalizeMessage(String message, String workspace) {
+        String normalized = message;
+        if (workspace != null && !workspace.isEmpty()) {
+            normalized = normalized.replace(workspace, "");
+        }
+        return LINE_NUMBERS.matcher(normalized.trim()).replaceAll("$1#");
+    }
+
+    private static long hash(long hash, String value) {
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= (b & 0xff);
+            hash *= FNV_PRIME;
+        }
+        // separator, so that ("ab", "c") and ("a", "bc") differ
+        hash ^= 0xff;
+        hash *= FNV_PRIME;
+        return hash;
+    }
+
+    /**
+     * Growable array of fingerprints, shared by the parsers of a build step.
+     */
+    public static final class Collector {
+        private long[] values = new long[1024];
+        private int size = 0;
+
+        public synchronized void add(long fingerprint) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = fingerprint;
+        }
+
+        public synchronized long[] toSortedArray() {
+            long[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+
+    public static void write(File file, long[] sorted) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(sorted.length);
+            for (long fingerprint : sorted) {
+                out.writeLong(fingerprint);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * @return the sorted fingerprints, or null if the file doesn't exist
+     */
+    public static long[] read(File file) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            long[] sorted = new long[in.readInt()];
+            for (int i = 0; i < sorted.length; i++) {
+                sorted[i] = in.readLong();
+            }
+            return sorted;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Finds the latest successful or unstable build before the given one which recorded fingerprints.
+     * The failed and aborted builds are skipped, their warnings may come from a partial run. So are the builds made
+     * unstable by their new warnings, which would hide the new warnings of the next builds.
+     */
+    public static Run<?, ?> findReference(Run<?, ?> build) {
+        for (Run<?, ?> run = build.getPreviousCompletedBuild(); run != null; run = run.getPreviousCompletedBuild()) {
+            Result result = run.getResult();
+            if (result == null || !result.isBetterOrEqualTo(Result.UNSTABLE) || !getFile(run).isFile()) {
+                continue;
+            }
+            DoxygenWarningsAction action = run.getAction(DoxygenWarningsAction.class);
+            if (action == null || !action.isUnstableByNewWarnings()) {
+                return run;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Compares two sorted fingerprint arrays in a single merge pass.
+     * A warning reported twice in the current build and once in the reference counts as one new warning.
+     */
+    public static Diff diff(long[] current, long[] reference) {
+        int newWarnings = 0;
+        int fixedWarnings = 0;
+        int i = 0;
+        int j = 0;
+        while (i < current.length && j < reference.length) {
+            if (current[i] < reference[j]) {
+                newWarnings++;
+                i++;
+            } else if (current[i] > reference[j]) {
+                fixedWarnings++;
+                j++;
+            } else {
+                i++;
+                j++;
+            }
+        }
+        newWarnings += current.length - i;
+        fixedWarnings += reference.length - j;
+        return new Diff(newWarnings, fixedWarnings);
+    }
+
+    public static boolean contains(long[] sorted, long fingerprint) {
+        return Arrays.binarySearch(sorted, fingerprint) >= 0;
+    }
+
+    /**
+     * Result of the comparison with the reference build.
+     */
+    public static final class Diff {
+        private final int newWarnings;
+        private final int fixedWarnings;
+
+        public Diff(int newWarnings, int fixedWarnings) {
+            this.newWarnings = newWarnings;
+            this.fixedWarnings = fixedWarnings;
+        }
+
+        public int getNewWarnings() {
+            return newWarnings;
+        }
+
+        public int getFixedWarnings() {
+            return fixedWarnings;
+        }
+    }
+}
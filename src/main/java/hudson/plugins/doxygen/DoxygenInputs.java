@@ -0,0 +1,438 @@
+package hudson.plugins.doxygen;
+
+import hudson.FilePath;
+import hudson.model.Run;
+import hudson.remoting.VirtualChannel;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+import jenkins.MasterToSlaveFileCallable;
+
+/**
+ * Fingerprint of everything doxygen reads: the source files selected by the Doxyfile, the Doxyfile values and the
+ * doxygen version. Two runs with the same fingerprint generate the same documentation.
+ *
+ * The files are hashed in parallel on the node of the workspace. The hashes are cached by path, size and
+ * modification time in a file of the workspace temporary directory, so only the modified files are read again.
+ */
+public class DoxygenInputs extends MasterToSlaveFileCallable<String> {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger LOGGER = Logger.getLogger(DoxygenInputs.class.getName());
+
+    public static final String FILE_NAME = "inputs.properties";
+
+    /** Suffix of the file recording the fingerprint next to the HTML output in the workspace */
+    static final String MARKER_SUFFIX = ".inputs";
+
+    static final String CACHE_FILE_NAME = "doxygen-inputs.cache";
+
+    private static final int CACHE_MAGIC = 0x44584931; // "DXI1"
+
+    /**
+     * Files modified this recently aren't cached: a later modification could keep the same size and
+     * modification time on file systems with a coarse time resolution.
+     */
+    private static final long MODIFICATION_TIME_RESOLUTION = 2000;
+
+    private static final String[] DEFAULT_FILE_PATTERNS = {
+        "*.c", "*.cc", "*.cxx", "*.cpp", "*.c++", "*.java", "*.ii", "*.ixx", "*.ipp", "*.i++", "*.inl", "*.idl",
+        "*.ddl", "*.odl", "*.h", "*.hh", "*.hxx", "*.hpp", "*.h++", "*.l", "*.cs", "*.d", "*.php", "*.php4",
+        "*.php5", "*.phtml", "*.inc", "*.m", "*.markdown", "*.md", "*.mm", "*.dox", "*.py", "*.pyw", "*.f90",
+        "*.f95", "*.f03", "*.f08", "*.f18", "*.f", "*.for", "*.vhd", "*.vhdl", "*.ucf", "*.qsf", "*.ice"
+    };
+
+    /** Keys naming additional files or directories read by doxygen, whose content is fingerprinted entirely */
+    private static final String[] FILE_KEYS = {
+        "EXAMPLE_PATH", "IMAGE_PATH", "LAYOUT_FILE", "CITE_BIB_FILES", "HTML_HEADER", "HTML_FOOTER",
+        "HTML_STYLESHEET", "HTML_EXTRA_STYLESHEET", "HTML_EXTRA_FILES", "TAGFILES"
+    };
+
+    /** Keys which don't change the generated documentation */
+    private static final Set<String> IGNORED_KEYS = new HashSet<String>(Arrays.asList(
+            "NUM_PROC_THREADS", "DOT_NUM_THREADS", "WARN_LOGFILE", "QUIET"));
+
+    private final TreeMap<String, List<String>> values = new TreeMap<String, List<String>>();
+    private final String version;
+    private final String cacheDirectory;
+
+    /**
+     * @param values the values of the Doxyfile, overrides included
+     * @param version the output of <code>doxygen --version</code>
+     * @param cacheDirectory directory of the hash cache on the node of the workspace, can be null
+     */
+    public DoxygenInputs(Map<String, List<String>> values, String version, String cacheDirectory) {
+        for (Map.Entry<String, List<String>> entry : values.entrySet()) {
+            this.values.put(entry.getKey(), new ArrayList<String>(entry.getValue()));
+        }
+        this.version = version;
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    /**
+     * @return the hexadecimal SHA-256 fingerprint of the inputs
+     */
+    public String invoke(File workspace, VirtualChannel channel) throws IOException {
+        Path base = workspace.toPath().toAbsolutePath().normalize();
+        Set<Path> files = listFiles(base);
+
+        File cacheFile = cacheDirectory != null ? new File(cacheDirectory, CACHE_FILE_NAME) : null;
+        Map<String, CacheEntry> cache = readCache(cacheFile);
+        Map<String, CacheEntry> updatedCache = new ConcurrentHashMap<String, CacheEntry>();
+        long cacheLimit = System.currentTimeMillis() - MODIFICATION_TIME_RESOLUTION;
+
+        final List<Path> sorted = new ArrayList<Path>(files);
+        final byte[][] digests = new byte[sorted.size()][];
+        try {
+            IntStream.range(0, sorted.size()).parallel().forEach(i -> {
+                try {
+                    digests[i] = digest(sorted.get(i), cache, updatedCache, cacheLimit);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writeCache(cacheFile, updatedCache);
+
+        MessageDigest fingerprint = newDigest();
+        update(fingerprint, version);
+        for (Map.Entry<String, List<String>> entry : values.entrySet()) {
+            if (!IGNORED_KEYS.contains(entry.getKey())) {
+                update(fingerprint, entry.getKey());
+                for (String value : entry.getValue()) {
+                    update(fingerprint, value);
+                }
+            }
+        }
+        for (int i = 0; i < sorted.size(); i++) {
+            Path file = sorted.get(i);
+            update(fingerprint, (file.startsWith(base) ? base.relativize(file) : file).toString().replace('\\', '/'));
+            fingerprint.update(digests[i]);
+        }
+        return toHex(fingerprint.digest());
+    }
+
+    /**
+     * Lists the files read by doxygen, the way doxygen selects them.
+     */
+    Set<Path> listFiles(Path base) throws IOException {
+        Set<Path> files = new TreeSet<Path>();
+
+        List<Pattern> filePatterns = toPatterns(values.containsKey("FILE_PATTERNS") && !values.get("FILE_PATTERNS").isEmpty()
+                ? values.get("FILE_PATTERNS") : Arrays.asList(DEFAULT_FILE_PATTERNS));
+        List<Pattern> excludePatterns = toPatterns(get("EXCLUDE_PATTERNS"));
+        Set<Path> excluded = new HashSet<Path>();
+        for (String exclude : get("EXCLUDE")) {
+            excluded.add(base.resolve(exclude).normalize());
+        }
+        boolean recursive = "YES".equalsIgnoreCase(DoxyfileReader.getValue(values, "RECURSIVE"));
+
+        List<String> inputs = get("INPUT");
+        for (String input : inputs.isEmpty() ? Collections.singletonList("") : inputs) {
+            Path path = base.resolve(input).normalize();
+            if (Files.isRegularFile(path)) {
+                // files listed explicitly are always read
+                files.add(path);
+            } else if (Files.isDirectory(path)) {
+                collect(path, recursive ? Integer.MAX_VALUE : 1, filePatterns, excludePatterns, excluded, files);
+            }
+        }
+        for (String key : FILE_KEYS) {
+            for (String value : get(key)) {
+                // TAGFILES entries can be followed by the location of the documentation
+                Path path = base.resolve(value.replaceFirst("=.*$", "")).normalize();
+                if (Files.isRegularFile(path)) {
+                    files.add(path);
+                } else if (Files.isDirectory(path)) {
+                    collect(path, Integer.MAX_VALUE, null, Collections.<Pattern>emptyList(), Collections.<Path>emptySet(), files);
+                }
+            }
+        }
+        return files;
+    }
+
+    private static void collect(Path directory, int depth, final List<Pattern> filePatterns, final List<Pattern> excludePatterns,
+            final Set<Path> excluded, final Set<Path> files) throws IOException {
+        Files.walkFileTree(directory, EnumSet.of(FileVisitOption.FOLLOW_LINKS), depth, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                return isExcluded(dir, excludePatterns, excluded) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && !isExcluded(file, excludePatterns, excluded)
+                        && (filePatterns == null || matches(file.getFileName().toString(), filePatterns))) {
+                    files.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                // doxygen skips the unreadable files as well
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static boolean isExcluded(Path path, List<Pattern> excludePatterns, Set<Path> excluded) {
+        return excluded.contains(path) || matches(path.toString().replace('\\', '/'), excludePatterns);
+    }
+
+    private static boolean matches(String value, List<Pattern> patterns) {
+        for (Pattern pattern : patterns) {
+            if (pattern.matcher(value).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Converts doxygen wildcards, where <code>*</code> also matches the path separators.
+     */
+    static List<Pattern> toPatterns(List<String> wildcards) {
+        List<Pattern> patterns = new ArrayList<Pattern>();
+        for (String wildcard : wildcards) {
+            StringBuilder regex = new StringBuilder();
+            for (char c : wildcard.toCharArray()) {
+                if (c == '*') {
+                    regex.append(".*");
+                } else if (c == '?') {
+                    regex.append('.');
+                } else {
+                    regex.append(Pattern.quote(String.valueOf(c)));
+                }
+            }
+            patterns.add(Pattern.compile(regex.toString()));
+        }
+        return patterns;
+    }
+
+    private List<String> get(String key) {
+        List<String> list = values.get(key);
+        return list != null ? list : Collections.<String>emptyList();
+    }
+
+    private static byte[] digest(Path file, Map<String, CacheEntry> cache, Map<String, CacheEntry> updatedCache, long cacheLimit) throws IOException {
+        String key = file.toString();
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        long size = attributes.size();
+        long modified = attributes.lastModifiedTime().toMillis();
+
+        CacheEntry entry = cache.get(key);
+        if (entry == null || entry.size != size || entry.modified != modified) {
+            MessageDigest digest = newDigest();
+            byte[] buffer = new byte[64 * 1024];
+            InputStream in = Files.newInputStream(file);
+            try {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    digest.update(buffer, 0, read);
+                }
+            } finally {
+                in.close();
+            }
+            entry = new CacheEntry(size, modified, digest.digest());
+        }
+        if (modified < cacheLimit) {
+            updatedCache.put(key, entry);
+        }
+        return entry.digest;
+    }
+
+    private static final class CacheEntry {
+        private final long size;
+        private final long modified;
+        private final byte[] digest;
+
+        CacheEntry(long size, long modified, byte[] digest) {
+            this.size = size;
+            this.modified = modified;
+            this.digest = digest;
+        }
+    }
+
+    private static Map<String, CacheEntry> readCache(File file) {
+        Map<String, CacheEntry> cache = new HashMap<String, CacheEntry>();
+        if (file == null || !file.isFile()) {
+            return cache;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (in.readInt() != CACHE_MAGIC) {
+                    return cache;
+                }
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    String path = in.readUTF();
+                    long size = in.readLong();
+                    long modified = in.readLong();
+                    byte[] digest = new byte[in.readUnsignedByte()];
+                    in.readFully(digest);
+                    cache.put(path, new CacheEntry(size, modified, digest));
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            // the files are hashed again
+            LOGGER.log(Level.FINE, "Ignoring the unreadable doxygen inputs cache " + file, e);
+            cache.clear();
+        }
+        return cache;
+    }
+
+    private static void writeCache(File file, Map<String, CacheEntry> cache) {
+        if (file == null) {
+            return;
+        }
+        try {
+            File directory = file.getParentFile();
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Failed to create the directory " + directory);
+            }
+            // written aside then moved, so that concurrent builds never read a partial cache
+            File temp = File.createTempFile(CACHE_FILE_NAME, ".tmp", directory);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            try {
+                out.writeInt(CACHE_MAGIC);
+                out.writeInt(cache.size());
+                for (Map.Entry<String, CacheEntry> entry : cache.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeLong(entry.getValue().size);
+                    out.writeLong(entry.getValue().modified);
+                    out.writeByte(entry.getValue().digest.length);
+                    out.write(entry.getValue().digest);
+                }
+            } finally {
+                out.close();
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to write the doxygen inputs cache " + file, e);
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Gets the input fingerprints file of the given build.
+     */
+    public static File getFile(Run<?, ?> run) {
+        return new File(run.getRootDir(), "doxygen/" + FILE_NAME);
+    }
+
+    /**
+     * Gets the file recording the input fingerprint of the doxygen run which generated the HTML output of the
+     * workspace. It's deleted when doxygen starts and written when it succeeds, so a failed or partial output
+     * never matches.
+     */
+    public static FilePath getMarker(FilePath htmlDirectory) {
+        return htmlDirectory.sibling(htmlDirectory.getName() + MARKER_SUFFIX);
+    }
+
+    /**
+     * @return the input fingerprint recorded by the build for the Doxyfile, or null
+     */
+    public static String read(Run<?, ?> run, String doxyfilePath) throws IOException {
+        File file = getFile(run);
+        if (!file.isFile()) {
+            return null;
+        }
+        Properties fingerprints = new Properties();
+        InputStream in = new FileInputStream(file);
+        try {
+            fingerprints.load(in);
+        } finally {
+            in.close();
+        }
+        return fingerprints.getProperty(doxyfilePath);
+    }
+
+    /**
+     * Records the input fingerprint of a Doxyfile in the build.
+     */
+    public static synchronized void write(Run<?, ?> run, String doxyfilePath, String fingerprint) throws IOException {
+        File file = getFile(run);
+        Properties fingerprints = new Properties();
+        if (file.isFile()) {
+            InputStream in = new FileInputStream(file);
+            try {
+                fingerprints.load(in);
+            } finally {
+                in.close();
+            }
+        } else if (!file.getParentFile().isDirectory() && !file.getParentFile().mkdirs()) {
+            throw new IOException("Failed to create the directory " + file.getParentFile());
+        }
+        fingerprints.setProperty(doxyfilePath, fingerprint);
+        OutputStream out = new FileOutputStream(file);
+        try {
+            fingerprints.store(out, "Fingerprints of the doxygen inputs, by Doxyfile");
+        } finally {
+            out.close();
+        }
+    }
+}
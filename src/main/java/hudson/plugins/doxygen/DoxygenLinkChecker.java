@@ -0,0 +1,296 @@
+package hudson.plugins.doxygen;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Checks the links of the documentation while it's transferred, without reading it again.
+ *
+ * The transfers feed the bytes of the HTML pages to a scanner which extracts the targets of the <code>href</code> and
+ * <code>src</code> attributes, and register every file received. Once the transfer is complete, the targets are
+ * resolved against the files: a missing <code>href</code> target is a broken link, a missing <code>src</code> target
+ * a missing asset. The pages and the targets are numbered as they are found, and each link is kept as a single
+ * <code>long</code>, so that the links of the large projects fit in memory.
+ */
+public class DoxygenLinkChecker {
+
+    /** Number of broken links kept for the report */
+    static final int MAX_REPORTED = 500;
+
+    /** Longest attribute value extracted */
+    private static final int MAX_VALUE = 2048;
+
+    /** Bit of a link set for the <code>src</code> attributes */
+    private static final long ASSET = 1L << 62;
+
+    private final List<String> pages = new ArrayList<String>();
+    private final Map<String, Integer> targetIds = new HashMap<String, Integer>();
+    private final List<String> targets = new ArrayList<String>();
+    private final BitSet existing = new BitSet();
+
+    /** Page id in the high bits, target id in the low bits */
+    private long[] links = new long[1024];
+    private int linkCount = 0;
+
+    /** Page being scanned, and its scanner */
+    private String current;
+    private Scanner scanner;
+
+    /**
+     * Registers a file of the documentation.
+     */
+    public synchronized void add(String path) {
+        existing.set(getTargetId(path));
+    }
+
+    /**
+     * Scans bytes of a page, the pages being fed one after the other.
+     */
+    public synchronized void feed(String path, byte[] b, int off, int len) {
+        if (!isPage(path)) {
+            return;
+        }
+        if (!path.equals(current)) {
+            current = path;
+            pages.add(path);
+            scanner = new Scanner(pages.size() - 1, path);
+        }
+        for (int i = off; i < off + len; i++) {
+            scanner.scan(b[i] & 0xff);
+        }
+    }
+
+    /**
+     * Gets a stream scanning the bytes of a page, or discarding them if the file isn't a page.
+     */
+    public OutputStream stream(final String path) {
+        return new OutputStream() {
+            @Override
+            public void write(int b) {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                feed(path, b, off, len);
+            }
+        };
+    }
+
+    static boolean isPage(String path) {
+        String name = path.toLowerCase(Locale.ENGLISH);
+        return name.endsWith(".html") || name.endsWith(".htm");
+    }
+
+    private int getTargetId(String path) {
+        Integer id = targetIds.get(path);
+        if (id == null) {
+            id = targets.size();
+            targetIds.put(path, id);
+            targets.add(path);
+        }
+        return id;
+    }
+
+    private void addLink(int page, String pagePath, String value, boolean asset) {
+        String target = resolve(pagePath, value);
+        if (target == null) {
+            return;
+        }
+        if (linkCount == links.length) {
+            links = Arrays.copyOf(links, links.length * 2);
+        }
+        links[linkCount++] = ((long) page << 31) | getTargetId(target) | (asset ? ASSET : 0);
+    }
+
+    /**
+     * Resolves a link of a page to a path in the documentation.
+     *
+     * @return the path, or null for the links outside of the documentation and the anchors of the page
+     */
+    static String resolve(String page, String value) {
+        String link = value.trim().replace("&amp;", "&");
+        int end = link.length();
+        for (char c : new char[] {'#', '?'}) {
+            int i = link.indexOf(c);
+            if (i >= 0 && i < end) {
+                end = i;
+            }
+        }
+        link = link.substring(0, end);
+        int colon = link.indexOf(':');
+        int slash = link.indexOf('/');
+        boolean scheme = colon >= 0 && (slash < 0 || colon < slash);
+        if (link.isEmpty() || link.startsWith("/") || scheme) {
+            // an anchor of the page, or a link to another site
+            return null;
+        }
+        link = decode(link);
+        List<String> segments = new ArrayList<String>(Arrays.asList(page.split("/")));
+        segments.remove(segments.size() - 1);
+        for (String segment : link.split("/")) {
+            if (segment.equals("..")) {
+                if (segments.isEmpty()) {
+                    return null;
+                }
+                segments.remove(segments.size() - 1);
+            } else if (!segment.isEmpty() && !segment.equals(".")) {
+                segments.add(segment);
+            }
+        }
+        return String.join("/", segments);
+    }
+
+    /**
+     * Decodes the percent-encoded characters of a link.
+     */
+    private static String decode(String link) {
+        if (link.indexOf('%') < 0) {
+            return link;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] encoded = link.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < encoded.length; i++) {
+            if (encoded[i] == '%' && i + 2 < encoded.length && Character.digit(encoded[i + 1], 16) >= 0 && Character.digit(encoded[i + 2], 16) >= 0) {
+                bytes.write(Character.digit(encoded[i + 1], 16) * 16 + Character.digit(encoded[i + 2], 16));
+                i += 2;
+            } else {
+                bytes.write(encoded[i]);
+            }
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Resolves the links against the files received.
+     */
+    public synchronized Report getReport() {
+        Report report = new Report();
+        report.pages = pages.size();
+        report.links = linkCount;
+        for (int i = 0; i < linkCount; i++) {
+            long link = links[i];
+            int target = (int) (link & Integer.MAX_VALUE);
+            if (existing.get(target)) {
+                continue;
+            }
+            boolean asset = (link & ASSET) != 0;
+            if (asset) {
+                report.missingAssets++;
+            } else {
+                report.brokenLinks++;
+            }
+            if (report.broken.size() < MAX_REPORTED) {
+                String page = pages.get((int) ((link & ~ASSET) >>> 31));
+                report.broken.add(new DoxygenLinksAction.BrokenLink(page, targets.get(target), asset));
+            }
+        }
+        return report;
+    }
+
+    /**
+     * Links of the documentation which don't resolve.
+     */
+    public static final class Report {
+        int pages;
+        int links;
+        int brokenLinks;
+        int missingAssets;
+        final List<DoxygenLinksAction.BrokenLink> broken = new ArrayList<DoxygenLinksAction.BrokenLink>();
+
+        public int getPages() {
+            return pages;
+        }
+
+        public int getLinks() {
+            return links;
+        }
+
+        public int getBrokenLinks() {
+            return brokenLinks;
+        }
+
+        public int getMissingAssets() {
+            return missingAssets;
+        }
+
+        public List<DoxygenLinksAction.BrokenLink> getBroken() {
+            return broken;
+        }
+    }
+
+    /**
+     * Extracts the values of the <code>href</code> and <code>src</code> attributes of a page, byte by byte.
+     */
+    private final class Scanner {
+        private final int page;
+        private final String path;
+
+        /** Last bytes before the current one, lower cased, the most recent last */
+        private final byte[] recent = new byte[5];
+        /** Attribute whose value is expected, after its '=' */
+        private String attribute;
+        /** Quote of the value being read, 0 outside */
+        private int quote = 0;
+        private final ByteArrayOutputStream value = new ByteArrayOutputStream();
+
+        Scanner(int page, String path) {
+            this.page = page;
+            this.path = path;
+        }
+
+        void scan(int b) {
+            if (quote != 0) {
+                if (b == quote) {
+                    addLink(page, path, new String(value.toByteArray(), StandardCharsets.UTF_8), attribute.equals("src"));
+                    quote = 0;
+                    attribute = null;
+                } else if (value.size() < MAX_VALUE) {
+                    value.write(b);
+                }
+                return;
+            }
+            if (attribute != null) {
+                if (b == '"' || b == '\'') {
+                    quote = b;
+                    value.reset();
+                    return;
+                }
+                if (b != ' ') {
+                    // an unquoted value, which doxygen doesn't write
+                    attribute = null;
+                }
+            } else if (b == '=') {
+                if (endsWith("href")) {
+                    attribute = "href";
+                } else if (endsWith("src")) {
+                    attribute = "src";
+                }
+            }
+            System.arraycopy(recent, 1, recent, 0, recent.length - 1);
+            recent[recent.length - 1] = (byte) Character.toLowerCase(b);
+        }
+
+        /**
+         * Checks if the recent bytes are the given attribute name, preceded by a white space.
+         */
+        private boolean endsWith(String name) {
+            int start = recent.length - name.length();
+            for (int i = 0; i < name.length(); i++) {
+                if (recent[start + i] != name.charAt(i)) {
+                    return false;
+                }
+            }
+            int before = recent[start - 1];
+            return before == ' ' || before == '\t' || before == '\n' || before == '\r';
+        }
+    }
+}
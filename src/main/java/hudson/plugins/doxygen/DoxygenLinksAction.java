@@ -0,0 +1,112 @@
+package hudson.plugins.doxygen;
+
+import hudson.model.Run;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import jenkins.model.RunAction2;
+
+/**
+ * Build action reporting the links of the published documentation which don't resolve, found by
+ * {@link DoxygenLinkChecker} while the documentation was copied. Only the first
+ * {@link DoxygenLinkChecker#MAX_REPORTED} of them are kept.
+ */
+public class DoxygenLinksAction implements RunAction2 {
+
+    private final int pages;
+    private final int links;
+    private final int brokenLinks;
+    private final int missingAssets;
+    private final List<BrokenLink> broken;
+
+    private transient Run<?, ?> run;
+
+    DoxygenLinksAction(DoxygenLinkChecker.Report report) {
+        this.pages = report.getPages();
+        this.links = report.getLinks();
+        this.brokenLinks = report.getBrokenLinks();
+        this.missingAssets = report.getMissingAssets();
+        this.broken = new ArrayList<BrokenLink>(report.getBroken());
+    }
+
+    public String getIconFileName() {
+        return brokenLinks + missingAssets > 0 ? "warning.png" : null;
+    }
+
+    public String getDisplayName() {
+        return "Doxygen Links";
+    }
+
+    public String getUrlName() {
+        return "doxygenLinks";
+    }
+
+    public Run<?, ?> getRun() {
+        return run;
+    }
+
+    public int getPages() {
+        return pages;
+    }
+
+    public int getLinks() {
+        return links;
+    }
+
+    public int getBrokenLinks() {
+        return brokenLinks;
+    }
+
+    public int getMissingAssets() {
+        return missingAssets;
+    }
+
+    public List<BrokenLink> getBroken() {
+        return Collections.unmodifiableList(broken);
+    }
+
+    /**
+     * @return true if some of the links which don't resolve aren't listed
+     */
+    public boolean isTruncated() {
+        return broken.size() < brokenLinks + missingAssets;
+    }
+
+    public void onAttached(Run<?, ?> r) {
+        this.run = r;
+    }
+
+    public void onLoad(Run<?, ?> r) {
+        this.run = r;
+    }
+
+    /**
+     * Link of a page to a file missing from the documentation.
+     */
+    public static final class BrokenLink {
+        private final String page;
+        private final String target;
+        /** True for a <code>src</code> attribute, an image or a script, false for a <code>href</code> */
+        private final boolean asset;
+
+        BrokenLink(String page, String target, boolean asset) {
+            this.page = page;
+            this.target = target;
+            this.asset = asset;
+        }
+
+        public String getPage() {
+            return page;
+        }
+
+        public String getTarget() {
+            return target;
+        }
+
+        public boolean isAsset() {
+            return asset;
+        }
+    }
+}
@@ -0,0 +1,575 @@
+package hudson.plugins.doxygen;
+
+import hudson.Util;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import jenkins.util.VirtualFile;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+
+/**
+ * Listing of a published documentation tree, computed when it's published and stored in the tree.
+ *
+ * The index holds every file and directory of the tree with the children of the directories already sorted, so that
+ * browsing the documentation doesn't list nor stat the directories, which is slow for the flat HTML output of the large
+ * projects. An index is loaded once, then kept in memory while its tree is browsed.
+ */
+public final class DoxygenListingIndex {
+    private static final Logger LOGGER = Logger.getLogger(DoxygenListingIndex.class.getName());
+
+    /** Name of the index, in the root directory of the tree */
+    static final String FILE_NAME = ".doxygen-index";
+
+    private static final String MAGIC = "DXL1";
+
+    /** Layout line of the trees whose files are stored by the hash of their path */
+    private static final String SHARDED = "L\tsharded";
+
+    /** Number of entries of the indexes kept in memory, all together */
+    static final int MAX_LOADED_ENTRIES = Integer.getInteger(DoxygenListingIndex.class.getName() + ".maxLoadedEntries", 500000);
+
+    private static final Loaded LOADED = new Loaded(MAX_LOADED_ENTRIES);
+
+    /** Number of entries per page of the directory listings */
+    static final int PAGE_SIZE = Integer.getInteger(DoxygenListingIndex.class.getName() + ".pageSize", 1000);
+
+    private DoxygenListingIndex() {
+    }
+
+    /**
+     * Indexes the given tree.
+     *
+     * @return the number of files indexed
+     */
+    public static int write(File dir) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        index(dir, "", lines);
+        return write(dir, lines, false);
+    }
+
+    /**
+     * Indexes the files written to a tree, which are stored in the shards of the tree if <code>sharded</code>.
+     *
+     * @param files size and modification time of the files, by path in the tree
+     * @return the number of files indexed
+     */
+    public static int write(File dir, Map<String, long[]> files, boolean sharded) throws IOException {
+        // depth first, the children of each directory being sorted by name
+        Map<String, long[]> sorted = new TreeMap<String, long[]>(DoxygenListingIndex::compare);
+        sorted.putAll(files);
+        Set<String> directories = new HashSet<String>();
+        List<String> lines = new ArrayList<String>();
+        for (Map.Entry<String, long[]> file : sorted.entrySet()) {
+            String path = file.getKey();
+            for (int i = path.indexOf('/'); i >= 0; i = path.indexOf('/', i + 1)) {
+                if (directories.add(path.substring(0, i))) {
+                    lines.add("D\t" + path.substring(0, i));
+                }
+            }
+            lines.add("F\t" + file.getValue()[0] + "\t" + file.getValue()[1] + "\t" + path);
+        }
+        return write(dir, lines, sharded);
+    }
+
+    /**
+     * Compares two paths, a directory coming before the siblings whose name it prefixes.
+     */
+    private static int compare(String a, String b) {
+        for (int i = 0; i < a.length() && i < b.length(); i++) {
+            char ca = a.charAt(i) == '/' ? 0 : a.charAt(i);
+            char cb = b.charAt(i) == '/' ? 0 : b.charAt(i);
+            if (ca != cb) {
+                return ca - cb;
+            }
+        }
+        return a.length() - b.length();
+    }
+
+    private static int write(File dir, List<String> lines, boolean sharded) throws IOException {
+        File tmp = new File(dir, FILE_NAME + ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8)) {
+            out.write(MAGIC);
+            out.newLine();
+            if (sharded) {
+                out.write(SHARDED);
+                out.newLine();
+            }
+            for (String line : lines) {
+                out.write(line);
+                out.newLine();
+            }
+        }
+        Files.move(tmp.toPath(), new File(dir, FILE_NAME).toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        int files = 0;
+        for (String line : lines) {
+            if (line.startsWith("F")) {
+                files++;
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Lists a directory depth first, the children of each directory being sorted by name.
+     */
+    private static void index(File dir, String path, List<String> lines) {
+        String[] names = dir.list();
+        if (names == null) {
+            return;
+        }
+        Arrays.sort(names);
+        for (String name : names) {
+            if (path.isEmpty() && name.startsWith(FILE_NAME)) {
+                continue;
+            }
+            File child = new File(dir, name);
+            if (child.isDirectory()) {
+                lines.add("D\t" + path + name);
+                index(child, path + name + "/", lines);
+            } else {
+                lines.add("F\t" + child.length() + "\t" + child.lastModified() + "\t" + path + name);
+            }
+        }
+    }
+
+    /**
+     * Gets where a file of a sharded tree is stored: a directory named after the first three hexadecimal digits of
+     * the SHA-1 of its path, which keeps the directories small whatever the layout of the documentation.
+     */
+    static String shard(String path) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-1").digest(path.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : hash) {
+                hex.append(String.format("%02x", b & 0xff));
+            }
+            return hex.substring(0, 3) + "/" + hex;
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Checks if the files of a tree are stored in shards.
+     */
+    public static boolean isSharded(File dir) {
+        File file = new File(dir, FILE_NAME);
+        if (!file.isFile()) {
+            return false;
+        }
+        try (BufferedReader in = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            return MAGIC.equals(in.readLine()) && SHARDED.equals(in.readLine());
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Gets the files of a tree, whatever its layout.
+     *
+     * @return the files by path in the tree
+     */
+    public static Map<String, File> getFiles(File dir) throws IOException {
+        Map<String, File> files = new TreeMap<String, File>(DoxygenListingIndex::compare);
+        File file = new File(dir, FILE_NAME);
+        if (file.isFile()) {
+            Index index = new Index(dir, file);
+            for (String path : index.files.keySet()) {
+                files.put(path, index.getFile(path));
+            }
+            return files;
+        }
+        List<String> lines = new ArrayList<String>();
+        index(dir, "", lines);
+        for (String line : lines) {
+            if (line.startsWith("F\t")) {
+                String path = line.split("\t", 4)[3];
+                files.put(path, new File(dir, path));
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Writes the files of a tree as a tar archive, under their path in the documentation whatever the layout of the
+     * tree. The stream isn't closed.
+     *
+     * @return the number of files written
+     */
+    public static int tar(File dir, OutputStream out) throws IOException {
+        int count = 0;
+        BufferedOutputStream buffer = new BufferedOutputStream(out, 64 * 1024);
+        TarArchiveOutputStream tar = new TarArchiveOutputStream(buffer);
+        tar.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+        tar.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+        for (Map.Entry<String, File> file : getFiles(dir).entrySet()) {
+            tar.putArchiveEntry(new TarArchiveEntry(file.getValue(), file.getKey()));
+            Files.copy(file.getValue().toPath(), tar);
+            tar.closeArchiveEntry();
+            count++;
+        }
+        tar.finish();
+        // the archive doesn't flush the buffer it writes its blocks to
+        buffer.flush();
+        return count;
+    }
+
+    /**
+     * Gets a page of the listing of a directory of an indexed tree. The children are sorted in the index, so a page is
+     * a slice of the listing whatever the size of the directory.
+     *
+     * @param dir a directory browsed through {@link #browse(File)}
+     * @param start index of the first entry of the page
+     * @return the page, or null if the directory isn't indexed or fits in a single page
+     */
+    public static Page getPage(VirtualFile dir, int start) {
+        if (!(dir instanceof IndexedFile)) {
+            return null;
+        }
+        IndexedFile indexed = (IndexedFile) dir;
+        List<String> children = indexed.index.directories.get(indexed.path);
+        if (children == null || children.size() <= PAGE_SIZE) {
+            return null;
+        }
+        int from = Math.max(0, Math.min(start, children.size() - 1)) / PAGE_SIZE * PAGE_SIZE;
+        List<Entry> entries = new ArrayList<Entry>();
+        for (String child : children.subList(from, Math.min(children.size(), from + PAGE_SIZE))) {
+            long[] file = indexed.index.files.get(child);
+            entries.add(new Entry(child.substring(child.lastIndexOf('/') + 1), file == null, file != null ? file[0] : 0));
+        }
+        return new Page(indexed.path, from, children.size(), entries);
+    }
+
+    /**
+     * Page of the listing of a directory.
+     */
+    public static final class Page {
+        private final String path;
+        private final int start;
+        private final int total;
+        private final List<Entry> entries;
+
+        Page(String path, int start, int total, List<Entry> entries) {
+            this.path = path;
+            this.start = start;
+            this.total = total;
+            this.entries = entries;
+        }
+
+        /**
+         * @return the path of the directory in the tree, empty for the root
+         */
+        public String getPath() {
+            return path;
+        }
+
+        public int getStart() {
+            return start;
+        }
+
+        public int getEnd() {
+            return start + entries.size();
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        public int getPageSize() {
+            return PAGE_SIZE;
+        }
+
+        public List<Entry> getEntries() {
+            return entries;
+        }
+    }
+
+    /**
+     * File or directory of a page of listing.
+     */
+    public static final class Entry {
+        private final String name;
+        private final boolean directory;
+        private final long length;
+
+        Entry(String name, boolean directory, long length) {
+            this.name = name;
+            this.directory = directory;
+            this.length = length;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isDirectory() {
+            return directory;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        /**
+         * @return the link to the entry, relative to the listed directory
+         */
+        public String getHref() {
+            return Util.rawEncode(name) + (directory ? "/" : "");
+        }
+    }
+
+    /**
+     * Gets the size of the files of an indexed tree, read from its index.
+     *
+     * @return the sizes by path in the tree, or null if the tree isn't indexed
+     */
+    public static Map<String, Long> getSizes(File dir) throws IOException {
+        File file = new File(dir, FILE_NAME);
+        if (!file.isFile()) {
+            return null;
+        }
+        Map<String, Long> sizes = new HashMap<String, Long>();
+        for (Map.Entry<String, long[]> entry : new Index(dir, file).files.entrySet()) {
+            sizes.put(entry.getKey(), entry.getValue()[0]);
+        }
+        return sizes;
+    }
+
+    /**
+     * Gets the tree for browsing through its index.
+     *
+     * @return the tree, or null if it isn't indexed
+     */
+    public static VirtualFile browse(File dir) {
+        File file = new File(dir, FILE_NAME);
+        long lastModified = file.lastModified();
+        if (lastModified == 0) {
+            return null;
+        }
+        String key = file.getPath() + "@" + lastModified;
+        Index index = LOADED.get(key);
+        if (index == null) {
+            try {
+                index = new Index(dir, file);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to read the doxygen listing index " + file + ", the directory is listed", e);
+                return null;
+            }
+            LOADED.put(key, index);
+        }
+        return new IndexedFile(index, "");
+    }
+
+    /**
+     * Entries of a tree: the files with their size and modification time, and the sorted children of the directories.
+     */
+    static final class Index {
+        private final File root;
+        private boolean sharded;
+        private final Map<String, long[]> files = new HashMap<String, long[]>();
+        private final Map<String, List<String>> directories = new HashMap<String, List<String>>();
+
+        Index(File root, File file) throws IOException {
+            this.root = root;
+            directories.put("", new ArrayList<String>());
+            try (BufferedReader in = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+                if (!MAGIC.equals(in.readLine())) {
+                    throw new IOException("Not a listing index: " + file);
+                }
+                String line;
+                while ((line = in.readLine()) != null) {
+                    String path;
+                    if (line.equals(SHARDED)) {
+                        sharded = true;
+                        continue;
+                    }
+                    if (line.startsWith("D\t")) {
+                        path = line.substring(2);
+                        directories.put(path, new ArrayList<String>());
+                    } else {
+                        String[] fields = line.split("\t", 4);
+                        if (fields.length != 4) {
+                            throw new IOException("Invalid entry in " + file + ": " + line);
+                        }
+                        path = fields[3];
+                        files.put(path, new long[] {Long.parseLong(fields[1]), Long.parseLong(fields[2])});
+                    }
+                    // depth first, so the parent is already known
+                    int slash = path.lastIndexOf('/');
+                    List<String> siblings = directories.get(slash < 0 ? "" : path.substring(0, slash));
+                    if (siblings == null) {
+                        throw new IOException("Invalid entry in " + file + ": " + line);
+                    }
+                    siblings.add(path);
+                }
+            }
+        }
+
+        /**
+         * Gets where a file of the tree is stored.
+         */
+        File getFile(String path) {
+            return new File(root, sharded ? shard(path) : path);
+        }
+
+        /**
+         * @return the number of files and directories of the tree
+         */
+        int size() {
+            return files.size() + directories.size();
+        }
+    }
+
+    /**
+     * Indexes kept in memory, the least recently used ones are dropped when they hold too many entries all together.
+     * The index used last is always kept.
+     */
+    static final class Loaded {
+        private final long maxEntries;
+        private final LinkedHashMap<String, Index> indexes = new LinkedHashMap<String, Index>(16, 0.75f, true);
+        private long entries = 0;
+
+        Loaded(long maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+
+        synchronized Index get(String key) {
+            return indexes.get(key);
+        }
+
+        synchronized void put(String key, Index index) {
+            Index previous = indexes.put(key, index);
+            entries += index.size() - (previous != null ? previous.size() : 0);
+            for (Iterator<Index> it = indexes.values().iterator(); indexes.size() > 1 && entries > maxEntries;) {
+                entries -= it.next().size();
+                it.remove();
+            }
+        }
+
+        synchronized int size() {
+            return indexes.size();
+        }
+
+        synchronized long getEntries() {
+            return entries;
+        }
+    }
+
+    /**
+     * File or directory of an indexed tree.
+     */
+    static final class IndexedFile extends VirtualFile {
+        private final Index index;
+        /** Path in the tree, empty for the root */
+        private final String path;
+
+        IndexedFile(Index index, String path) {
+            this.index = index;
+            this.path = path;
+        }
+
+        private File file() {
+            return path.isEmpty() ? index.root : new File(index.root, path);
+        }
+
+        @Override
+        public String getName() {
+            return path.isEmpty() ? index.root.getName() : path.substring(path.lastIndexOf('/') + 1);
+        }
+
+        @Override
+        public URI toURI() {
+            return file().toURI();
+        }
+
+        @Override
+        public VirtualFile getParent() {
+            return path.isEmpty() ? this : new IndexedFile(index, path.lastIndexOf('/') < 0 ? "" : path.substring(0, path.lastIndexOf('/')));
+        }
+
+        @Override
+        public boolean isDirectory() {
+            return index.directories.containsKey(path);
+        }
+
+        @Override
+        public boolean isFile() {
+            return index.files.containsKey(path);
+        }
+
+        @Override
+        public boolean exists() {
+            return isDirectory() || isFile();
+        }
+
+        @Override
+        public VirtualFile[] list() {
+            List<String> children = index.directories.get(path);
+            if (children == null) {
+                return new VirtualFile[0];
+            }
+            VirtualFile[] list = new VirtualFile[children.size()];
+            for (int i = 0; i < list.length; i++) {
+                list[i] = new IndexedFile(index, children.get(i));
+            }
+            return list;
+        }
+
+        @Override
+        public VirtualFile child(String name) {
+            return new IndexedFile(index, path.isEmpty() ? name : path + "/" + name);
+        }
+
+        @Override
+        public long length() {
+            long[] file = index.files.get(path);
+            return file != null ? file[0] : 0;
+        }
+
+        @Override
+        public long lastModified() {
+            long[] file = index.files.get(path);
+            return file != null ? file[1] : index.root.lastModified();
+        }
+
+        @Override
+        public boolean canRead() {
+            return exists();
+        }
+
+        @Override
+        public InputStream open() throws IOException {
+            if (!isFile()) {
+                throw new IOException("Not a file: " + path);
+            }
+            return new FileInputStream(index.getFile(path));
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package hudson.plugins.doxygen;
+
+import hudson.FilePath;
+import hudson.remoting.VirtualChannel;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import jenkins.MasterToSlaveFileCallable;
+
+/**
+ * Follows a file written by doxygen, such as its WARN_LOGFILE, and feeds the new content to a console parser.
+ *
+ * Each poll only transfers the bytes appended since the previous one, so the file is read once in total.
+ */
+class DoxygenLogTail {
+
+    /** Maximum number of bytes transferred by a single remote call */
+    private static final int MAX_CHUNK = 1024 * 1024;
+
+    private final FilePath file;
+    private final OutputStream parser;
+    private long offset = 0;
+
+    DoxygenLogTail(FilePath file, OutputStream parser) {
+        this.file = file;
+        this.parser = parser;
+    }
+
+    /**
+     * Feeds everything appended to the file since the last poll.
+     */
+    void poll() throws IOException, InterruptedException {
+        while (true) {
+            byte[] chunk = file.act(new ReadFrom(offset, MAX_CHUNK));
+            if (chunk.length == 0) {
+                return;
+            }
+            parser.write(chunk);
+            offset += chunk.length;
+            if (chunk.length < MAX_CHUNK) {
+                return;
+            }
+        }
+    }
+
+    long getOffset() {
+        return offset;
+    }
+
+    private static final class ReadFrom extends MasterToSlaveFileCallable<byte[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final long offset;
+        private final int max;
+
+        ReadFrom(long offset, int max) {
+            this.offset = offset;
+            this.max = max;
+        }
+
+        public byte[] invoke(File f, VirtualChannel channel) throws IOException {
+            if (!f.isFile()) {
+                return new byte[0];
+            }
+            try (FileChannel fc = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+                long available = fc.size() - offset;
+                if (available <= 0) {
+                    return new byte[0];
+                }
+                ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(max, available));
+                while (buffer.hasRemaining()) {
+                    if (fc.read(buffer, offset + buffer.position()) < 0) {
+                        break;
+                    }
+                }
+                return buffer.position() == buffer.capacity() ? buffer.array() : Arrays.copyOf(buffer.array(), buffer.position());
+            }
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package hudson.plugins.doxygen;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+
+/**
+ * Conservative minification of the HTML, CSS and JavaScript files written by doxygen, applied while they are copied.
+ *
+ * Only the indentation and the blank lines are removed, and the comments of the style sheets except the
+ * <code>/*!</code> ones. The content of the <code>pre</code>, <code>textarea</code>, <code>script</code> and
+ * <code>style</code> elements of the pages is left as is, like the strings of the style sheets and scripts.
+ * Doxygen writes each line of a code fragment on its own line, so their indentation, which follows the
+ * <code>&lt;div class="line"&gt;</code> tag, is preserved.
+ */
+public final class DoxygenMinifier {
+
+    enum Type {
+        HTML, CSS, JS
+    }
+
+    private DoxygenMinifier() {
+    }
+
+    /**
+     * Gets the type of a file from its name.
+     *
+     * @return the type, or null if the file isn't minified
+     */
+    static Type getType(String path) {
+        String name = path.toLowerCase(Locale.ENGLISH);
+        if (name.endsWith(".html") || name.endsWith(".htm")) {
+            return Type.HTML;
+        }
+        if (name.endsWith(".css")) {
+            return Type.CSS;
+        }
+        // the minified libraries are left alone
+        if (name.endsWith(".js") && !name.endsWith(".min.js") && !name.endsWith("jquery.js")) {
+            return Type.JS;
+        }
+        return null;
+    }
+
+    /**
+     * Wraps the output of a file to minify it.
+     *
+     * @return the minifying stream, or null if the file isn't minified
+     */
+    public static MinifyingOutputStream wrap(String path, OutputStream out) {
+        Type type = getType(path);
+        return type != null ? new MinifyingOutputStream(out, type) : null;
+    }
+
+    /**
+     * Byte level state machine, the markers being ASCII they are never part of an UTF-8 multibyte character.
+     */
+    public static final class MinifyingOutputStream extends FilterOutputStream {
+        private static final String[] RAW_ELEMENTS = {"pre", "textarea", "script", "style"};
+        private static final int MAX_TAG_NAME = 16;
+
+        private final Type type;
+
+        /** The last byte written is a line feed, or nothing was written */
+        private boolean lineStart = true;
+
+        /** Name of the tag being read, after '<' */
+        private StringBuilder tag;
+        /** Raw element whose end tag is expected, null outside */
+        private String raw;
+
+        /** Quote of the string being read, 0 outside */
+        private int quote = 0;
+        private boolean escaped = false;
+        private boolean lineComment = false;
+        private boolean blockComment = false;
+        /** The next byte is the first one of a block comment */
+        private boolean commentStart = false;
+        private boolean keepComment = false;
+        /** The previous byte of the block comment is a '*' */
+        private boolean star = false;
+        /** A '/' was held back */
+        private boolean slash = false;
+
+        private long received = 0;
+        private long written = 0;
+
+        MinifyingOutputStream(OutputStream out, Type type) {
+            super(out);
+            this.type = type;
+        }
+
+        public long getReceived() {
+            return received;
+        }
+
+        public long getWritten() {
+            return written;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            for (int i = off; i < off + len; i++) {
+                write(b[i]);
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            b &= 0xff;
+            received++;
+            if (type == Type.HTML) {
+                html(b);
+            } else {
+                code(b);
+            }
+        }
+
+        private void html(int b) throws IOException {
+            if (tag != null) {
+                if (isTagNameChar(b) && tag.length() < MAX_TAG_NAME) {
+                    tag.append((char) b);
+                } else {
+                    endTag();
+                }
+            } else if (b == '<') {
+                tag = new StringBuilder();
+            }
+            if (raw != null) {
+                emit(b);
+            } else {
+                whitespace(b);
+            }
+        }
+
+        private void endTag() {
+            String name = tag.toString().toLowerCase(Locale.ENGLISH);
+            tag = null;
+            if (raw == null) {
+                for (String element : RAW_ELEMENTS) {
+                    if (element.equals(name)) {
+                        raw = element;
+                    }
+                }
+            } else if (name.equals("/" + raw)) {
+                raw = null;
+            }
+        }
+
+        private static boolean isTagNameChar(int b) {
+            return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9') || (b == '/');
+        }
+
+        /**
+         * Drops the indentation, the carriage returns and the blank lines.
+         */
+        private void whitespace(int b) throws IOException {
+            if (b == '\r' || (lineStart && (b == ' ' || b == '\t' || b == '\n'))) {
+                return;
+            }
+            emit(b);
+        }
+
+        private void code(int b) throws IOException {
+            if (blockComment) {
+                if (commentStart) {
+                    // the comments of the style sheets are dropped, except the "/*!" ones
+                    commentStart = false;
+                    keepComment = type == Type.JS || b == '!';
+                    if (keepComment) {
+                        emit('/');
+                        emit('*');
+                    }
+                }
+                if (keepComment) {
+                    emit(b);
+                }
+                if (star && b == '/') {
+                    blockComment = false;
+                }
+                star = b == '*';
+                return;
+            }
+            if (lineComment) {
+                if (b != '\n') {
+                    emit(b);
+                    return;
+                }
+                lineComment = false;
+            }
+            if (quote != 0) {
+                emit(b);
+                if (escaped) {
+                    escaped = false;
+                } else if (b == '\\') {
+                    escaped = true;
+                } else if (b == quote || (b == '\n' && quote != '`')) {
+                    quote = 0;
+                }
+                return;
+            }
+            if (slash) {
+                slash = false;
+                if (b == '*') {
+                    blockComment = true;
+                    commentStart = true;
+                    star = false;
+                    return;
+                }
+                emit('/');
+                if (b == '/' && type == Type.JS) {
+                    emit(b);
+                    lineComment = true;
+                    return;
+                }
+            }
+            if (b == '/') {
+                // held back, it may start a comment
+                slash = true;
+                return;
+            }
+            if (b == '"' || b == '\'' || (b == '`' && type == Type.JS)) {
+                quote = b;
+            }
+            whitespace(b);
+        }
+
+        private void emit(int b) throws IOException {
+            out.write(b);
+            written++;
+            lineStart = b == '\n';
+        }
+
+        /**
+         * Writes the byte held back at the end of the file, without closing the stream.
+         */
+        public void finish() throws IOException {
+            if (slash) {
+                slash = false;
+                emit('/');
+            }
+            flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            finish();
+            super.close();
+        }
+    }
+}
@@ -0,0 +1,367 @@
+package hudson.plugins.doxygen;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import jenkins.util.VirtualFile;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Documentation trees packed into a single zip file, next to the directory they replace:
+ * <code>doxygen/html</code> becomes <code>doxygen/html.zip</code>.
+ *
+ * A pack is written to a temporary file which is renamed once complete, then the directory is deleted. Hence a pack
+ * is always complete, and a directory next to a pack is a leftover of an interrupted deletion.
+ */
+public final class DoxygenPackedDocs {
+
+    static final String EXTENSION = ".zip";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** Number of packs kept open, with their entries in memory */
+    private static final int MAX_LOADED = 16;
+
+    private static final Map<String, Index> LOADED = new LinkedHashMap<String, Index>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Index> eldest) {
+            if (size() > MAX_LOADED) {
+                eldest.getValue().evict();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    private DoxygenPackedDocs() {
+    }
+
+    /**
+     * Gets the pack replacing the given documentation directory.
+     */
+    public static File getPack(File dir) {
+        return new File(dir.getParentFile(), dir.getName() + EXTENSION);
+    }
+
+    /**
+     * Checks if the documentation exists, either as a directory or packed.
+     */
+    public static boolean exists(File dir) {
+        return dir.isDirectory() || getPack(dir).isFile();
+    }
+
+    /**
+     * Gets the documentation for browsing, in the layout it is stored with.
+     */
+    public static VirtualFile browse(File dir) {
+        File pack = getPack(dir);
+        if (!dir.isDirectory() && pack.isFile()) {
+            return new PackedFile(load(pack), "");
+        }
+        VirtualFile indexed = DoxygenListingIndex.browse(dir);
+        return indexed != null ? indexed : VirtualFile.forFile(dir);
+    }
+
+    /**
+     * Gets the entries of a pack, read once per version of the pack.
+     */
+    static Index load(File pack) {
+        String key = pack.getPath() + "@" + pack.lastModified();
+        Index index;
+        synchronized (LOADED) {
+            index = LOADED.get(key);
+        }
+        if (index == null) {
+            index = new Index(pack);
+            if (!index.isComplete()) {
+                // browsed as an empty tree, the pack may have been deleted with its build
+                return index;
+            }
+            synchronized (LOADED) {
+                Index loaded = LOADED.get(key);
+                if (loaded != null) {
+                    index.evict();
+                    return loaded;
+                }
+                LOADED.put(key, index);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Packs the documentation directory, then deletes it.
+     *
+     * @param throttle limits the I/O, can be null
+     * @return the number of bytes packed
+     */
+    public static long pack(File dir, Throttle throttle) throws IOException, InterruptedException {
+        File pack = getPack(dir);
+        File tmp = new File(pack.getPath() + ".tmp");
+        long size = 0;
+        // the pack holds the files under their path in the documentation, whatever the layout of the directory,
+        // and the listing index is only needed by the directory
+        Map<String, File> files = DoxygenListingIndex.getFiles(dir);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp.toPath()), BUFFER_SIZE))) {
+            for (Map.Entry<String, File> file : files.entrySet()) {
+                ZipEntry entry = new ZipEntry(file.getKey());
+                entry.setTime(file.getValue().lastModified());
+                out.putNextEntry(entry);
+                try (InputStream in = Files.newInputStream(file.getValue().toPath())) {
+                    int n;
+                    while ((n = in.read(buffer)) > 0) {
+                        out.write(buffer, 0, n);
+                        size += n;
+                        if (throttle != null) {
+                            throttle.consume(n);
+                        }
+                    }
+                }
+                out.closeEntry();
+            }
+        } catch (IOException | InterruptedException e) {
+            Files.deleteIfExists(tmp.toPath());
+            throw e;
+        }
+        Files.move(tmp.toPath(), pack.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        FileUtils.deleteDirectory(dir);
+        return size;
+    }
+
+    /**
+     * Limits the number of bytes processed per second.
+     */
+    public static final class Throttle {
+        private final long bytesPerSecond;
+        private final long start = System.nanoTime();
+        private long consumed = 0;
+
+        public Throttle(long bytesPerSecond) {
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        /**
+         * Accounts for the given bytes, sleeping until they fit in the budget.
+         */
+        public void consume(long bytes) throws InterruptedException {
+            consumed += bytes;
+            if (bytesPerSecond <= 0) {
+                return;
+            }
+            long ahead = consumed * 1000 / bytesPerSecond - (System.nanoTime() - start) / 1000000;
+            if (ahead > 0) {
+                Thread.sleep(ahead);
+            }
+        }
+    }
+
+    /**
+     * Entries of a pack, read once when it's browsed.
+     *
+     * The pack is kept open to read its files while the index is loaded, and closed once the index is evicted and
+     * the files being read are closed.
+     */
+    static final class Index {
+        private final File pack;
+        private final Map<String, ZipEntry> files = new TreeMap<String, ZipEntry>();
+        /** Children of each directory, by path */
+        private final Map<String, Set<String>> directories = new TreeMap<String, Set<String>>();
+        private ZipFile zip;
+        private int readers = 0;
+        private boolean evicted = false;
+
+        Index(File pack) {
+            this.pack = pack;
+            directories.put("", new TreeSet<String>());
+            try {
+                zip = new ZipFile(pack);
+                for (Enumeration<? extends ZipEntry> entries = zip.entries(); entries.hasMoreElements();) {
+                    ZipEntry entry = entries.nextElement();
+                    String name = entry.getName();
+                    if (entry.isDirectory()) {
+                        addDirectory(name.substring(0, name.length() - 1));
+                    } else {
+                        files.put(name, entry);
+                        add(name);
+                    }
+                }
+            } catch (IOException e) {
+                files.clear();
+                directories.clear();
+                directories.put("", new TreeSet<String>());
+                evict();
+            }
+        }
+
+        private void addDirectory(String name) {
+            if (!directories.containsKey(name)) {
+                directories.put(name, new TreeSet<String>());
+                add(name);
+            }
+        }
+
+        private void add(String name) {
+            int slash = name.lastIndexOf('/');
+            String parent = slash < 0 ? "" : name.substring(0, slash);
+            addDirectory(parent);
+            directories.get(parent).add(name);
+        }
+
+        boolean isComplete() {
+            return zip != null;
+        }
+
+        synchronized InputStream open(String path) throws IOException {
+            if (zip == null) {
+                // evicted, the files being read keep it open
+                zip = new ZipFile(pack);
+            }
+            final ZipFile opened = zip;
+            InputStream in = opened.getInputStream(files.get(path));
+            readers++;
+            return new FilterInputStream(in) {
+                private boolean closed = false;
+
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        if (!closed) {
+                            closed = true;
+                            release();
+                        }
+                    }
+                }
+            };
+        }
+
+        private synchronized void release() {
+            readers--;
+            closeIfUnused();
+        }
+
+        synchronized void evict() {
+            evicted = true;
+            closeIfUnused();
+        }
+
+        private void closeIfUnused() {
+            if (evicted && readers == 0 && zip != null) {
+                try {
+                    zip.close();
+                } catch (IOException e) {
+                    // nothing left to read from it
+                }
+                zip = null;
+            }
+        }
+    }
+
+    /**
+     * File or directory of a pack.
+     */
+    static final class PackedFile extends VirtualFile {
+        private final Index index;
+        /** Path in the pack, empty for the root */
+        private final String path;
+
+        PackedFile(Index index, String path) {
+            this.index = index;
+            this.path = path;
+        }
+
+        @Override
+        public String getName() {
+            return path.substring(path.lastIndexOf('/') + 1);
+        }
+
+        @Override
+        public URI toURI() {
+            return URI.create("jar:" + index.pack.toURI() + "!/" + path.replace(" ", "%20"));
+        }
+
+        @Override
+        public VirtualFile getParent() {
+            return path.isEmpty() ? this : new PackedFile(index, path.lastIndexOf('/') < 0 ? "" : path.substring(0, path.lastIndexOf('/')));
+        }
+
+        @Override
+        public boolean isDirectory() {
+            return index.directories.containsKey(path);
+        }
+
+        @Override
+        public boolean isFile() {
+            return index.files.containsKey(path);
+        }
+
+        @Override
+        public boolean exists() {
+            return isDirectory() || isFile();
+        }
+
+        @Override
+        public VirtualFile[] list() {
+            Set<String> children = index.directories.get(path);
+            if (children == null) {
+                return new VirtualFile[0];
+            }
+            VirtualFile[] list = new VirtualFile[children.size()];
+            int i = 0;
+            for (String child : children) {
+                list[i++] = new PackedFile(index, child);
+            }
+            return list;
+        }
+
+        @Override
+        public VirtualFile child(String name) {
+            return new PackedFile(index, path.isEmpty() ? name : path + "/" + name);
+        }
+
+        @Override
+        public long length() {
+            ZipEntry entry = index.files.get(path);
+            return entry != null ? entry.getSize() : 0;
+        }
+
+        @Override
+        public long lastModified() {
+            ZipEntry entry = index.files.get(path);
+            return entry != null ? entry.getTime() : index.pack.lastModified();
+        }
+
+        @Override
+        public boolean canRead() {
+            return exists();
+        }
+
+        @Override
+        public InputStream open() throws IOException {
+            if (!isFile()) {
+                throw new IOException("Not a file: " + path);
+            }
+            return index.open(path);
+        }
+    }
+}
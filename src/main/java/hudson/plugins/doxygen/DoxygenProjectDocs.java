@@ -0,0 +1,181 @@
+package hudson.plugins.doxygen;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import jenkins.util.Timer;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Documentation of a project whose builds don't keep their own.
+ *
+ * Each build publishes to its own directory <code>html.&lt;build number&gt;</code> and, once it's complete, the
+ * <code>current</code> pointer file is atomically replaced with one naming it. The readers resolve the pointer, so
+ * they see either the previous documentation or the new one, never a partial copy, and never wait for a publication.
+ * The trees no longer pointed to are deleted in the background after a grace period, leaving the readers which
+ * resolved them just before the swap time to finish. When concurrent builds publish, the newest one wins. A tree being
+ * written has a <code>html.&lt;build number&gt;.staging</code> marker until it's committed or discarded, and isn't
+ * deleted meanwhile, unless the marker is older than {@link #STAGING_TIMEOUT} hours: its build is then considered gone.
+ */
+public final class DoxygenProjectDocs {
+    private static final Logger LOGGER = Logger.getLogger(DoxygenProjectDocs.class.getName());
+
+    static final String POINTER = "current";
+
+    /** Directory of the documentation before the pointer was introduced, also used until the first swap */
+    static final String LEGACY_DIRECTORY = "html";
+
+    private static final Pattern TREE = Pattern.compile("html\\.(\\d+)");
+
+    /** Delay before deleting a replaced tree, in seconds */
+    static final long GRACE_PERIOD = 60;
+
+    /** Suffix of the marker of a tree being written */
+    static final String STAGING_SUFFIX = ".staging";
+
+    /** Age of the marker after which a tree being written is considered abandoned by its build, in hours */
+    static final long STAGING_TIMEOUT = 24;
+
+    private DoxygenProjectDocs() {
+    }
+
+    /**
+     * Gets the documentation currently published.
+     *
+     * @param root doxygen directory of the project
+     */
+    public static File resolve(File root) {
+        File pointer = new File(root, POINTER);
+        if (pointer.isFile()) {
+            try {
+                String name = new String(Files.readAllBytes(pointer.toPath()), StandardCharsets.UTF_8).trim();
+                if (TREE.matcher(name).matches()) {
+                    return new File(root, name);
+                }
+                LOGGER.log(Level.WARNING, "Ignoring the invalid doxygen pointer {0}", pointer);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to read the doxygen pointer " + pointer, e);
+            }
+        }
+        return new File(root, LEGACY_DIRECTORY);
+    }
+
+    /**
+     * Creates the empty directory a build publishes its documentation to.
+     */
+    public static File stage(File root, int number) throws IOException {
+        File staged = getTree(root, number);
+        Files.createDirectories(root.toPath());
+        // marked first, so that the cleanup never sees the tree without its marker
+        Files.write(getStagingMarker(staged).toPath(), new byte[0]);
+        FileUtils.deleteDirectory(staged);
+        Files.createDirectories(staged.toPath());
+        return staged;
+    }
+
+    /**
+     * Deletes the documentation staged by a build which failed to publish it.
+     */
+    public static void discard(File root, int number) throws IOException {
+        File staged = getTree(root, number);
+        FileUtils.deleteDirectory(staged);
+        Files.deleteIfExists(getStagingMarker(staged).toPath());
+    }
+
+    private static File getStagingMarker(File tree) {
+        return new File(tree.getParentFile(), tree.getName() + STAGING_SUFFIX);
+    }
+
+    /**
+     * Gets the directory a build publishes its documentation to, which exists until it's replaced by a newer one.
+     */
+    static File getTree(File root, int number) {
+        return new File(root, "html." + number);
+    }
+
+    /**
+     * Makes the documentation staged by a build visible, unless a newer build already published its own.
+     *
+     * @return true if the staged documentation is now the current one
+     */
+    public static synchronized boolean commit(File root, int number) throws IOException {
+        int current = number(resolve(root));
+        boolean published = current < number;
+        if (published) {
+            File tmp = new File(root, POINTER + ".tmp");
+            Files.write(tmp.toPath(), ("html." + number).getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp.toPath(), new File(root, POINTER).toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        // the tree is complete, the cleanup deletes it once it's replaced or if it lost
+        Files.deleteIfExists(getStagingMarker(getTree(root, number)).toPath());
+        scheduleCleanup(root);
+        return published;
+    }
+
+    /**
+     * Deletes in the background the trees older than the current one, including the ones of the builds which lost
+     * against a newer one, except the trees still being written by older builds.
+     */
+    private static void scheduleCleanup(final File root) {
+        Timer.get().schedule(new Runnable() {
+            public void run() {
+                cleanup(root);
+            }
+        }, GRACE_PERIOD, TimeUnit.SECONDS);
+    }
+
+    static void cleanup(File root) {
+        int current;
+        synchronized (DoxygenProjectDocs.class) {
+            current = number(resolve(root));
+        }
+        File[] children = root.listFiles();
+        if (children == null) {
+            return;
+        }
+        long abandoned = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(STAGING_TIMEOUT);
+        for (File child : children) {
+            // trees of the newer builds may still be staged
+            if (child.isDirectory() && number(child) < current) {
+                File marker = getStagingMarker(child);
+                if (marker.lastModified() > abandoned) {
+                    // an older build is still writing it
+                    continue;
+                }
+                try {
+                    FileUtils.deleteDirectory(child);
+                    Files.deleteIfExists(marker.toPath());
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Failed to delete the replaced doxygen documentation " + child, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the build number of a tree, -1 for the legacy directory and MAX_VALUE for the other files
+     */
+    private static int number(File tree) {
+        if (tree.getName().equals(LEGACY_DIRECTORY)) {
+            return -1;
+        }
+        Matcher m = TREE.matcher(tree.getName());
+        if (m.matches()) {
+            try {
+                return Integer.parseInt(m.group(1));
+            } catch (NumberFormatException e) {
+                // not a tree of this class
+            }
+        }
+        return Integer.MAX_VALUE;
+    }
+}
@@ -0,0 +1,577 @@
+package hudson.plugins.doxygen;
+
+import hudson.FilePath;
+import hudson.model.Computer;
+import hudson.model.Node;
+import hudson.remoting.VirtualChannel;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import jenkins.MasterToSlaveFileCallable;
+import jenkins.model.Jenkins;
+import jenkins.security.MasterToSlaveCallable;
+import jenkins.util.VirtualFile;
+
+/**
+ * Documentation left in the workspace of the agent by the lazy publication, fetched when it's browsed.
+ *
+ * The publication only records the location of the documentation and its manifest, the size and modification time of
+ * its files, in the <code>doxygen/remote</code> directory of the build. The listings are answered from the manifest,
+ * and the files are read from the agent on first access, then kept in a bounded cache of the controller; the files too
+ * large for the cache are streamed from the agent instead. A file whose size or modification time doesn't match the
+ * manifest was overwritten by a later build and isn't served. The parsed manifests of the builds last browsed are kept,
+ * up to a total number of entries.
+ * When an HTML page is read, the images, style sheets and scripts it links to are fetched in the background.
+ */
+public final class DoxygenRemoteDocs {
+    private static final Logger LOGGER = Logger.getLogger(DoxygenRemoteDocs.class.getName());
+
+    static final String DIRECTORY = "doxygen/remote";
+    private static final String LOCATION_FILE = "location.properties";
+    private static final String MANIFEST_FILE = "manifest";
+
+    /** Maximum size of the controller cache, in megabytes */
+    static final long CACHE_SIZE = Long.getLong(DoxygenRemoteDocs.class.getName() + ".cacheSize", 64);
+
+    /** Maximum number of files in the controller cache */
+    static final int CACHE_ENTRIES = Integer.getInteger(DoxygenRemoteDocs.class.getName() + ".cacheEntries", 4096);
+
+    /** Maximum number of assets fetched for a page */
+    static final int MAX_PREFETCH = 32;
+
+    /** Relative links of a page to the files it loads */
+    private static final Pattern LINK = Pattern.compile("(?:src|href)=\"([^\":#?]+)\"");
+
+    private static final Cache CACHE = new Cache(CACHE_SIZE * 1024 * 1024, CACHE_ENTRIES);
+
+    /** Number of entries of the manifests kept in memory, all together */
+    static final int MAX_LOADED_ENTRIES = Integer.getInteger(DoxygenRemoteDocs.class.getName() + ".maxLoadedEntries", 500000);
+
+    private static final Loaded LOADED = new Loaded(MAX_LOADED_ENTRIES);
+
+    private DoxygenRemoteDocs() {
+    }
+
+    /**
+     * Checks if the build recorded the location of its documentation.
+     */
+    public static boolean isRecorded(File buildDir) {
+        return new File(buildDir, DIRECTORY + "/" + LOCATION_FILE).isFile();
+    }
+
+    /**
+     * Records the location and the manifest of the documentation, instead of copying it.
+     *
+     * @return the number of files of the documentation
+     */
+    public static int record(File buildDir, FilePath dir) throws IOException, InterruptedException {
+        File directory = new File(buildDir, DIRECTORY);
+        Files.createDirectories(directory.toPath());
+        List<String> manifest = dir.act(new Manifest());
+        Files.write(new File(directory, MANIFEST_FILE).toPath(), manifest, StandardCharsets.UTF_8);
+
+        Computer computer = dir.toComputer();
+        Properties location = new Properties();
+        location.setProperty("node", computer != null ? computer.getName() : "");
+        location.setProperty("path", dir.getRemote());
+        try (OutputStream out = Files.newOutputStream(new File(directory, LOCATION_FILE).toPath())) {
+            location.store(out, null);
+        }
+        return manifest.size();
+    }
+
+    /**
+     * Gets the size of the files of the documentation, read from its manifest.
+     *
+     * @return the sizes by path in the documentation
+     */
+    public static Map<String, Long> getSizes(File buildDir) throws IOException {
+        Map<String, Long> sizes = new HashMap<String, Long>();
+        for (String line : Files.readAllLines(new File(buildDir, DIRECTORY + "/" + MANIFEST_FILE).toPath(), StandardCharsets.UTF_8)) {
+            String[] fields = line.split("\t", 3);
+            if (fields.length == 3) {
+                sizes.put(fields[2], Long.parseLong(fields[0]));
+            }
+        }
+        return sizes;
+    }
+
+    /**
+     * Gets the documentation for browsing.
+     *
+     * @throws FileNotFoundException if the agent holding the documentation isn't available
+     */
+    public static VirtualFile browse(File buildDir) throws IOException {
+        File directory = new File(buildDir, DIRECTORY);
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(new File(directory, LOCATION_FILE).toPath())) {
+            properties.load(in);
+        }
+        String nodeName = properties.getProperty("node", "");
+        Node node = nodeName.isEmpty() ? Jenkins.get() : Jenkins.get().getNode(nodeName);
+        VirtualChannel channel = node != null ? node.getChannel() : null;
+        if (channel == null) {
+            throw new FileNotFoundException(String.format("The documentation of this build was left in the workspace of %s, which is %s.",
+                    nodeName.isEmpty() ? "the controller" : nodeName, node == null ? "removed" : "offline"));
+        }
+        Location location = new Location(nodeName, channel, properties.getProperty("path"), load(new File(directory, MANIFEST_FILE)));
+        return new RemoteFile(location, "");
+    }
+
+    /**
+     * Gets the parsed manifest, which is only parsed again if it changed.
+     */
+    private static Listing load(File manifest) throws IOException {
+        String key = manifest.getPath() + "@" + manifest.lastModified();
+        Listing listing = LOADED.get(key);
+        if (listing == null) {
+            listing = new Listing();
+            for (String line : Files.readAllLines(manifest.toPath(), StandardCharsets.UTF_8)) {
+                String[] fields = line.split("\t", 3);
+                if (fields.length == 3) {
+                    listing.add(fields[2], Long.parseLong(fields[0]), Long.parseLong(fields[1]));
+                }
+            }
+            LOADED.put(key, listing);
+        }
+        return listing;
+    }
+
+    /**
+     * Resolves a relative link of a page, null if it leaves the documentation.
+     */
+    static String resolve(String page, String link) {
+        Deque<String> segments = new ArrayDeque<String>();
+        int slash = page.lastIndexOf('/');
+        String path = slash >= 0 ? page.substring(0, slash + 1) + link : link;
+        for (String segment : path.split("/")) {
+            if (segment.isEmpty() || segment.equals(".")) {
+                continue;
+            }
+            if (segment.equals("..")) {
+                if (segments.isEmpty()) {
+                    return null;
+                }
+                segments.removeLast();
+            } else {
+                segments.addLast(segment);
+            }
+        }
+        return String.join("/", segments);
+    }
+
+    /**
+     * Gets the files a page loads, which are in the documentation and not cached yet.
+     */
+    static List<String> getAssets(Location location, String page, byte[] content) {
+        Set<String> assets = new LinkedHashSet<String>();
+        Matcher m = LINK.matcher(new String(content, StandardCharsets.UTF_8));
+        while (m.find() && assets.size() < MAX_PREFETCH) {
+            String asset = resolve(page, m.group(1));
+            if (asset != null && !asset.endsWith(".html") && location.files.containsKey(asset)
+                    && CACHE.isCacheable(location.files.get(asset)[0]) && CACHE.get(location.key(asset)) == null) {
+                assets.add(asset);
+            }
+        }
+        return new ArrayList<String>(assets);
+    }
+
+    /**
+     * Files and directories of a manifest.
+     */
+    static final class Listing {
+        /** Size and modification time of the files */
+        private final Map<String, long[]> files = new TreeMap<String, long[]>();
+        private final Set<String> directories = new TreeSet<String>();
+
+        Listing() {
+            directories.add("");
+        }
+
+        void add(String path, long size, long lastModified) {
+            files.put(path, new long[] {size, lastModified});
+            for (int i = path.indexOf('/'); i >= 0; i = path.indexOf('/', i + 1)) {
+                directories.add(path.substring(0, i));
+            }
+        }
+
+        /**
+         * @return the number of files and directories of the manifest
+         */
+        int size() {
+            return files.size() + directories.size();
+        }
+    }
+
+    /**
+     * Manifests kept in memory, the least recently used ones are dropped when they hold too many entries all together.
+     * The manifest used last is always kept.
+     */
+    static final class Loaded {
+        private final long maxEntries;
+        private final LinkedHashMap<String, Listing> listings = new LinkedHashMap<String, Listing>(16, 0.75f, true);
+        private long entries = 0;
+
+        Loaded(long maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+
+        synchronized Listing get(String key) {
+            return listings.get(key);
+        }
+
+        synchronized void put(String key, Listing listing) {
+            Listing previous = listings.put(key, listing);
+            entries += listing.size() - (previous != null ? previous.size() : 0);
+            for (Iterator<Listing> it = listings.values().iterator(); listings.size() > 1 && entries > maxEntries;) {
+                entries -= it.next().size();
+                it.remove();
+            }
+        }
+
+        synchronized int size() {
+            return listings.size();
+        }
+
+        synchronized long getEntries() {
+            return entries;
+        }
+    }
+
+    /**
+     * Documentation in the workspace of an agent, with its manifest.
+     */
+    static final class Location {
+        private final String node;
+        private final VirtualChannel channel;
+        private final String root;
+        private final Map<String, long[]> files;
+        private final Set<String> directories;
+
+        Location(String node, VirtualChannel channel, String root, Listing listing) {
+            this.node = node;
+            this.channel = channel;
+            this.root = root;
+            this.files = listing.files;
+            this.directories = listing.directories;
+        }
+
+        String key(String path) {
+            return node + "\u0000" + root + "\u0000" + path + "\u0000" + files.get(path)[1];
+        }
+
+        /**
+         * Reads files from the agent, the ones which changed since the manifest are left out.
+         */
+        Map<String, byte[]> read(List<String> paths) throws IOException, InterruptedException {
+            long[][] expected = new long[paths.size()][];
+            for (int i = 0; i < expected.length; i++) {
+                expected[i] = files.get(paths.get(i));
+            }
+            return channel.call(new Read(root, paths, expected));
+        }
+
+        /**
+         * Streams a file from the agent, without loading it in memory.
+         */
+        InputStream open(String path) throws IOException, InterruptedException {
+            long[] expected = files.get(path);
+            FilePath file = new FilePath(channel, root).child(path);
+            if (!file.act(new Matches(expected[0], expected[1]))) {
+                throw new FileNotFoundException(String.format("%s was modified in the workspace since this build", path));
+            }
+            return file.read();
+        }
+    }
+
+    /**
+     * File or directory of the documentation of an agent.
+     */
+    static final class RemoteFile extends VirtualFile {
+        private final Location location;
+        /** Path in the documentation, empty for the root */
+        private final String path;
+
+        RemoteFile(Location location, String path) {
+            this.location = location;
+            this.path = path;
+        }
+
+        @Override
+        public String getName() {
+            return path.substring(path.lastIndexOf('/') + 1);
+        }
+
+        @Override
+        public URI toURI() {
+            try {
+                return URI.create("remote:/" + URLEncoder.encode(location.node, "UTF-8") + location.root.replace('\\', '/').replace(" ", "%20")
+                        + "/" + path.replace(" ", "%20"));
+            } catch (UnsupportedEncodingException e) {
+                throw new AssertionError(e);
+            }
+        }
+
+        @Override
+        public VirtualFile getParent() {
+            return path.isEmpty() ? this : new RemoteFile(location, path.lastIndexOf('/') < 0 ? "" : path.substring(0, path.lastIndexOf('/')));
+        }
+
+        @Override
+        public boolean isDirectory() {
+            return location.directories.contains(path);
+        }
+
+        @Override
+        public boolean isFile() {
+            return location.files.containsKey(path);
+        }
+
+        @Override
+        public boolean exists() {
+            return isDirectory() || isFile();
+        }
+
+        @Override
+        public VirtualFile[] list() {
+            if (!isDirectory()) {
+                return new VirtualFile[0];
+            }
+            String prefix = path.isEmpty() ? "" : path + "/";
+            Set<String> children = new TreeSet<String>();
+            for (String name : location.directories) {
+                if (name.startsWith(prefix) && name.length() > prefix.length() && name.indexOf('/', prefix.length()) < 0) {
+                    children.add(name);
+                }
+            }
+            for (String name : location.files.keySet()) {
+                if (name.startsWith(prefix) && name.indexOf('/', prefix.length()) < 0) {
+                    children.add(name);
+                }
+            }
+            List<VirtualFile> list = new ArrayList<VirtualFile>();
+            for (String child : children) {
+                list.add(new RemoteFile(location, child));
+            }
+            return list.toArray(new VirtualFile[0]);
+        }
+
+        @Override
+        public VirtualFile child(String name) {
+            return new RemoteFile(location, path.isEmpty() ? name : path + "/" + name);
+        }
+
+        @Override
+        public long length() {
+            long[] file = location.files.get(path);
+            return file != null ? file[0] : 0;
+        }
+
+        @Override
+        public long lastModified() {
+            long[] file = location.files.get(path);
+            return file != null ? file[1] : 0;
+        }
+
+        @Override
+        public boolean canRead() {
+            return exists();
+        }
+
+        @Override
+        public InputStream open() throws IOException {
+            if (!isFile()) {
+                throw new FileNotFoundException(path);
+            }
+            if (!CACHE.isCacheable(length())) {
+                try {
+                    return location.open(path);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                }
+            }
+            String key = location.key(path);
+            byte[] content = CACHE.get(key);
+            if (content == null) {
+                try {
+                    content = location.read(Collections.singletonList(path)).get(path);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                }
+                if (content == null) {
+                    throw new FileNotFoundException(String.format("%s was modified in the workspace since this build", path));
+                }
+                CACHE.put(key, content);
+                if (path.endsWith(".html")) {
+                    prefetch(content);
+                }
+            }
+            return new ByteArrayInputStream(content);
+        }
+
+        private void prefetch(final byte[] page) {
+            Computer.threadPoolForRemoting.submit(new Runnable() {
+                public void run() {
+                    List<String> assets = getAssets(location, path, page);
+                    if (assets.isEmpty()) {
+                        return;
+                    }
+                    try {
+                        for (Map.Entry<String, byte[]> asset : location.read(assets).entrySet()) {
+                            CACHE.put(location.key(asset.getKey()), asset.getValue());
+                        }
+                    } catch (IOException | InterruptedException e) {
+                        LOGGER.log(Level.FINE, "Failed to prefetch the assets of " + path, e);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Lists the files of the documentation: size, modification time and relative path separated by tabs.
+     */
+    private static final class Manifest extends MasterToSlaveFileCallable<List<String>> {
+        private static final long serialVersionUID = 1L;
+
+        public List<String> invoke(File dir, VirtualChannel channel) throws IOException {
+            List<String> manifest = new ArrayList<String>();
+            list(dir, "", manifest);
+            return manifest;
+        }
+
+        private static void list(File dir, String path, List<String> manifest) {
+            File[] children = dir.listFiles();
+            if (children == null) {
+                return;
+            }
+            for (File child : children) {
+                if (child.isDirectory()) {
+                    list(child, path + child.getName() + "/", manifest);
+                } else {
+                    manifest.add(child.length() + "\t" + child.lastModified() + "\t" + path + child.getName());
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks that a file of the documentation still matches the manifest.
+     */
+    private static final class Matches extends MasterToSlaveFileCallable<Boolean> {
+        private static final long serialVersionUID = 1L;
+
+        private final long size;
+        private final long lastModified;
+
+        Matches(long size, long lastModified) {
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        public Boolean invoke(File file, VirtualChannel channel) {
+            return file.isFile() && file.length() == size && file.lastModified() == lastModified;
+        }
+    }
+
+    /**
+     * Reads files of the documentation which still match the manifest, only the ones small enough to be cached being
+     * requested.
+     */
+    private static final class Read extends MasterToSlaveCallable<Map<String, byte[]>, IOException> {
+        private static final long serialVersionUID = 1L;
+
+        private final String root;
+        private final List<String> paths;
+        private final long[][] expected;
+
+        Read(String root, List<String> paths, long[][] expected) {
+            this.root = root;
+            this.paths = new ArrayList<String>(paths);
+            this.expected = expected;
+        }
+
+        public Map<String, byte[]> call() throws IOException {
+            Map<String, byte[]> files = new HashMap<String, byte[]>();
+            for (int i = 0; i < paths.size(); i++) {
+                File file = new File(root, paths.get(i));
+                if (file.isFile() && file.length() == expected[i][0] && file.lastModified() == expected[i][1]) {
+                    files.put(paths.get(i), Files.readAllBytes(file.toPath()));
+                }
+            }
+            return files;
+        }
+    }
+
+    /**
+     * Least recently used files, bounded in size and number.
+     */
+    static final class Cache {
+        private final long maxSize;
+        private final int maxEntries;
+        private final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+        private long size = 0;
+
+        Cache(long maxSize, int maxEntries) {
+            this.maxSize = maxSize;
+            this.maxEntries = maxEntries;
+        }
+
+        synchronized byte[] get(String key) {
+            return entries.get(key);
+        }
+
+        /**
+         * @return false for the files which would evict most of the cache, they are streamed instead
+         */
+        boolean isCacheable(long length) {
+            return length <= maxSize / 8;
+        }
+
+        synchronized void put(String key, byte[] content) {
+            if (!isCacheable(content.length)) {
+                return;
+            }
+            byte[] previous = entries.put(key, content);
+            size += content.length - (previous != null ? previous.length : 0);
+            for (Iterator<byte[]> it = entries.values().iterator(); it.hasNext() && (size > maxSize || entries.size() > maxEntries);) {
+                size -= it.next().length;
+                it.remove();
+            }
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+    }
+}
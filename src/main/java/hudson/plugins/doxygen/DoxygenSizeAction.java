@@ -0,0 +1,137 @@
+package hudson.plugins.doxygen;
+
+import hudson.model.Result;
+import hudson.model.Run;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import jenkins.model.RunAction2;
+
+/**
+ * Build action keeping the size of the published documentation: its total size, its number of files and its largest
+ * top level directories. The sizes come from the listing written while the documentation is published, so the
+ * documentation isn't scanned again.
+ */
+public class DoxygenSizeAction implements RunAction2 {
+
+    /** Number of directories kept */
+    static final int MAX_DIRECTORIES = 10;
+
+    /** Name of the files at the root of the documentation in the directories */
+    static final String ROOT = "";
+
+    private final long bytes;
+    private final int files;
+    /** Bytes of the largest top level directories, the largest first */
+    private final LinkedHashMap<String, Long> directories;
+
+    /** True if the documentation grew too much since its reference, it's then not a reference for the next builds */
+    private boolean exceededMaxGrowth;
+
+    private transient Run<?, ?> run;
+
+    DoxygenSizeAction(long bytes, int files, Map<String, Long> directories) {
+        this.bytes = bytes;
+        this.files = files;
+        this.directories = new LinkedHashMap<String, Long>(directories);
+    }
+
+    /**
+     * Summarizes the documentation.
+     *
+     * @param sizes the size of the files, by path in the documentation
+     */
+    public static DoxygenSizeAction summarize(Map<String, Long> sizes) {
+        long bytes = 0;
+        Map<String, Long> directories = new HashMap<String, Long>();
+        for (Map.Entry<String, Long> file : sizes.entrySet()) {
+            bytes += file.getValue();
+            int slash = file.getKey().indexOf('/');
+            directories.merge(slash < 0 ? ROOT : file.getKey().substring(0, slash), file.getValue(), Long::sum);
+        }
+        List<Map.Entry<String, Long>> largest = new ArrayList<Map.Entry<String, Long>>(directories.entrySet());
+        largest.sort(Collections.reverseOrder(Map.Entry.comparingByValue()));
+        Map<String, Long> kept = new LinkedHashMap<String, Long>();
+        for (Map.Entry<String, Long> directory : largest.subList(0, Math.min(MAX_DIRECTORIES, largest.size()))) {
+            kept.put(directory.getKey(), directory.getValue());
+        }
+        return new DoxygenSizeAction(bytes, sizes.size(), kept);
+    }
+
+    /**
+     * Finds the size of the documentation of the closest previous successful or unstable build which recorded it.
+     * The builds whose documentation grew too much are skipped, so the growth which made a build unstable isn't the
+     * reference of the next one.
+     *
+     * @return the size, or null if no previous build recorded it
+     */
+    static DoxygenSizeAction getReference(Run<?, ?> build) {
+        for (Run<?, ?> previous = build.getPreviousCompletedBuild(); previous != null; previous = previous.getPreviousCompletedBuild()) {
+            Result result = previous.getResult();
+            DoxygenSizeAction action = result != null && result.isBetterOrEqualTo(Result.UNSTABLE) ? previous.getAction(DoxygenSizeAction.class) : null;
+            if (action != null && !action.exceededMaxGrowth) {
+                return action;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the growth of the documentation since the reference, in percent
+     */
+    public double getGrowth(DoxygenSizeAction reference) {
+        if (reference.bytes == 0) {
+            return bytes > 0 ? Double.POSITIVE_INFINITY : 0;
+        }
+        return (bytes - reference.bytes) * 100.0 / reference.bytes;
+    }
+
+    public String getIconFileName() {
+        return "folder.png";
+    }
+
+    public String getDisplayName() {
+        return "Doxygen Size";
+    }
+
+    public String getUrlName() {
+        return "doxygenSize";
+    }
+
+    public Run<?, ?> getRun() {
+        return run;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public int getFiles() {
+        return files;
+    }
+
+    public boolean isExceededMaxGrowth() {
+        return exceededMaxGrowth;
+    }
+
+    void setExceededMaxGrowth(boolean exceededMaxGrowth) {
+        this.exceededMaxGrowth = exceededMaxGrowth;
+    }
+
+    public Map<String, Long> getDirectories() {
+        return Collections.unmodifiableMap(directories);
+    }
+
+    public void onAttached(Run<?, ?> r) {
+        this.run = r;
+    }
+
+    public void onLoad(Run<?, ?> r) {
+        this.run = r;
+    }
+}
@@ -0,0 +1,210 @@
+package hudson.plugins.doxygen;
+
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.BuildListener;
+import hudson.model.Run;
+import hudson.remoting.VirtualChannel;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import jenkins.MasterToSlaveFileCallable;
+import jenkins.util.VirtualFile;
+
+/**
+ * Storage of the documentation of the builds outside of the controller disk.
+ *
+ * The documentation is stored through the artifact manager of the build, so that the agents upload it directly to the
+ * store configured for the artifacts and it's served from there. Setting the system property
+ * <code>hudson.plugins.doxygen.DoxygenStorage.localDirectory</code> replaces the artifact manager with a plain
+ * directory, standing in for a store while testing. The storage used is recorded in
+ * <code>doxygen/storage.properties</code> in the build directory.
+ */
+public abstract class DoxygenStorage {
+
+    static final String FILE_NAME = "doxygen/storage.properties";
+
+    /** Prefix of the documentation in the artifacts of the build */
+    static final String PREFIX = "doxygen/html/";
+
+    /** System property of the directory of the local stand-in, the artifact manager being used if it isn't set */
+    static final String LOCAL_DIRECTORY = DoxygenStorage.class.getName() + ".localDirectory";
+
+    /**
+     * Gets the identifier recorded with the builds.
+     */
+    abstract String getId();
+
+    /**
+     * Stores the documentation of a build.
+     *
+     * @param files the paths of the files in the documentation directory
+     */
+    abstract void store(Run<?, ?> build, FilePath dir, Collection<String> files, Launcher launcher, BuildListener listener)
+            throws IOException, InterruptedException;
+
+    /**
+     * Gets the documentation of a build, or a missing file if the store doesn't have it anymore.
+     */
+    abstract VirtualFile browse(Run<?, ?> build) throws IOException;
+
+    /**
+     * Gets the storage configured for the instance.
+     */
+    public static DoxygenStorage get() {
+        String localDirectory = System.getProperty(LOCAL_DIRECTORY);
+        return localDirectory != null ? new LocalDirectory(new File(localDirectory)) : new ArtifactManagerStorage();
+    }
+
+    static DoxygenStorage get(String id) throws IOException {
+        if (ArtifactManagerStorage.ID.equals(id)) {
+            return new ArtifactManagerStorage();
+        }
+        if (LocalDirectory.ID.equals(id)) {
+            String localDirectory = System.getProperty(LOCAL_DIRECTORY);
+            if (localDirectory == null) {
+                throw new IOException("The documentation was stored in a local directory, which isn't configured anymore");
+            }
+            return new LocalDirectory(new File(localDirectory));
+        }
+        throw new IOException("Unknown doxygen storage: " + id);
+    }
+
+    /**
+     * Checks if the documentation of a build was stored outside of the controller disk.
+     */
+    public static boolean isStored(File buildDir) {
+        return new File(buildDir, FILE_NAME).isFile();
+    }
+
+    /**
+     * Stores the documentation of a build, then records the storage with the build.
+     *
+     * @return the size of the files stored, by path in the documentation
+     */
+    public Map<String, Long> publish(Run<?, ?> build, FilePath dir, Launcher launcher, BuildListener listener) throws IOException, InterruptedException {
+        Map<String, Long> files = dir.act(new ListFiles());
+        store(build, dir, files.keySet(), launcher, listener);
+        Properties properties = new Properties();
+        properties.setProperty("storage", getId());
+        properties.setProperty("files", String.valueOf(files.size()));
+        File file = new File(build.getRootDir(), FILE_NAME);
+        Files.createDirectories(file.getParentFile().toPath());
+        try (OutputStream out = Files.newOutputStream(file.toPath())) {
+            properties.store(out, null);
+        }
+        return files;
+    }
+
+    /**
+     * Gets the stored documentation of a build for browsing.
+     */
+    public static VirtualFile browseStored(Run<?, ?> build) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(new File(build.getRootDir(), FILE_NAME).toPath())) {
+            properties.load(in);
+        }
+        return get(properties.getProperty("storage")).browse(build);
+    }
+
+    /**
+     * Documentation stored with the artifacts of the build.
+     */
+    static final class ArtifactManagerStorage extends DoxygenStorage {
+        static final String ID = "artifacts";
+
+        @Override
+        String getId() {
+            return ID;
+        }
+
+        @Override
+        void store(Run<?, ?> build, FilePath dir, Collection<String> files, Launcher launcher, BuildListener listener)
+                throws IOException, InterruptedException {
+            Map<String, String> artifacts = new LinkedHashMap<String, String>();
+            for (String file : files) {
+                artifacts.put(PREFIX + file, file);
+            }
+            // the artifact manager uploads the files from where they are, which may be the agent
+            build.pickArtifactManager().archive(dir, launcher, listener, artifacts);
+        }
+
+        @Override
+        VirtualFile browse(Run<?, ?> build) {
+            return build.getArtifactManager().root().child(PREFIX.substring(0, PREFIX.length() - 1));
+        }
+    }
+
+    /**
+     * Documentation stored in a local directory, by full name of the job and number of the build.
+     */
+    static final class LocalDirectory extends DoxygenStorage {
+        static final String ID = "local";
+
+        private final File root;
+
+        LocalDirectory(File root) {
+            this.root = root;
+        }
+
+        @Override
+        String getId() {
+            return ID;
+        }
+
+        File getDir(Run<?, ?> build) {
+            return getDir(build.getParent().getFullName(), build.getNumber());
+        }
+
+        File getDir(String job, int number) {
+            return new File(root, job + "/" + number);
+        }
+
+        @Override
+        void store(Run<?, ?> build, FilePath dir, Collection<String> files, Launcher launcher, BuildListener listener)
+                throws IOException, InterruptedException {
+            dir.copyRecursiveTo("**/*", new FilePath(getDir(build)));
+        }
+
+        @Override
+        VirtualFile browse(Run<?, ?> build) {
+            return VirtualFile.forFile(getDir(build));
+        }
+    }
+
+    /**
+     * Lists the size of the files of the documentation by relative path.
+     */
+    private static final class ListFiles extends MasterToSlaveFileCallable<Map<String, Long>> {
+        private static final long serialVersionUID = 1L;
+
+        public Map<String, Long> invoke(File dir, VirtualChannel channel) {
+            Map<String, Long> files = new TreeMap<String, Long>();
+            list(dir, "", files);
+            return files;
+        }
+
+        private static void list(File dir, String path, Map<String, Long> files) {
+            File[] children = dir.listFiles();
+            if (children == null) {
+                return;
+            }
+            for (File child : children) {
+                if (child.isDirectory()) {
+                    list(child, path + child.getName() + "/", files);
+                } else {
+                    files.put(path + child.getName(), child.length());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package hudson.plugins.doxygen;
+
+import hudson.FilePath;
+import hudson.remoting.VirtualChannel;
+import hudson.util.DirScanner;
+import hudson.util.FileVisitor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.Set;
+
+import jenkins.MasterToSlaveFileCallable;
+import jenkins.security.MasterToSlaveCallable;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Publishes the documentation to the controller while doxygen generates it.
+ *
+ * The files of the output directory are transferred in batches: a batch contains the files modified since the previous
+ * batch, except the ones modified during the last {@link #SETTLE_TIME} milliseconds which doxygen may still be writing.
+ * The modification times are compared with the clock of the agent. The files go to a staging directory; once doxygen
+ * ended, a last batch transfers the files modified since the previous one, the staged files that doxygen deleted in the
+ * meantime are dropped and the staging directory is renamed to the published directory. The documentation of a project
+ * whose builds don't keep their own is staged and committed through {@link DoxygenProjectDocs} instead.
+ */
+public class DoxygenStreamingPublisher {
+
+    /** Files modified more recently than this, in milliseconds, aren't transferred until the next batch */
+    static final long SETTLE_TIME = 2000;
+
+    private final FilePath source;
+    private final File staging;
+    /** Directory replaced on commit, null when the documentation is committed to the project */
+    private final File target;
+    /** Doxygen directory of the project and number of the build, when the documentation is committed to the project */
+    private final File projectRoot;
+    private final int number;
+
+    /** Modification time from which the files of the next batch are transferred, on the clock of the agent */
+    private long watermark = 0;
+    private int transferred = 0;
+    private int batches = 0;
+    private boolean published = false;
+
+    /**
+     * @param source output directory of doxygen
+     * @param target directory of the published documentation, replaced on commit
+     */
+    public DoxygenStreamingPublisher(FilePath source, File target) {
+        this.source = source;
+        this.target = target;
+        this.staging = new File(target.getParentFile(), target.getName() + ".staging");
+        this.projectRoot = null;
+        this.number = 0;
+    }
+
+    /**
+     * @param source output directory of doxygen
+     * @param projectRoot doxygen directory of the project, see {@link DoxygenProjectDocs}
+     * @param number number of the build publishing the documentation
+     */
+    public DoxygenStreamingPublisher(FilePath source, File projectRoot, int number) {
+        this.source = source;
+        this.target = null;
+        this.staging = DoxygenProjectDocs.getTree(projectRoot, number);
+        this.projectRoot = projectRoot;
+        this.number = number;
+    }
+
+    /**
+     * Prepares an empty staging directory.
+     */
+    public void start() throws IOException {
+        if (projectRoot != null) {
+            DoxygenProjectDocs.stage(projectRoot, number);
+            return;
+        }
+        FileUtils.deleteDirectory(staging);
+        Files.createDirectories(staging.toPath());
+    }
+
+    /**
+     * Transfers the files modified since the previous batch which are not being written.
+     *
+     * @return the number of files transferred
+     */
+    public int publishBatch() throws IOException, InterruptedException {
+        if (!source.isDirectory()) {
+            return 0;
+        }
+        long upper = source.act(new AgentTime()) - SETTLE_TIME;
+        if (upper <= watermark) {
+            return 0;
+        }
+        return transfer(upper);
+    }
+
+    private int transfer(long upper) throws IOException, InterruptedException {
+        int count = source.copyRecursiveTo(new ModifiedFiles(watermark, upper), new FilePath(staging), "doxygen documentation");
+        watermark = upper;
+        transferred += count;
+        batches++;
+        return count;
+    }
+
+    /**
+     * Transfers the files modified since the last batch and publishes the documentation.
+     *
+     * @return the number of files transferred in the last batch
+     */
+    public int commit() throws IOException, InterruptedException {
+        int count = 0;
+        if (source.isDirectory()) {
+            count = transfer(Long.MAX_VALUE);
+            // the dot files cleaned up or the temporary files of doxygen may have been transferred by a previous batch
+            prune(staging, "", source.act(new ListFiles()));
+        }
+        DoxygenListingIndex.write(staging);
+        if (projectRoot != null) {
+            // a newer build may already have published its own
+            published = DoxygenProjectDocs.commit(projectRoot, number);
+            return count;
+        }
+        File previous = new File(target.getParentFile(), target.getName() + ".previous");
+        FileUtils.deleteDirectory(previous);
+        if (target.exists()) {
+            Files.move(target.toPath(), previous.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        }
+        Files.move(staging.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        FileUtils.deleteDirectory(previous);
+        published = true;
+        return count;
+    }
+
+    /**
+     * Deletes the staged files which are not in the output directory anymore, and the directories left empty.
+     *
+     * @param files paths of the files of the output directory
+     */
+    private static void prune(File dir, String path, Set<String> files) throws IOException {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            String relativePath = path + child.getName();
+            if (child.isDirectory()) {
+                prune(child, relativePath + "/", files);
+                String[] left = child.list();
+                if (left != null && left.length == 0) {
+                    Files.delete(child.toPath());
+                }
+            } else if (!files.contains(relativePath)) {
+                Files.delete(child.toPath());
+            }
+        }
+    }
+
+    /**
+     * Drops the files transferred so far.
+     */
+    public void abort() throws IOException {
+        if (projectRoot != null) {
+            DoxygenProjectDocs.discard(projectRoot, number);
+            return;
+        }
+        FileUtils.deleteDirectory(staging);
+    }
+
+    public int getTransferred() {
+        return transferred;
+    }
+
+    public int getBatches() {
+        return batches;
+    }
+
+    /**
+     * @return true if the commit made the documentation visible, false if a newer build already published its own
+     */
+    public boolean isPublished() {
+        return published;
+    }
+
+    /**
+     * Selects the files whose modification time is in <code>[from, to)</code>.
+     */
+    static final class ModifiedFiles extends DirScanner {
+        private static final long serialVersionUID = 1L;
+
+        private final long from;
+        private final long to;
+
+        ModifiedFiles(long from, long to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public void scan(File dir, FileVisitor visitor) throws IOException {
+            scan(dir, "", visitor);
+        }
+
+        private void scan(File dir, String path, FileVisitor visitor) throws IOException {
+            File[] children = dir.listFiles();
+            if (children == null) {
+                return;
+            }
+            for (File child : children) {
+                String relativePath = path + child.getName();
+                if (child.isDirectory()) {
+                    scan(child, relativePath + "/", visitor);
+                } else {
+                    long modified = child.lastModified();
+                    if (modified >= from && modified < to) {
+                        visitor.visit(child, relativePath);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Lists the files of the output directory, by path relative to it.
+     */
+    private static final class ListFiles extends MasterToSlaveFileCallable<Set<String>> {
+        private static final long serialVersionUID = 1L;
+
+        public Set<String> invoke(File dir, VirtualChannel channel) throws IOException {
+            final Set<String> files = new HashSet<String>();
+            new ModifiedFiles(Long.MIN_VALUE, Long.MAX_VALUE).scan(dir, new FileVisitor() {
+                @Override
+                public void visit(File f, String relativePath) {
+                    files.add(relativePath);
+                }
+            });
+            return files;
+        }
+    }
+
+    /**
+     * Gets the clock of the node of the output directory.
+     */
+    private static final class AgentTime extends MasterToSlaveCallable<Long, RuntimeException> {
+        private static final long serialVersionUID = 1L;
+
+        public Long call() {
+            return System.currentTimeMillis();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package hudson.plugins.doxygen;
+
+import hudson.FilePath;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.BuildListener;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import jenkins.model.Jenkins;
+
+/**
+ * Tag files generated by doxygen, archived with the documentation so that downstream projects can link to it.
+ *
+ * The tag files of a build are stored in its <code>doxygen/tags</code> directory. The downstream builds copy the tag
+ * files of their upstream projects to the workspace and give them to doxygen in <code>TAGFILES</code>, with the location
+ * of the upstream documentation as an absolute path on the Jenkins server: the downstream documentation is served both
+ * under its build and under its project, where the relative locations would differ.
+ */
+public final class DoxygenTagFiles {
+
+    /** Number of builds of an upstream project searched for tag files */
+    private static final int MAX_SEARCHED_BUILDS = 10;
+
+    private DoxygenTagFiles() {
+    }
+
+    /**
+     * Gets the tag files directory of the given build.
+     */
+    public static File getDirectory(Run<?, ?> run) {
+        return new File(run.getRootDir(), "doxygen/tags");
+    }
+
+    private static File[] getTagFiles(Run<?, ?> run) {
+        File[] files = getDirectory(run).listFiles();
+        return files != null ? files : new File[0];
+    }
+
+    /**
+     * Finds the build of an upstream project whose tag files to use: the one which triggered the build if it archived
+     * tag files, otherwise the latest successful one.
+     */
+    static Run<?, ?> findUpstreamBuild(AbstractBuild<?, ?> build, AbstractProject<?, ?> upstream) {
+        Run<?, ?> cause = build.getUpstreamRelationshipBuild(upstream);
+        if (cause != null && getTagFiles(cause).length > 0) {
+            return cause;
+        }
+        int searched = 0;
+        for (Run<?, ?> run = upstream.getLastSuccessfulBuild(); run != null && searched < MAX_SEARCHED_BUILDS; run = run.getPreviousSuccessfulBuild()) {
+            if (getTagFiles(run).length > 0) {
+                return run;
+            }
+            searched++;
+        }
+        return null;
+    }
+
+    /**
+     * Copies the tag files of the upstream projects to the given directory.
+     *
+     * @return the <code>TAGFILES</code> values, <code>file=location</code>
+     */
+    public static List<String> fetch(AbstractBuild<?, ?> build, FilePath directory, BuildListener listener) throws IOException, InterruptedException {
+        Map<AbstractProject<?, ?>, Run<?, ?>> upstreams = new LinkedHashMap<AbstractProject<?, ?>, Run<?, ?>>();
+        for (AbstractProject<?, ?> upstream : build.getProject().getUpstreamProjects()) {
+            Run<?, ?> run = findUpstreamBuild(build, upstream);
+            if (run != null) {
+                upstreams.put(upstream, run);
+            }
+        }
+        return fetch(upstreams, getRootPath(), directory, listener);
+    }
+
+    /**
+     * Copies the tag files of the given upstream builds to the given directory.
+     *
+     * @param rootPath path of the Jenkins root URL, ending with a slash
+     * @return the <code>TAGFILES</code> values, <code>file=location</code>
+     */
+    static List<String> fetch(Map<AbstractProject<?, ?>, Run<?, ?>> upstreams, String rootPath, FilePath directory, TaskListener listener)
+            throws IOException, InterruptedException {
+        List<String> tagFiles = new ArrayList<String>();
+        for (Map.Entry<AbstractProject<?, ?>, Run<?, ?>> upstream : upstreams.entrySet()) {
+            Run<?, ?> run = upstream.getValue();
+            // absolute, the documentation being served both under the build and under the project
+            String location = rootPath + getDocumentationUrl(upstream.getKey(), run);
+            FilePath target = directory.child(upstream.getKey().getFullName().replaceAll("[^A-Za-z0-9._-]", "_"));
+            target.deleteRecursive();
+            target.mkdirs();
+            for (File file : getTagFiles(run)) {
+                FilePath copy = target.child(file.getName());
+                new FilePath(file).copyTo(copy);
+                tagFiles.add(copy.getRemote() + "=" + location);
+                listener.getLogger().println(String.format("Linking to the documentation of %s with the tag file %s", run.getFullDisplayName(), file.getName()));
+            }
+        }
+        return tagFiles;
+    }
+
+    /**
+     * Gets the path of the Jenkins root URL, <code>/</code> if the root URL isn't configured.
+     */
+    static String getRootPath() {
+        String rootUrl = Jenkins.get().getRootUrl();
+        String path = rootUrl != null ? URI.create(rootUrl).getPath() : null;
+        if (path == null || path.isEmpty()) {
+            return "/";
+        }
+        return path.endsWith("/") ? path : path + "/";
+    }
+
+    /**
+     * Gets the URL of the documentation published by a build, relative to the Jenkins root.
+     */
+    static String getDocumentationUrl(AbstractProject<?, ?> project, Run<?, ?> run) {
+        DoxygenArchiver archiver = project.getPublishersList().get(DoxygenArchiver.class);
+        return (archiver != null && archiver.isKeepAll() ? run.getUrl() : project.getUrl()) + "doxygen/";
+    }
+}
@@ -0,0 +1,130 @@
+package hudson.plugins.doxygen;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Durations of the doxygen phases, computed from the progress messages timestamped by <code>doxygen -d time</code>.
+ *
+ * Each message is timestamped with the elapsed time, like <code>12.345 sec: Generating class documentation...</code>:
+ * a phase lasts from its first message to the first message of the next phase.
+ */
+public class DoxygenTimings {
+
+    /** Progress message timestamped by the "time" debug flag of doxygen */
+    private static final Pattern TIMESTAMP_PATTERN = Pattern.compile("^\\s*(\\d+(?:\\.\\d+)?) sec: (.*)$");
+
+    public enum Phase {
+        PARSING("Input parsing", "Searching for", "Reading", "Parsing", "Preprocessing", "Scanning"),
+        CLASS_GRAPH("Class graph", "Computing class", "Building class list", "Flushing cached template",
+                "Associating documentation", "Computing nesting"),
+        DOT("Dot rendering", "Generating dot graphs", "Running dot", "Running plantuml"),
+        HTML("HTML generation", "Generating", "Writing", "Patching output", "Copying", "Creating"),
+        OTHER("Other");
+
+        private final String displayName;
+        private final String[] prefixes;
+
+        Phase(String displayName, String... prefixes) {
+            this.displayName = displayName;
+            this.prefixes = prefixes;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+
+        /**
+         * Finds the phase of a progress message, the first phase with a matching prefix wins.
+         */
+        static Phase of(String message) {
+            for (Phase phase : values()) {
+                for (String prefix : phase.prefixes) {
+                    if (message.regionMatches(true, 0, prefix, 0, prefix.length())) {
+                        return phase;
+                    }
+                }
+            }
+            return OTHER;
+        }
+    }
+
+    private final EnumMap<Phase, Long> durations = new EnumMap<Phase, Long>(Phase.class);
+
+    private Phase current;
+    private long currentStart;
+
+    public DoxygenTimings() {
+        for (Phase phase : Phase.values()) {
+            durations.put(phase, 0L);
+        }
+    }
+
+    /**
+     * Parses a console line.
+     *
+     * @return true if the line was a timestamped progress message
+     */
+    public boolean parse(String line) {
+        Matcher m = TIMESTAMP_PATTERN.matcher(line);
+        if (!m.matches()) {
+            return false;
+        }
+        long millis = Math.round(Double.parseDouble(m.group(1)) * 1000);
+        mark(millis, m.group(2));
+        return true;
+    }
+
+    synchronized void mark(long millis, String message) {
+        Phase phase = Phase.of(message.trim());
+        if (current != null && millis >= currentStart) {
+            add(current, millis - currentStart);
+        }
+        current = phase;
+        currentStart = millis;
+    }
+
+    private void add(Phase phase, long millis) {
+        durations.put(phase, durations.get(phase) + millis);
+    }
+
+    /**
+     * Adds the durations of another doxygen process.
+     */
+    public synchronized void add(DoxygenTimings other) {
+        for (Map.Entry<Phase, Long> entry : other.getDurations().entrySet()) {
+            add(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * @return the duration of each phase, in milliseconds
+     */
+    public synchronized Map<Phase, Long> getDurations() {
+        return new EnumMap<Phase, Long>(durations);
+    }
+
+    public synchronized long getTotal() {
+        long total = 0;
+        for (long duration : durations.values()) {
+            total += duration;
+        }
+        return total;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder summary = new StringBuilder();
+        for (Map.Entry<Phase, Long> entry : durations.entrySet()) {
+            if (summary.length() > 0) {
+                summary.append(", ");
+            }
+            summary.append(entry.getKey().getDisplayName().toLowerCase(Locale.ENGLISH)).append(' ')
+                    .append(String.format(Locale.ENGLISH, "%.1fs", entry.getValue() / 1000.0));
+        }
+        return summary.toString();
+    }
+}
@@ -0,0 +1,67 @@
+package hudson.plugins.doxygen;
+
+import hudson.model.Run;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import jenkins.model.RunAction2;
+
+/**
+ * Build action keeping the duration of each doxygen phase, see {@link DoxygenTimings}.
+ */
+public class DoxygenTimingsAction implements RunAction2 {
+
+    private final EnumMap<DoxygenTimings.Phase, Long> durations;
+
+    private transient Run<?, ?> run;
+
+    public DoxygenTimingsAction(Map<DoxygenTimings.Phase, Long> durations) {
+        this.durations = new EnumMap<DoxygenTimings.Phase, Long>(DoxygenTimings.Phase.class);
+        this.durations.putAll(durations);
+    }
+
+    public String getIconFileName() {
+        return "clock.png";
+    }
+
+    public String getDisplayName() {
+        return "Doxygen Timings";
+    }
+
+    public String getUrlName() {
+        return "doxygenTimings";
+    }
+
+    public Run<?, ?> getRun() {
+        return run;
+    }
+
+    public DoxygenTimings.Phase[] getPhases() {
+        return DoxygenTimings.Phase.values();
+    }
+
+    /**
+     * @return the duration of the phase in milliseconds, 0 for the phases unknown when the build ran
+     */
+    public long getDuration(DoxygenTimings.Phase phase) {
+        Long duration = durations.get(phase);
+        return duration != null ? duration : 0;
+    }
+
+    public long getTotal() {
+        long total = 0;
+        for (long duration : durations.values()) {
+            total += duration;
+        }
+        return total;
+    }
+
+    public void onAttached(Run<?, ?> r) {
+        this.run = r;
+    }
+
+    public void onLoad(Run<?, ?> r) {
+        this.run = r;
+    }
+}
@@ -0,0 +1,109 @@
+package hudson.plugins.doxygen;
+
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.Action;
+import hudson.util.ChartUtil;
+import hudson.util.DataSetBuilder;
+import hudson.util.Graph;
+import hudson.util.ShiftedCategoryAxis;
+
+import java.awt.Color;
+import java.io.IOException;
+
+import org.jfree.chart.ChartFactory;
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.axis.CategoryAxis;
+import org.jfree.chart.axis.CategoryLabelPositions;
+import org.jfree.chart.plot.CategoryPlot;
+import org.jfree.chart.plot.PlotOrientation;
+import org.jfree.data.category.CategoryDataset;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+/**
+ * Project action drawing the trend of the doxygen phase durations.
+ */
+public class DoxygenTimingsProjectAction implements Action {
+
+    /** Number of builds displayed in the trend */
+    private static final int MAX_BUILDS = 50;
+
+    private final AbstractProject<?, ?> project;
+
+    public DoxygenTimingsProjectAction(AbstractProject<?, ?> project) {
+        this.project = project;
+    }
+
+    public AbstractProject<?, ?> getProject() {
+        return project;
+    }
+
+    public String getIconFileName() {
+        // only the trend of the project page
+        return null;
+    }
+
+    public String getDisplayName() {
+        return "Doxygen Timings";
+    }
+
+    public String getUrlName() {
+        return "doxygenTimings";
+    }
+
+    /**
+     * @return true if a build recorded timings, so there's something to draw
+     */
+    public boolean hasTrend() {
+        for (AbstractBuild<?, ?> build : project.getBuilds().limit(MAX_BUILDS)) {
+            if (build.getAction(DoxygenTimingsAction.class) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void doTrend(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        final DataSetBuilder<String, ChartUtil.NumberOnlyBuildLabel> dataset = new DataSetBuilder<String, ChartUtil.NumberOnlyBuildLabel>();
+        long timestamp = -1;
+        for (AbstractBuild<?, ?> build : project.getBuilds().limit(MAX_BUILDS)) {
+            DoxygenTimingsAction action = build.getAction(DoxygenTimingsAction.class);
+            if (action == null) {
+                continue;
+            }
+            timestamp = Math.max(timestamp, build.getTimeInMillis());
+            ChartUtil.NumberOnlyBuildLabel label = new ChartUtil.NumberOnlyBuildLabel(build);
+            for (DoxygenTimings.Phase phase : DoxygenTimings.Phase.values()) {
+                dataset.add(action.getDuration(phase) / 1000.0, phase.getDisplayName(), label);
+            }
+        }
+        new Graph(timestamp, 500, 200) {
+            @Override
+            protected JFreeChart createGraph() {
+                return createChart(dataset.build());
+            }
+        }.doPng(req, rsp);
+    }
+
+    private static JFreeChart createChart(CategoryDataset dataset) {
+        JFreeChart chart = ChartFactory.createStackedAreaChart(null, null, "seconds", dataset,
+                PlotOrientation.VERTICAL, true, true, false);
+        chart.setBackgroundPaint(Color.white);
+
+        CategoryPlot plot = chart.getCategoryPlot();
+        plot.setBackgroundPaint(Color.WHITE);
+        plot.setOutlinePaint(null);
+        plot.setForegroundAlpha(0.8f);
+        plot.setRangeGridlinesVisible(true);
+        plot.setRangeGridlinePaint(Color.black);
+
+        CategoryAxis domainAxis = new ShiftedCategoryAxis(null);
+        plot.setDomainAxis(domainAxis);
+        domainAxis.setCategoryLabelPositions(CategoryLabelPositions.UP_90);
+        domainAxis.setLowerMargin(0.0);
+        domainAxis.setUpperMargin(0.0);
+        domainAxis.setCategoryMargin(0.0);
+        return chart;
+    }
+}
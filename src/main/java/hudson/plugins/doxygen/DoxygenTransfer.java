@@ -0,0 +1,175 @@
+package hudson.plugins.doxygen;
+
+import hudson.FilePath;
+import hudson.model.Computer;
+import hudson.util.io.ArchiverFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.TeeInputStream;
+
+/**
+ * Copies the documentation from the agent to the controller, processing the files while they are received.
+ *
+ * The agent streams the documentation as a tar archive, which the controller reads entry by entry: each file goes
+ * through the processing stages on its way to the disk, so the documentation is only written once. Like
+ * {@link FilePath#copyRecursiveTo}, the archive is compressed when it comes from an agent.
+ */
+public class DoxygenTransfer {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final boolean minify;
+    private final boolean sharded;
+
+    /** Checks the links of the pages received, if set */
+    private DoxygenLinkChecker linkChecker;
+
+    /** Size and modification time of the files written, by path in the documentation */
+    private final Map<String, long[]> written = new HashMap<String, long[]>();
+
+    private int files = 0;
+    private long received = 0;
+    private long bytesWritten = 0;
+
+    /**
+     * @param minify minify the HTML, CSS and JavaScript files, see {@link DoxygenMinifier}
+     */
+    public DoxygenTransfer(boolean minify) {
+        this(minify, false);
+    }
+
+    /**
+     * @param minify minify the HTML, CSS and JavaScript files, see {@link DoxygenMinifier}
+     * @param sharded store the files by the hash of their path, see {@link DoxygenListingIndex}
+     */
+    public DoxygenTransfer(boolean minify, boolean sharded) {
+        this.minify = minify;
+        this.sharded = sharded;
+    }
+
+    /**
+     * Checks the links of the documentation while it's received.
+     */
+    public void setLinkChecker(DoxygenLinkChecker linkChecker) {
+        this.linkChecker = linkChecker;
+    }
+
+    /**
+     * Copies the content of a directory to a local directory, indexing it if it's sharded.
+     *
+     * @return the number of files copied
+     */
+    public int copy(final FilePath source, File target) throws IOException, InterruptedException {
+        final PipedOutputStream pipe = new PipedOutputStream();
+        PipedInputStream in = new PipedInputStream(pipe, BUFFER_SIZE);
+        // the link to the agent is slower than the compression
+        final boolean compressed = source.isRemote();
+        // the archive is written while it's read, the archiver closes the pipe when done
+        Future<Integer> archiver = Computer.threadPoolForRemoting.submit(() -> {
+            try {
+                return compressed ? source.archive(ArchiverFactory.TARGZ, pipe, "**/*") : source.tar(pipe, "**/*");
+            } finally {
+                pipe.close();
+            }
+        });
+        try (TarArchiveInputStream tar = new TarArchiveInputStream(compressed ? new GZIPInputStream(in, BUFFER_SIZE) : in)) {
+            TarArchiveEntry entry;
+            while ((entry = tar.getNextTarEntry()) != null) {
+                File file = new File(target, entry.getName());
+                if (!file.toPath().normalize().startsWith(target.toPath().normalize())) {
+                    throw new IOException("Invalid path in the documentation: " + entry.getName());
+                }
+                if (entry.isDirectory()) {
+                    // the directories of a sharded tree only exist in its index
+                    if (!sharded) {
+                        Files.createDirectories(file.toPath());
+                    }
+                } else if (entry.isFile()) {
+                    String path = file.toPath().normalize().toString().substring(target.toPath().normalize().toString().length() + 1)
+                            .replace(File.separatorChar, '/');
+                    if (sharded) {
+                        file = new File(target, DoxygenListingIndex.shard(path));
+                    }
+                    Files.createDirectories(file.getParentFile().toPath());
+                    long size = receive(path, tar, file);
+                    file.setLastModified(entry.getModTime().getTime());
+                    written.put(path, new long[] {size, file.lastModified()});
+                    if (linkChecker != null) {
+                        linkChecker.add(path);
+                    }
+                }
+            }
+            // drains the end of the archive, the archiver blocks otherwise
+            IOUtils.copy(in, OutputStream.nullOutputStream());
+        } finally {
+            in.close();
+        }
+        try {
+            archiver.get();
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to archive the documentation", e.getCause());
+        }
+        if (sharded) {
+            // the index maps the paths of the documentation to the shards
+            DoxygenListingIndex.write(target, written, true);
+        }
+        return files;
+    }
+
+    /**
+     * @return the number of bytes written
+     */
+    private long receive(String path, InputStream in, File file) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file.toPath()), BUFFER_SIZE)) {
+            DoxygenMinifier.MinifyingOutputStream minifier = minify ? DoxygenMinifier.wrap(path, out) : null;
+            if (linkChecker != null && DoxygenLinkChecker.isPage(path)) {
+                // the page is scanned as it's read, before it's minified
+                in = new TeeInputStream(in, linkChecker.stream(path), false);
+            }
+            long size = IOUtils.copyLarge(in, minifier != null ? minifier : out);
+            if (minifier != null) {
+                minifier.finish();
+            }
+            long length = minifier != null ? minifier.getWritten() : size;
+            files++;
+            received += size;
+            bytesWritten += length;
+            return length;
+        }
+    }
+
+    public int getFiles() {
+        return files;
+    }
+
+    public long getReceived() {
+        return received;
+    }
+
+    public long getWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Gets the size and modification time of the files copied, by path in the documentation.
+     */
+    public Map<String, long[]> getWrittenFiles() {
+        return written;
+    }
+}
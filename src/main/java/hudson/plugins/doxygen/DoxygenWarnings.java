@@ -0,0 +1,488 @@
+package hudson.plugins.doxygen;
+
+import hudson.model.Run;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.commons.io.output.CountingOutputStream;
+
+/**
+ * Compact on-disk store of the warnings and errors reported by doxygen during a build.
+ *
+ * The records are streamed to the build directory while doxygen runs, so the heap only holds
+ * the table of the interned file paths. The layout of the file is:
+ * <pre>
+ * MAGIC
+ * record*          : category (byte), file id + 1 (varint, 0 when unknown), line (varint),
+ *                    source id + 1 (varint, 0 when unknown), message (string)
+ * file table       : count (varint), path (string)*, the Doxyfiles sources included
+ * checkpoints      : count (varint), offset of every {@value #CHECKPOINT_INTERVAL}th record (long)*
+ * footer           : record count (int), file table offset (long), checkpoints offset (long), MAGIC
+ * </pre>
+ * Strings are stored as a varint length followed by the UTF-8 bytes.
+ * The checkpoints allow to seek to any page without reading the preceding records.
+ */
+public final class DoxygenWarnings {
+
+    public static final String FILE_NAME = "warnings.bin";
+
+    private static final int MAGIC = 0x44585731; // "DXW1"
+    private static final int FOOTER_LENGTH = 4 + 8 + 8 + 4;
+    private static final int CHECKPOINT_INTERVAL = 256;
+    private static final int MAX_MESSAGE_LENGTH = 4096;
+
+    private DoxygenWarnings() {
+    }
+
+    public enum Category {
+        WARNING, ERROR;
+
+        public String getDisplayName() {
+            return name().toLowerCase(Locale.ENGLISH);
+        }
+    }
+
+    /**
+     * Gets the warnings file of the given build.
+     */
+    public static File getFile(Run<?, ?> run) {
+        return new File(run.getRootDir(), "doxygen/" + FILE_NAME);
+    }
+
+    /**
+     * A single doxygen message.
+     */
+    public static final class Warning {
+        private final String file;
+        private final int line;
+        private final Category category;
+        private final String message;
+        private final String source;
+
+        public Warning(String file, int line, Category category, String message) {
+            this(file, line, category, message, null);
+        }
+
+        public Warning(String file, int line, Category category, String message, String source) {
+            this.file = file;
+            this.line = line;
+            this.category = category;
+            this.message = message;
+            this.source = source;
+        }
+
+        /**
+         * @return the file reported by doxygen, or null if the message has no location
+         */
+        public String getFile() {
+            return file;
+        }
+
+        public int getLine() {
+            return line;
+        }
+
+        public Category getCategory() {
+            return category;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        /**
+         * @return the Doxyfile whose processing reported the message, or null if unknown
+         */
+        public String getSource() {
+            return source;
+        }
+    }
+
+    /**
+     * Streams the warnings to the store. Instances can be shared between several parsers.
+     */
+    public static final class Writer implements Closeable {
+        private final CountingOutputStream counter;
+        private final DataOutputStream out;
+
+        private final Map<String, Integer> fileIds = new HashMap<String, Integer>();
+        private final List<String> files = new ArrayList<String>();
+        private long[] checkpoints = new long[16];
+        private int numberOfCheckpoints = 0;
+        private int count = 0;
+        private boolean closed = false;
+
+        private final File fingerprintsFile;
+        private final String workspace;
+        private final DoxygenFingerprints.Collector fingerprints;
+
+        public Writer(File file) throws IOException {
+            this(file, null);
+        }
+
+        /**
+         * @param workspace if not null, the {@link DoxygenFingerprints} of the warnings are also written
+         * next to the store, relative to this workspace path
+         */
+        public Writer(File file, String workspace) throws IOException {
+            this.workspace = workspace;
+            this.fingerprintsFile = new File(file.getParentFile(), DoxygenFingerprints.FILE_NAME);
+            this.fingerprints = workspace != null ? new DoxygenFingerprints.Collector() : null;
+            File parent = file.getParentFile();
+            if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+                throw new IOException("Failed to create the directory " + parent);
+            }
+            counter = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            out = new DataOutputStream(counter);
+            out.writeInt(MAGIC);
+        }
+
+        public void add(String file, int line, Category category, String message) throws IOException {
+            add(null, file, line, category, message);
+        }
+
+        /**
+         * @param source the Doxyfile whose processing reported the message, can be null
+         */
+        public synchronized void add(String source, String file, int line, Category category, String message) throws IOException {
+            if (closed) {
+                throw new IOException("The warnings store is closed");
+            }
+            if (count % CHECKPOINT_INTERVAL == 0) {
+                if (numberOfCheckpoints == checkpoints.length) {
+                    checkpoints = Arrays.copyOf(checkpoints, checkpoints.length * 2);
+                }
+                checkpoints[numberOfCheckpoints++] = counter.getByteCount();
+            }
+            String stored = message.length() > MAX_MESSAGE_LENGTH ? message.substring(0, MAX_MESSAGE_LENGTH) : message;
+            out.writeByte(category.ordinal());
+            writeVarInt(out, file == null ? 0 : intern(file) + 1);
+            writeVarInt(out, Math.max(line, 0));
+            writeVarInt(out, source == null ? 0 : intern(source) + 1);
+            writeString(out, stored);
+            count++;
+            if (fingerprints != null) {
+                fingerprints.add(DoxygenFingerprints.fingerprint(category, file, stored, workspace));
+            }
+        }
+
+        public synchronized int getCount() {
+            return count;
+        }
+
+        private int intern(String file) {
+            Integer id = fileIds.get(file);
+            if (id == null) {
+                id = files.size();
+                fileIds.put(file, id);
+                files.add(file);
+            }
+            return id;
+        }
+
+        public synchronized void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                long fileTableOffset = counter.getByteCount();
+                writeVarInt(out, files.size());
+                for (String file : files) {
+                    writeString(out, file);
+                }
+                long checkpointsOffset = counter.getByteCount();
+                writeVarInt(out, numberOfCheckpoints);
+                for (int i = 0; i < numberOfCheckpoints; i++) {
+                    out.writeLong(checkpoints[i]);
+                }
+                out.writeInt(count);
+                out.writeLong(fileTableOffset);
+                out.writeLong(checkpointsOffset);
+                out.writeInt(MAGIC);
+            } finally {
+                out.close();
+            }
+            if (fingerprints != null) {
+                DoxygenFingerprints.write(fingerprintsFile, fingerprints.toSortedArray());
+            }
+        }
+
+        /**
+         * @return the sorted fingerprints of the warnings written so far, or null if they aren't computed
+         */
+        public long[] getFingerprints() {
+            return fingerprints != null ? fingerprints.toSortedArray() : null;
+        }
+    }
+
+    /**
+     * Criteria of the warnings to read. Empty criteria match everything.
+     */
+    public static final class Filter {
+        private final String file;
+        private final Category category;
+        private final String message;
+
+        private String source;
+        private long[] known;
+        private String workspace;
+
+        public Filter(String file, Category category, String message) {
+            this.file = normalize(file);
+            this.category = category;
+            this.message = normalize(message);
+        }
+
+        /**
+         * Only keeps the warnings reported for the given Doxyfile, or whose Doxyfile is unknown.
+         */
+        public Filter fromSource(String source) {
+            this.source = source;
+            return this;
+        }
+
+        /**
+         * Only keeps the warnings whose fingerprint isn't in the given reference fingerprints.
+         */
+        public Filter onlyNew(long[] known, String workspace) {
+            this.known = known;
+            this.workspace = workspace;
+            return this;
+        }
+
+        private static String normalize(String value) {
+            return value == null || value.trim().isEmpty() ? null : value.trim().toLowerCase(Locale.ENGLISH);
+        }
+
+        public boolean isEmpty() {
+            return file == null && category == null && message == null && source == null && known == null;
+        }
+
+        public boolean matches(Warning warning) {
+            if (source != null && warning.getSource() != null && !source.equals(warning.getSource())) {
+                return false;
+            }
+            if (category != null && category != warning.getCategory()) {
+                return false;
+            }
+            if (file != null && (warning.getFile() == null || !warning.getFile().toLowerCase(Locale.ENGLISH).contains(file))) {
+                return false;
+            }
+            if (message != null && !warning.getMessage().toLowerCase(Locale.ENGLISH).contains(message)) {
+                return false;
+            }
+            return known == null || !DoxygenFingerprints.contains(known,
+                    DoxygenFingerprints.fingerprint(warning.getCategory(), warning.getFile(), warning.getMessage(), workspace));
+        }
+    }
+
+    /**
+     * A page of warnings.
+     */
+    public static final class Page {
+        private final List<Warning> warnings;
+        private final int start;
+        private final int total;
+
+        Page(List<Warning> warnings, int start, int total) {
+            this.warnings = warnings;
+            this.start = start;
+            this.total = total;
+        }
+
+        public List<Warning> getWarnings() {
+            return warnings;
+        }
+
+        public int getStart() {
+            return start;
+        }
+
+        /**
+         * @return the number of warnings matching the filter
+         */
+        public int getTotal() {
+            return total;
+        }
+    }
+
+    /**
+     * Reads a page of warnings from the store.
+     * Without filter only the requested page is read, otherwise the records are streamed once from the file.
+     *
+     * @return the page, or an empty page if the store doesn't exist or is incomplete
+     */
+    public static Page read(File file, int start, int limit, Filter filter) throws IOException {
+        if (!file.isFile() || file.length() < 4 + FOOTER_LENGTH) {
+            return new Page(Collections.<Warning>emptyList(), start, 0);
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            raf.seek(raf.length() - FOOTER_LENGTH);
+            int count = raf.readInt();
+            long fileTableOffset = raf.readLong();
+            long checkpointsOffset = raf.readLong();
+            if (raf.readInt() != MAGIC) {
+                // doxygen is still running or the build was interrupted
+                return new Page(Collections.<Warning>emptyList(), start, 0);
+            }
+
+            String[] files = readFiles(raf, fileTableOffset);
+
+            DataInputStream in;
+            List<Warning> warnings = new ArrayList<Warning>();
+            if (filter == null || filter.isEmpty()) {
+                if (start >= count) {
+                    return new Page(warnings, start, count);
+                }
+                in = open(raf, checkpointsOffset);
+                readVarInt(in);
+                int checkpoint = start / CHECKPOINT_INTERVAL;
+                for (int i = 0; i < checkpoint; i++) {
+                    in.readLong();
+                }
+                in = open(raf, in.readLong());
+                for (int i = checkpoint * CHECKPOINT_INTERVAL; i < start; i++) {
+                    readWarning(in, files);
+                }
+                for (int i = start; i < count && warnings.size() < limit; i++) {
+                    warnings.add(readWarning(in, files));
+                }
+                return new Page(warnings, start, count);
+            }
+
+            int matches = 0;
+            in = open(raf, 4);
+            for (int i = 0; i < count; i++) {
+                Warning warning = readWarning(in, files);
+                if (filter.matches(warning)) {
+                    if (matches >= start && warnings.size() < limit) {
+                        warnings.add(warning);
+                    }
+                    matches++;
+                }
+            }
+            return new Page(warnings, start, matches);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Receives the warnings of a store one at a time, see {@link DoxygenWarnings#visit(File, Filter, Visitor)}.
+     */
+    public interface Visitor {
+        void visit(Warning warning) throws IOException;
+    }
+
+    /**
+     * Streams the warnings of the store matching the filter, in the order they were written, without keeping them.
+     *
+     * @param filter selects the warnings visited, can be null
+     * @return the number of warnings visited, 0 if the store doesn't exist or is incomplete
+     */
+    public static int visit(File file, Filter filter, Visitor visitor) throws IOException {
+        if (!file.isFile() || file.length() < 4 + FOOTER_LENGTH) {
+            return 0;
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            raf.seek(raf.length() - FOOTER_LENGTH);
+            int count = raf.readInt();
+            long fileTableOffset = raf.readLong();
+            raf.readLong();
+            if (raf.readInt() != MAGIC) {
+                return 0;
+            }
+            String[] files = readFiles(raf, fileTableOffset);
+            DataInputStream in = open(raf, 4);
+            int visited = 0;
+            for (int i = 0; i < count; i++) {
+                Warning warning = readWarning(in, files);
+                if (filter == null || filter.matches(warning)) {
+                    visitor.visit(warning);
+                    visited++;
+                }
+            }
+            return visited;
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static String[] readFiles(RandomAccessFile raf, long fileTableOffset) throws IOException {
+        DataInputStream in = open(raf, fileTableOffset);
+        String[] files = new String[readVarInt(in)];
+        for (int i = 0; i < files.length; i++) {
+            files[i] = readString(in);
+        }
+        return files;
+    }
+
+    private static DataInputStream open(RandomAccessFile raf, long offset) throws IOException {
+        // the stream isn't closed on purpose: it would close the shared file
+        InputStream channel = Channels.newInputStream(raf.getChannel().position(offset));
+        return new DataInputStream(new BufferedInputStream(channel));
+    }
+
+    private static Warning readWarning(DataInputStream in, String[] files) throws IOException {
+        Category category = Category.values()[in.readUnsignedByte()];
+        int fileId = readVarInt(in);
+        int line = readVarInt(in);
+        int sourceId = readVarInt(in);
+        String message = readString(in);
+        return new Warning(fileId == 0 ? null : files[fileId - 1], line, category, message, sourceId == 0 ? null : files[sourceId - 1]);
+    }
+
+    static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new EOFException("Malformed variable length integer");
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[readVarInt(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,161 @@
+package hudson.plugins.doxygen;
+
+import hudson.Util;
+import hudson.model.Run;
+
+import java.io.IOException;
+import java.util.Locale;
+
+import jenkins.model.RunAction2;
+
+/**
+ * Build action browsing the warnings and errors reported by doxygen.
+ *
+ * The messages are read page by page from the {@link DoxygenWarnings} store of the build,
+ * only the counters are kept in the build.
+ */
+public class DoxygenWarningsAction implements RunAction2 {
+
+    /** Number of messages displayed per page */
+    public static final int PAGE_SIZE = 100;
+
+    private final int numberOfWarnings;
+    private final int numberOfErrors;
+
+    /** Comparison with the reference build, null when there was no reference build */
+    private final Integer referenceBuild;
+    private final int newWarnings;
+    private final int fixedWarnings;
+
+    /** Workspace the fingerprints are relative to */
+    private final String workspace;
+
+    /** True if the new warnings made the build unstable, it's then not a reference for the next builds */
+    private final boolean unstableByNewWarnings;
+
+    private transient Run<?, ?> run;
+
+    public DoxygenWarningsAction(int numberOfWarnings, int numberOfErrors) {
+        this(numberOfWarnings, numberOfErrors, null, null, null, false);
+    }
+
+    public DoxygenWarningsAction(int numberOfWarnings, int numberOfErrors, Run<?, ?> reference, DoxygenFingerprints.Diff diff, String workspace,
+            boolean unstableByNewWarnings) {
+        this.numberOfWarnings = numberOfWarnings;
+        this.numberOfErrors = numberOfErrors;
+        this.referenceBuild = reference != null && diff != null ? reference.getNumber() : null;
+        this.newWarnings = diff != null ? diff.getNewWarnings() : 0;
+        this.fixedWarnings = diff != null ? diff.getFixedWarnings() : 0;
+        this.workspace = workspace;
+        this.unstableByNewWarnings = unstableByNewWarnings;
+    }
+
+    public String getIconFileName() {
+        return "warning.png";
+    }
+
+    public String getDisplayName() {
+        return "Doxygen Warnings";
+    }
+
+    public String getUrlName() {
+        return "doxygenWarnings";
+    }
+
+    public Run<?, ?> getRun() {
+        return run;
+    }
+
+    public int getNumberOfWarnings() {
+        return numberOfWarnings;
+    }
+
+    public int getNumberOfErrors() {
+        return numberOfErrors;
+    }
+
+    /**
+     * @return the number of the build the warnings are compared to, or null
+     */
+    public Integer getReferenceBuild() {
+        return referenceBuild;
+    }
+
+    public int getNewWarnings() {
+        return newWarnings;
+    }
+
+    public int getFixedWarnings() {
+        return fixedWarnings;
+    }
+
+    public boolean isUnstableByNewWarnings() {
+        return unstableByNewWarnings;
+    }
+
+    public int getPageSize() {
+        return PAGE_SIZE;
+    }
+
+    public void onAttached(Run<?, ?> r) {
+        this.run = r;
+    }
+
+    public void onLoad(Run<?, ?> r) {
+        this.run = r;
+    }
+
+    /**
+     * Reads the requested page of messages, all the parameters come from the query string and can be null.
+     */
+    public DoxygenWarnings.Page getPage(String start, String file, String category, String message, String newOnly) throws IOException {
+        int first = 0;
+        try {
+            first = Math.max(0, Integer.parseInt(Util.fixNull(start)));
+        } catch (NumberFormatException e) {
+            // first page
+        }
+        DoxygenWarnings.Filter filter = new DoxygenWarnings.Filter(file, toCategory(category), message);
+        if (Util.fixEmpty(newOnly) != null && referenceBuild != null) {
+            Run<?, ?> reference = run.getParent().getBuildByNumber(referenceBuild);
+            long[] known = reference != null ? DoxygenFingerprints.read(DoxygenFingerprints.getFile(reference)) : null;
+            filter.onlyNew(known != null ? known : new long[0], workspace);
+        }
+        return DoxygenWarnings.read(DoxygenWarnings.getFile(run), first, PAGE_SIZE, filter);
+    }
+
+    /**
+     * Builds the query string of another page, keeping the current filter.
+     */
+    public String getQuery(int start, String file, String category, String message, String newOnly) {
+        StringBuilder query = new StringBuilder("?start=").append(Math.max(0, start));
+        if (Util.fixEmpty(newOnly) != null) {
+            query.append("&newOnly=on");
+        }
+        if (Util.fixEmptyAndTrim(file) != null) {
+            query.append("&file=").append(Util.rawEncode(file.trim()));
+        }
+        if (toCategory(category) != null) {
+            query.append("&category=").append(toCategory(category).name());
+        }
+        if (Util.fixEmptyAndTrim(message) != null) {
+            query.append("&message=").append(Util.rawEncode(message.trim()));
+        }
+        return query.toString();
+    }
+
+    public DoxygenWarnings.Category[] getCategories() {
+        return DoxygenWarnings.Category.values();
+    }
+
+    private static DoxygenWarnings.Category toCategory(String category) {
+        if (Util.fixEmptyAndTrim(category) == null) {
+            return null;
+        }
+        try {
+            return DoxygenWarnings.Category.valueOf(category.trim().toUpperCase(Locale.ENGLISH));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
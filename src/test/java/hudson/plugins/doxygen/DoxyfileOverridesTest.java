@@ -0,0 +1,47 @@
+package hudson.plugins.doxygen;
+
+import hudson.EnvVars;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DoxyfileOverridesTest {
+
+    @Test
+    public void buildsTheConfigurationFedToStdin() {
+        EnvVars environment = new EnvVars("VERSION", "1.2");
+        DoxyfileOverrides overrides = new DoxyfileOverrides()
+                .add("NUM_PROC_THREADS", "8")
+                .addAll("# comment\n\nPROJECT_NUMBER = ${VERSION}\r\nEXCLUDE += build\nnot an assignment\n", environment);
+
+        Assert.assertEquals(Arrays.asList("NUM_PROC_THREADS = 8", "PROJECT_NUMBER = 1.2", "EXCLUDE += build"), overrides.getLines());
+        Assert.assertEquals("@INCLUDE = \"/ws/Doxyfile\"\nNUM_PROC_THREADS = 8\nPROJECT_NUMBER = 1.2\nEXCLUDE += build\n",
+                new String(overrides.toConfiguration("/ws/Doxyfile"), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void appliesTheOverridesToTheDoxyfileValues() {
+        Map<String, List<String>> values = new HashMap<String, List<String>>();
+        values.put("WARN_LOGFILE", new ArrayList<String>(Arrays.asList("warnings.log")));
+        values.put("EXCLUDE", new ArrayList<String>(Arrays.asList("test")));
+
+        new DoxyfileOverrides().addAll("WARN_LOGFILE = \"doxygen warnings.log\"\nEXCLUDE += build", new EnvVars()).applyTo(values);
+
+        Assert.assertEquals("doxygen warnings.log", DoxyfileReader.getValue(values, "WARN_LOGFILE"));
+        Assert.assertEquals(Arrays.asList("test", "build"), values.get("EXCLUDE"));
+    }
+
+    @Test
+    public void sharesTheCoresBetweenTheBusyExecutors() {
+        Assert.assertEquals(16, DoxygenBuilder.getAutoThreads(64, 4));
+        Assert.assertEquals(1, DoxygenBuilder.getAutoThreads(2, 4));
+        Assert.assertEquals(32, DoxygenBuilder.getAutoThreads(64, 0));
+    }
+}
@@ -253,4 +253,20 @@ public class DoxygenArchiverTest extends AbstractWorkspaceTest {
         context.assertIsSatisfied();
     }
 
+    @Test
+    public void maxGrowthIsReadWithOrWithoutThePercentSign() {
+        assertEquals(Integer.valueOf(10), DoxygenArchiver.parseMaxGrowth("10"));
+        assertEquals(Integer.valueOf(10), DoxygenArchiver.parseMaxGrowth(" 10 % "));
+        assertEquals(Integer.valueOf(0), DoxygenArchiver.parseMaxGrowth("0%"));
+        Assert.assertNull(DoxygenArchiver.parseMaxGrowth(" "));
+        for (String value : new String[] {"abc", "-5", "10%%", "%"}) {
+            try {
+                DoxygenArchiver.parseMaxGrowth(value);
+                fail(value);
+            } catch (IllegalArgumentException e) {
+                assertTrue(e.getMessage().contains(value));
+            }
+        }
+    }
+
 }
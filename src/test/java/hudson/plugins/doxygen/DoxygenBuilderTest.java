@@ -0,0 +1,30 @@
+package hudson.plugins.doxygen;
+
+import static org.junit.Assert.assertEquals;
+
+import hudson.FilePath;
+
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DoxygenBuilderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void resolvesListsAndPatternsOfDoxyfiles() throws Exception {
+        folder.newFolder("components", "core");
+        folder.newFolder("components", "ui");
+        folder.newFile("components/ui/Doxyfile");
+        folder.newFile("components/core/Doxyfile");
+        FilePath workspace = new FilePath(folder.getRoot());
+
+        assertEquals(Arrays.asList("Doxyfile"), DoxygenBuilder.resolveDoxyfiles(workspace, "Doxyfile"));
+        assertEquals(Arrays.asList("api/Doxyfile", "Doxyfile", "components/core/Doxyfile", "components/ui/Doxyfile"),
+                DoxygenBuilder.resolveDoxyfiles(workspace, "api/Doxyfile, Doxyfile\ncomponents/**/Doxyfile,Doxyfile"));
+    }
+}
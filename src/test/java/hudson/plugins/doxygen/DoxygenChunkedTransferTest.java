@@ -0,0 +1,185 @@
+package hudson.plugins.doxygen;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import hudson.FilePath;
+import hudson.model.TaskListener;
+import hudson.util.StreamTaskListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import jenkins.util.VirtualFile;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DoxygenChunkedTransferTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File html;
+    private File target;
+    private final TaskListener listener = StreamTaskListener.fromStdout();
+
+    @Before
+    public void createDocumentation() throws Exception {
+        html = folder.newFolder("html");
+        target = folder.newFolder("target");
+        write("index.html", "<html>index</html>");
+        write("empty.html", "");
+        write("search/search.js", "var search;");
+        write("search/all_0.html", "<html>all</html>");
+    }
+
+    private void write(String name, String content) throws Exception {
+        File file = new File(html, name);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void assertCopied(String name) throws Exception {
+        File copy = new File(target, name);
+        assertArrayEquals(Files.readAllBytes(new File(html, name).toPath()), Files.readAllBytes(copy.toPath()));
+        assertEquals(new File(html, name).lastModified(), copy.lastModified());
+    }
+
+    /**
+     * Transfer whose fetches fail as configured, the agent being always back at once.
+     */
+    private static class FlakyTransfer extends DoxygenChunkedTransfer {
+        int failures;
+        boolean corrupt;
+        int retried = 0;
+
+        FlakyTransfer(boolean sharded, int chunkSize) {
+            this(sharded, chunkSize, 1);
+        }
+
+        FlakyTransfer(boolean sharded, int chunkSize, int pipeline) {
+            super(sharded, chunkSize, pipeline);
+        }
+
+        @Override
+        Future<Chunk> fetch(FilePath source, List<Span> spans) throws IOException, InterruptedException {
+            CompletableFuture<Chunk> result = new CompletableFuture<Chunk>();
+            if (failures > 0) {
+                failures--;
+                result.completeExceptionally(new IOException("Connection closed"));
+                return result;
+            }
+            Chunk chunk = read(source, spans);
+            if (corrupt) {
+                corrupt = false;
+                chunk.data[0] ^= 1;
+            }
+            result.complete(chunk);
+            return result;
+        }
+
+        Chunk read(FilePath source, List<Span> spans) throws IOException, InterruptedException {
+            try {
+                return super.fetch(source, spans).get();
+            } catch (ExecutionException e) {
+                throw new IOException(e.getCause());
+            }
+        }
+
+        @Override
+        FilePath retry(String nodeName, FilePath source, IOException failure, TaskListener listener) {
+            retried++;
+            return source;
+        }
+    }
+
+    @Test
+    public void chunksSpanTheFiles() throws Exception {
+        FlakyTransfer transfer = new FlakyTransfer(false, 7);
+        assertEquals(4, transfer.copy(new FilePath(html), target, listener));
+        // 45 bytes in chunks of 7
+        assertEquals(7, transfer.getChunks());
+        assertEquals(45, transfer.getTransferred());
+        assertEquals(0, transfer.retried);
+        assertCopied("index.html");
+        assertCopied("empty.html");
+        assertCopied("search/search.js");
+        assertCopied("search/all_0.html");
+    }
+
+    @Test
+    public void failedChunksAreResumed() throws Exception {
+        FlakyTransfer transfer = new FlakyTransfer(false, 10);
+        transfer.failures = 2;
+        transfer.corrupt = true;
+        transfer.copy(new FilePath(html), target, listener);
+        assertEquals(3, transfer.retried);
+        assertEquals(5, transfer.getChunks());
+        assertCopied("search/all_0.html");
+    }
+
+    @Test
+    public void pipelinedChunksAreWrittenInOrder() throws Exception {
+        FlakyTransfer transfer = new FlakyTransfer(false, 7, 4);
+        transfer.failures = 1;
+        assertEquals(4, transfer.copy(new FilePath(html), target, listener));
+        // the chunks requested after the failed one are requested again
+        assertEquals(1, transfer.retried);
+        assertEquals(7, transfer.getChunks());
+        assertEquals(4, transfer.getWrittenFiles().size());
+        assertCopied("index.html");
+        assertCopied("empty.html");
+        assertCopied("search/search.js");
+        assertCopied("search/all_0.html");
+    }
+
+    @Test
+    public void filesSpanningSeveralChunksAreVerified() throws Exception {
+        write("large.html", "<html>" + "0123456789".repeat(10) + "</html>");
+        FlakyTransfer transfer = new FlakyTransfer(false, 16, 3);
+        assertEquals(5, transfer.copy(new FilePath(html), target, listener));
+        assertCopied("large.html");
+    }
+
+    @Test
+    public void filesChangedDuringTheTransferAreRejected() throws Exception {
+        FlakyTransfer transfer = new FlakyTransfer(false, 10) {
+            @Override
+            Chunk read(FilePath source, List<Span> spans) throws IOException, InterruptedException {
+                Chunk chunk = super.read(source, spans);
+                // the checksum of the chunk matches, but not the one of the file
+                chunk.data[0] ^= 1;
+                return new Chunk(chunk.data, DoxygenChunkedTransfer.digest(chunk.data, 0, chunk.data.length), chunk.files);
+            }
+        };
+        try {
+            transfer.copy(new FilePath(html), target, listener);
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("doesn't match"));
+        }
+    }
+
+    @Test
+    public void shardedCopyIsIndexed() throws Exception {
+        new FlakyTransfer(true, 10).copy(new FilePath(html), target, listener);
+        assertTrue(DoxygenListingIndex.isSharded(target));
+        VirtualFile root = DoxygenListingIndex.browse(target);
+        try (InputStream in = root.child("search").child("all_0.html").open()) {
+            assertEquals("<html>all</html>", IOUtils.toString(in, StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package hudson.plugins.doxygen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DoxygenConsoleParserTest {
+
+    private static final byte[] ERROR_NOTE = "[E]".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] WARNING_NOTE = "[W]".getBytes(StandardCharsets.US_ASCII);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ByteArrayOutputStream out;
+    private DoxygenWarnings.Writer warnings;
+
+    private DoxygenConsoleParser parse(Charset charset, String log) throws IOException {
+        out = new ByteArrayOutputStream();
+        DoxygenConsoleParser parser = new DoxygenConsoleParser(out, charset, warnings, ERROR_NOTE, WARNING_NOTE);
+        parser.write(log.getBytes(charset));
+        parser.close();
+        return parser;
+    }
+
+    @Test
+    public void countsWarningsAndErrors() throws Exception {
+        DoxygenConsoleParser parser = parse(StandardCharsets.UTF_8,
+                "Parsing file App.java...\n"
+                + "warning: documented symbol 'foo' was not declared or defined.\n"
+                + "Warning:\tunable to resolve reference to 'bar'\r\n"
+                + "error: Tag file 'missing.tag' does not exist\n"
+                + "Error problems while running dot\n"
+                + "Generating docs for compound App...\n");
+
+        assertEquals(2, parser.getNumberOfWarnings());
+        assertEquals(2, parser.getNumberOfErrors());
+    }
+
+    @Test
+    public void ignoresIncompleteMarkers() throws Exception {
+        DoxygenConsoleParser parser = parse(StandardCharsets.UTF_8,
+                "warning:\n"
+                + "warnings: none\n"
+                + "Error\n"
+                + "errors: 0\n"
+                + " warning: indented\n");
+
+        assertEquals(0, parser.getNumberOfWarnings());
+        assertEquals(0, parser.getNumberOfErrors());
+    }
+
+    @Test
+    public void annotatesMatchingLines() throws Exception {
+        parse(StandardCharsets.ISO_8859_1, "warning: café\nplain\nerror: broken\n");
+
+        assertEquals("[W]warning: café\nplain\n[E]error: broken\n", new String(out.toByteArray(), StandardCharsets.ISO_8859_1));
+    }
+
+    @Test
+    public void decodesNonAsciiCompatibleCharsets() throws Exception {
+        DoxygenConsoleParser parser = parse(StandardCharsets.UTF_16BE, "warning: first\nerror: second\n");
+
+        assertEquals(1, parser.getNumberOfWarnings());
+        assertEquals(1, parser.getNumberOfErrors());
+    }
+
+    @Test
+    public void recordsLocatedWarnings() throws Exception {
+        File store = folder.newFile(DoxygenWarnings.FILE_NAME);
+        warnings = new DoxygenWarnings.Writer(store);
+        DoxygenConsoleParser parser = parse(StandardCharsets.UTF_8,
+                "/ws/src/App.java:12: warning: Member run() of class App is not documented.\n"
+                + "C:\\ws\\src\\Util.h:7: error: unbalanced grouping commands\n"
+                + "warning: ignoring unsupported tag 'FOO'\n"
+                + "Generating docs for compound App: 12: done\n");
+        warnings.close();
+
+        assertEquals(2, parser.getNumberOfWarnings());
+        assertEquals(1, parser.getNumberOfErrors());
+
+        List<DoxygenWarnings.Warning> recorded = DoxygenWarnings.read(store, 0, 10, null).getWarnings();
+        assertEquals(3, recorded.size());
+        assertEquals("/ws/src/App.java", recorded.get(0).getFile());
+        assertEquals(12, recorded.get(0).getLine());
+        assertEquals("Member run() of class App is not documented.", recorded.get(0).getMessage());
+        assertEquals("C:\\ws\\src\\Util.h", recorded.get(1).getFile());
+        assertEquals(7, recorded.get(1).getLine());
+        assertEquals(DoxygenWarnings.Category.ERROR, recorded.get(1).getCategory());
+        assertEquals("unbalanced grouping commands", recorded.get(1).getMessage());
+        assertNull(recorded.get(2).getFile());
+        assertEquals("ignoring unsupported tag 'FOO'", recorded.get(2).getMessage());
+    }
+
+    @Test
+    public void prefixesLinesWithTheDoxyfile() throws Exception {
+        File store = folder.newFile(DoxygenWarnings.FILE_NAME);
+        warnings = new DoxygenWarnings.Writer(store);
+        out = new ByteArrayOutputStream();
+        DoxygenConsoleParser parser = new DoxygenConsoleParser(out, StandardCharsets.UTF_8, warnings, ERROR_NOTE, WARNING_NOTE);
+        parser.setSource("core/Doxyfile");
+        parser.setLinePrefix("[core/Doxyfile] ");
+        parser.write("Parsing file App.h...\nApp.h:3: warning: undocumented\n".getBytes(StandardCharsets.UTF_8));
+        parser.close();
+        warnings.close();
+
+        assertEquals("[core/Doxyfile] Parsing file App.h...\n[core/Doxyfile] [W]App.h:3: warning: undocumented\n",
+                new String(out.toByteArray(), StandardCharsets.UTF_8));
+        assertEquals("core/Doxyfile", DoxygenWarnings.read(store, 0, 10, null).getWarnings().get(0).getSource());
+    }
+
+    @Test
+    public void finishParsesTheLastLineAndLeavesTheOutputOpen() throws Exception {
+        final boolean[] closed = {false};
+        out = new ByteArrayOutputStream() {
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        };
+        DoxygenConsoleParser parser = new DoxygenConsoleParser(out, StandardCharsets.UTF_8, null, ERROR_NOTE, WARNING_NOTE);
+        parser.write("Parsing file App.java...\nwarning: unterminated".getBytes(StandardCharsets.UTF_8));
+        assertEquals(0, parser.getNumberOfWarnings());
+
+        parser.finish();
+        assertEquals(1, parser.getNumberOfWarnings());
+        assertEquals("Parsing file App.java...\n[W]warning: unterminated", out.toString("UTF-8"));
+        assertFalse(closed[0]);
+    }
+}
@@ -1,6 +1,7 @@
 package hudson.plugins.doxygen;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import hudson.EnvVars;
 import hudson.FilePath;
 import hudson.model.BuildListener;
@@ -13,6 +14,9 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.logging.Logger;
 
 import org.jmock.Expectations;
@@ -104,4 +108,23 @@ public class DoxygenDirectoryParserTest extends AbstractWorkspaceTest {
         classContext.assertIsSatisfied();
         context.assertIsSatisfied();
     }       
+
+    @Test
+    public void readsAllTheDoxyfileValues() throws Exception {
+        workspace.child("Doxyfile").write("# INPUT = commented\n"
+                + "INPUT = src/main \\\n"
+                + "        \"src/with space\" \\\n"
+                + "        $(EXTRA_INPUT)\n"
+                + "INPUT += src/added\n"
+                + "ALIASES = \"sideeffect=\\par Side Effects:\\n\"\n"
+                + "WARN_LOGFILE = doxygen.log\n", "UTF-8");
+
+        EnvVars env = new EnvVars("EXTRA_INPUT", "src/extra");
+        Map<String, List<String>> values = new DoxyfileReader("Doxyfile", env).invoke(parentFile, virtualChannel);
+
+        assertEquals(Arrays.asList("src/main", "src/with space", "src/extra", "src/added"), values.get("INPUT"));
+        assertEquals("sideeffect=\\par Side Effects:\\n", DoxyfileReader.getValue(values, "ALIASES"));
+        assertEquals("doxygen.log", DoxyfileReader.getValue(values, "WARN_LOGFILE"));
+        assertNull(DoxyfileReader.getValue(values, "HTML_OUTPUT"));
+    }
 }
@@ -0,0 +1,49 @@
+package hudson.plugins.doxygen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import hudson.plugins.doxygen.DoxygenArchiver.DoxygenArchiverDescriptor;
+
+import org.junit.Test;
+
+public class DoxygenDocSetTest {
+
+    @Test
+    public void namesArePartOfTheUrls() {
+        assertTrue(DoxygenDocSet.isValidName("api-1.2_internal"));
+        assertFalse(DoxygenDocSet.isValidName(""));
+        assertFalse(DoxygenDocSet.isValidName("../html"));
+        assertFalse(DoxygenDocSet.isValidName(".."));
+        assertFalse(DoxygenDocSet.isValidName("."));
+        assertFalse(DoxygenDocSet.isValidName(".hidden"));
+        assertTrue(DoxygenDocSet.isValidName("2.0"));
+        assertFalse(DoxygenDocSet.isValidName("a b"));
+        assertEquals("doxygen-api", DoxygenDocSet.getUrlName("api"));
+    }
+
+    @Test
+    public void htmlDirectoryReplacesTheDoxyfile() {
+        DoxygenDocSet docSet = new DoxygenDocSet(" api ", "Doxyfile");
+        assertEquals("api", docSet.getName());
+        assertEquals(DoxygenArchiverDescriptor.DOXYGEN_DOXYFILE_PUBLISHTYPE, docSet.getPublishType());
+        docSet.setHtmlDirectory(" ");
+        assertNull(docSet.getHtmlDirectory());
+        docSet.setHtmlDirectory("docs/html");
+        assertEquals(DoxygenArchiverDescriptor.DOXYGEN_HTMLDIRECTORY_PUBLISHTYPE, docSet.getPublishType());
+    }
+
+    @Test
+    public void archiverKeepsTheDocSets() {
+        DoxygenArchiver archiver = new DoxygenArchiver("Doxyfile", false, null, null);
+        assertTrue(archiver.getDocSets().isEmpty());
+        archiver.setDocSets(Arrays.asList(new DoxygenDocSet("api", "api/Doxyfile"), new DoxygenDocSet("internal", "Doxyfile")));
+        assertEquals(2, archiver.getDocSets().size());
+        archiver.setMaxParallelDocSets(-1);
+        assertEquals(0, archiver.getMaxParallelDocSets());
+    }
+}
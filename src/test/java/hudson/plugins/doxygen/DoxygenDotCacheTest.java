@@ -0,0 +1,113 @@
+package hudson.plugins.doxygen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DoxygenDotCacheTest {
+
+    private static final String VARIANT = "dot - graphviz version 2.43.0 (0)|png|";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File cache;
+    private File html;
+
+    @Before
+    public void renderGraphs() throws Exception {
+        cache = folder.newFolder("cache");
+        html = folder.newFolder("html");
+        render("class_app__inherit__graph", "0123456789abcdef0123456789abcdef");
+        render("sub/dir_a_graph", "fedcba9876543210fedcba9876543210");
+        Files.write(new File(html, "index.html").toPath(), "<html/>".getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void render(String name, String signature) throws Exception {
+        File base = new File(html, name);
+        base.getParentFile().mkdirs();
+        Files.write(new File(base.getPath() + ".md5").toPath(), signature.getBytes(StandardCharsets.US_ASCII));
+        Files.write(new File(base.getPath() + ".png").toPath(), ("image of " + name).getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(base.getPath() + ".map").toPath(), ("map of " + name).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private DoxygenDotCache.Stats store(String variant, long maxSize) throws Exception {
+        return new DoxygenDotCache.Store(cache.getPath(), "job/Doxyfile", variant, maxSize).invoke(html, null);
+    }
+
+    private DoxygenDotCache.Stats restore(String variant) throws Exception {
+        return new DoxygenDotCache.Restore(cache.getPath(), "job/Doxyfile", variant).invoke(html, null);
+    }
+
+    @Test
+    public void restoresTheGraphsOfTheLastRun() throws Exception {
+        DoxygenDotCache.Stats stored = store(VARIANT, 100);
+        assertEquals(2, stored.getAdded());
+        assertEquals(0, stored.getCached());
+
+        FileUtils.deleteDirectory(html);
+        assertEquals(2, restore(VARIANT).getRestored());
+
+        assertEquals("image of sub/dir_a_graph", new String(Files.readAllBytes(new File(html, "sub/dir_a_graph.png").toPath()), StandardCharsets.UTF_8));
+        assertEquals("fedcba9876543210fedcba9876543210", new String(Files.readAllBytes(new File(html, "sub/dir_a_graph.md5").toPath()), StandardCharsets.US_ASCII));
+        assertTrue(new File(html, "class_app__inherit__graph.map").isFile());
+
+        DoxygenDotCache.Stats reused = store(VARIANT, 100);
+        assertEquals(2, reused.getCached());
+        assertEquals(0, reused.getAdded());
+    }
+
+    @Test
+    public void keysTheGraphsByDotVersion() throws Exception {
+        store(VARIANT, 100);
+        FileUtils.deleteDirectory(html);
+
+        assertEquals(0, restore("dot - graphviz version 9.0.0|png|").getRestored());
+        assertFalse(new File(html, "class_app__inherit__graph.md5").exists());
+    }
+
+    @Test
+    public void neverOverwritesTheOutputOfDoxygen() throws Exception {
+        store(VARIANT, 100);
+        FileUtils.deleteDirectory(new File(html, "sub"));
+        render("class_app__inherit__graph", "11111111111111111111111111111111");
+
+        assertEquals(1, restore(VARIANT).getRestored());
+        assertTrue(new File(html, "sub/dir_a_graph.png").isFile());
+        assertEquals("11111111111111111111111111111111", new String(Files.readAllBytes(new File(html, "class_app__inherit__graph.md5").toPath()), StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void recordsTheSizeOfTheCache() throws Exception {
+        File objects = new File(cache, "objects");
+        assertEquals(FileUtils.sizeOfDirectory(objects), store(VARIANT, 100).getSize());
+
+        render("sub/dir_b_graph", "00000000000000000000000000000000");
+        assertEquals(FileUtils.sizeOfDirectory(objects), store(VARIANT, 100).getSize());
+        assertEquals(FileUtils.sizeOfDirectory(objects), DoxygenDotCache.readSize(new File(cache, "size").toPath()));
+
+        // scanned again when the size isn't recorded
+        assertTrue(new File(cache, "size").delete());
+        assertEquals(FileUtils.sizeOfDirectory(objects), store(VARIANT, 100).getSize());
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsedGraphs() throws Exception {
+        DoxygenDotCache.Stats stats = store(VARIANT, 0);
+
+        assertEquals(2, stats.getEvicted());
+        assertEquals(0, stats.getSize());
+        FileUtils.deleteDirectory(html);
+        assertEquals(0, restore(VARIANT).getRestored());
+    }
+}
@@ -0,0 +1,160 @@
+package hudson.plugins.doxygen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import hudson.FilePath;
+import hudson.model.AbstractProject;
+import hudson.model.Item;
+import hudson.util.FormValidation;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jmock.Expectations;
+import org.jmock.Mockery;
+import org.jmock.lib.legacy.ClassImposteriser;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.security.access.AccessDeniedException;
+
+public class DoxygenFileMaskCheckTest {
+
+    private final Mockery classContext = new Mockery() {
+        {
+            setImposteriser(ClassImposteriser.INSTANCE);
+        }
+    };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void clear() {
+        DoxygenFileMaskCheck.clear();
+    }
+
+    @Test
+    public void resultsAreMemoized() {
+        final AtomicInteger scans = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            FormValidation result = DoxygenFileMaskCheck.check("ws\nDoxyfile", () -> {
+                scans.incrementAndGet();
+                return FormValidation.error("no match");
+            });
+            assertEquals(FormValidation.Kind.ERROR, result.kind);
+        }
+        assertEquals(1, scans.get());
+
+        // another mask is checked on its own
+        DoxygenFileMaskCheck.check("ws\nother/Doxyfile", () -> {
+            scans.incrementAndGet();
+            return FormValidation.ok();
+        });
+        assertEquals(2, scans.get());
+    }
+
+    @Test
+    public void slowScansArePending() throws Exception {
+        final CountDownLatch done = new CountDownLatch(1);
+        FormValidation pending = DoxygenFileMaskCheck.check("ws\nDoxyfile", () -> {
+            done.await();
+            return FormValidation.error("no match");
+        });
+        assertEquals(FormValidation.Kind.OK, pending.kind);
+        assertTrue(pending.getMessage().contains("being checked"));
+
+        // the next check gets the result of the same scan
+        done.countDown();
+        FormValidation result = DoxygenFileMaskCheck.check("ws\nDoxyfile", () -> FormValidation.ok());
+        assertEquals(FormValidation.Kind.ERROR, result.kind);
+    }
+
+    @Test
+    public void theWorkspaceIsOnlyCheckedForWhoMayConfigureTheProject() throws Exception {
+        final AbstractProject<?, ?> project = classContext.mock(AbstractProject.class);
+        classContext.checking(new Expectations() {
+            {
+                oneOf(project).checkPermission(Item.CONFIGURE);
+                will(throwException(new AccessDeniedException("denied")));
+                never(project).getSomeWorkspace();
+            }
+        });
+        try {
+            new DoxygenArchiver.DoxygenArchiverDescriptor().doCheckDoxyfilePath(project, "Doxyfile");
+            fail("The workspace was checked without permission");
+        } catch (AccessDeniedException e) {
+            // expected
+        }
+        classContext.assertIsSatisfied();
+    }
+
+    @Test
+    public void missingWorkspaceIsValid() throws Exception {
+        final AbstractProject<?, ?> project = classContext.mock(AbstractProject.class);
+        classContext.checking(new Expectations() {
+            {
+                allowing(project).checkPermission(Item.CONFIGURE);
+                oneOf(project).getSomeWorkspace();
+                will(returnValue(null));
+                oneOf(project).getSomeWorkspace();
+                will(returnValue(new FilePath(new File("does-not-exist-" + System.nanoTime()))));
+            }
+        });
+        DoxygenArchiver.DoxygenArchiverDescriptor descriptor = new DoxygenArchiver.DoxygenArchiverDescriptor();
+        assertEquals(FormValidation.Kind.OK, descriptor.doCheckDoxyfilePath(project, "Doxyfile").kind);
+        assertEquals(FormValidation.Kind.OK, descriptor.doCheckDoxyfilePath(project, "Doxyfile").kind);
+        classContext.assertIsSatisfied();
+    }
+
+    @Test
+    public void emptyMaskIsValid() throws Exception {
+        final AbstractProject<?, ?> project = classContext.mock(AbstractProject.class);
+        classContext.checking(new Expectations() {
+            {
+                allowing(project).checkPermission(Item.CONFIGURE);
+                never(project).getSomeWorkspace();
+            }
+        });
+        assertEquals(FormValidation.Kind.OK, new DoxygenArchiver.DoxygenArchiverDescriptor().doCheckDoxyfilePath(project, " ").kind);
+        classContext.assertIsSatisfied();
+    }
+
+    @Test
+    public void scanReportsTheFirstUnmatchedPattern() throws Exception {
+        File workspace = folder.newFolder("ws");
+        new File(workspace, "src/lib").mkdirs();
+        new File(workspace, "src/lib/a.h").createNewFile();
+        new File(workspace, "Doxyfile").createNewFile();
+
+        assertNull(new DoxygenFileMaskCheck.Scan("Doxyfile, src/**/*.h, src/", 1000, 10000).invoke(workspace, null).unmatched);
+
+        DoxygenFileMaskCheck.Outcome outcome = new DoxygenFileMaskCheck.Scan("Doxyfile,docs/Doxyfile", 1000, 10000).invoke(workspace, null);
+        assertEquals("docs" + File.separator + "Doxyfile", outcome.unmatched);
+        assertTrue(outcome.complete);
+        assertEquals(FormValidation.Kind.ERROR, DoxygenFileMaskCheck.toFormValidation(outcome).kind);
+    }
+
+    @Test
+    public void scanStopsAtItsBoundAndDeadline() throws Exception {
+        File workspace = folder.newFolder("ws");
+        for (int i = 0; i < 10; i++) {
+            new File(workspace, "file" + i).createNewFile();
+        }
+
+        DoxygenFileMaskCheck.Outcome bounded = new DoxygenFileMaskCheck.Scan("Doxyfile", 3, 10000).invoke(workspace, null);
+        assertFalse(bounded.complete);
+        assertFalse(bounded.timedOut);
+        assertEquals(FormValidation.Kind.OK, DoxygenFileMaskCheck.toFormValidation(bounded).kind);
+
+        DoxygenFileMaskCheck.Outcome late = new DoxygenFileMaskCheck.Scan("Doxyfile", 1000, -1).invoke(workspace, null);
+        assertFalse(late.complete);
+        assertTrue(late.timedOut);
+    }
+}
@@ -0,0 +1,121 @@
+package hudson.plugins.doxygen;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import hudson.model.Result;
+import hudson.model.Run;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.jmock.Expectations;
+import org.jmock.Mockery;
+import org.jmock.lib.legacy.ClassImposteriser;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DoxygenFingerprintsTest {
+
+    private static final DoxygenWarnings.Category WARNING = DoxygenWarnings.Category.WARNING;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Mockery classContext = new Mockery() {
+        {
+            setImposteriser(ClassImposteriser.INSTANCE);
+        }
+    };
+
+    /**
+     * Mocks a completed build, with fingerprints or not.
+     */
+    private Run<?, ?> build(final String name, final Result result, final Run<?, ?> previous, boolean fingerprints) throws Exception {
+        return build(name, result, previous, fingerprints, false);
+    }
+
+    /**
+     * Mocks a completed build, with fingerprints or not, set to unstable by its new warnings or not.
+     */
+    private Run<?, ?> build(final String name, final Result result, final Run<?, ?> previous, boolean fingerprints,
+            boolean unstableByNewWarnings) throws Exception {
+        final DoxygenWarningsAction action = new DoxygenWarningsAction(2, 0, null, null, null, unstableByNewWarnings);
+        final File dir = folder.newFolder(name);
+        if (fingerprints) {
+            new File(dir, "doxygen").mkdirs();
+            DoxygenFingerprints.write(new File(dir, "doxygen/" + DoxygenFingerprints.FILE_NAME), new long[] {1, 2});
+        }
+        final Run<?, ?> run = classContext.mock(Run.class, name);
+        classContext.checking(new Expectations() {
+            {
+                allowing(run).getRootDir();
+                will(returnValue(dir));
+                allowing(run).getResult();
+                will(returnValue(result));
+                allowing(run).getPreviousCompletedBuild();
+                will(returnValue(previous));
+                allowing(run).getAction(DoxygenWarningsAction.class);
+                will(returnValue(action));
+            }
+        });
+        return run;
+    }
+
+    @Test
+    public void ignoresLineNumbersAndWorkspace() {
+        long fingerprint = DoxygenFingerprints.fingerprint(WARNING, "/agent1/ws/src/App.h", "argument 'x' of App::run (at line 12) is not found", "/agent1/ws");
+
+        assertEquals(fingerprint, DoxygenFingerprints.fingerprint(WARNING, "C:\\agent2\\ws\\src\\App.h", "argument 'x' of App::run (at line 40) is not found", "C:\\agent2\\ws"));
+        assertNotEquals(fingerprint, DoxygenFingerprints.fingerprint(WARNING, "/agent1/ws/src/Other.h", "argument 'x' of App::run (at line 12) is not found", "/agent1/ws"));
+        assertNotEquals(fingerprint, DoxygenFingerprints.fingerprint(DoxygenWarnings.Category.ERROR, "/agent1/ws/src/App.h", "argument 'x' of App::run (at line 12) is not found", "/agent1/ws"));
+    }
+
+    @Test
+    public void diffsSortedFingerprints() {
+        long[] reference = {-5, 1, 2, 2, 7, 9};
+        long[] current = {-5, 2, 2, 2, 3, 7};
+
+        DoxygenFingerprints.Diff diff = DoxygenFingerprints.diff(current, reference);
+
+        // new: the third 2 and 3, fixed: 1 and 9
+        assertEquals(2, diff.getNewWarnings());
+        assertEquals(2, diff.getFixedWarnings());
+    }
+
+    @Test
+    public void storesFingerprintsNextToTheWarnings() throws Exception {
+        File store = new File(folder.getRoot(), DoxygenWarnings.FILE_NAME);
+        DoxygenWarnings.Writer writer = new DoxygenWarnings.Writer(store, "/ws");
+        writer.add("/ws/b.h", 3, WARNING, "second");
+        writer.add("/ws/a.h", 1, WARNING, "first");
+        writer.close();
+
+        long[] expected = {
+                DoxygenFingerprints.fingerprint(WARNING, "a.h", "first", null),
+                DoxygenFingerprints.fingerprint(WARNING, "b.h", "second", null)
+        };
+        Arrays.sort(expected);
+        assertArrayEquals(expected, DoxygenFingerprints.read(new File(folder.getRoot(), DoxygenFingerprints.FILE_NAME)));
+    }
+
+    @Test
+    public void referenceIsTheLastSuccessfulOrUnstableBuildWithFingerprints() throws Exception {
+        Run<?, ?> first = build("first", Result.SUCCESS, null, true);
+        Run<?, ?> withoutDoxygen = build("withoutDoxygen", Result.SUCCESS, first, false);
+        // unstable because of its tests
+        Run<?, ?> unstable = build("unstable", Result.UNSTABLE, withoutDoxygen, true);
+        Run<?, ?> newWarnings = build("newWarnings", Result.UNSTABLE, unstable, true, true);
+        Run<?, ?> failed = build("failed", Result.FAILURE, newWarnings, true);
+        Run<?, ?> aborted = build("aborted", Result.ABORTED, failed, true);
+        Run<?, ?> current = build("current", Result.SUCCESS, aborted, true);
+
+        assertSame(unstable, DoxygenFingerprints.findReference(current));
+        assertSame(first, DoxygenFingerprints.findReference(unstable));
+        assertNull(DoxygenFingerprints.findReference(first));
+    }
+}
@@ -0,0 +1,118 @@
+package hudson.plugins.doxygen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import hudson.FilePath;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DoxygenInputsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File workspace;
+    private File cache;
+
+    @Before
+    public void createWorkspace() throws Exception {
+        workspace = folder.newFolder("ws");
+        cache = folder.newFolder("ws@tmp");
+        write("src/App.h", "class App;");
+        write("src/impl/App.cpp", "App::App() {}");
+        write("src/impl/generated/Parser.cpp", "");
+        write("src/notes.txt", "");
+        write("doc/layout.xml", "<layout/>");
+    }
+
+    private void write(String path, String content) throws Exception {
+        Path file = workspace.toPath().resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Map<String, List<String>> values(String... keysAndValues) {
+        Map<String, List<String>> values = new LinkedHashMap<String, List<String>>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            values.put(keysAndValues[i], new ArrayList<String>(Arrays.asList(keysAndValues[i + 1].split(" "))));
+        }
+        return values;
+    }
+
+    private String fingerprint(Map<String, List<String>> values, String version) throws Exception {
+        return new DoxygenInputs(values, version, cache.getAbsolutePath()).invoke(workspace, null);
+    }
+
+    @Test
+    public void selectsTheFilesLikeDoxygen() throws Exception {
+        Map<String, List<String>> values = values("INPUT", "src", "RECURSIVE", "YES", "EXCLUDE_PATTERNS", "*/generated/*", "LAYOUT_FILE", "doc/layout.xml");
+        Path base = workspace.toPath().toAbsolutePath();
+
+        Set<Path> files = new DoxygenInputs(values, "1.9.8", null).listFiles(base);
+
+        assertEquals(Arrays.asList(base.resolve("doc/layout.xml"), base.resolve("src/App.h"), base.resolve("src/impl/App.cpp")),
+                new ArrayList<Path>(files));
+        assertEquals(1, new DoxygenInputs(values("INPUT", "src"), "1.9.8", null).listFiles(base).size());
+    }
+
+    @Test
+    public void changesWithTheInputs() throws Exception {
+        Map<String, List<String>> values = values("INPUT", "src", "RECURSIVE", "YES");
+        String fingerprint = fingerprint(values, "1.9.8");
+
+        assertEquals(fingerprint, fingerprint(values, "1.9.8"));
+        assertEquals(fingerprint, fingerprint(values("INPUT", "src", "RECURSIVE", "YES", "NUM_PROC_THREADS", "16"), "1.9.8"));
+        assertNotEquals(fingerprint, fingerprint(values, "1.10.0"));
+        assertNotEquals(fingerprint, fingerprint(values("INPUT", "src", "RECURSIVE", "YES", "EXTRACT_ALL", "YES"), "1.9.8"));
+
+        write("src/notes.txt", "not an input");
+        assertEquals(fingerprint, fingerprint(values, "1.9.8"));
+        write("src/App.h", "class App {};");
+        assertNotEquals(fingerprint, fingerprint(values, "1.9.8"));
+    }
+
+    @Test
+    public void cachesTheHashesOfTheOldFiles() throws Exception {
+        File header = new File(workspace, "src/App.h");
+        assertTrue(header.setLastModified(System.currentTimeMillis() - 60000));
+        Map<String, List<String>> values = values("INPUT", "src/App.h");
+        String fingerprint = fingerprint(values, "1.9.8");
+        assertTrue(new File(cache, DoxygenInputs.CACHE_FILE_NAME).isFile());
+
+        // same size and modification time: the cached hash is used
+        long modified = header.lastModified();
+        write("src/App.h", "class Foo;");
+        assertTrue(header.setLastModified(modified));
+        assertEquals(fingerprint, fingerprint(values, "1.9.8"));
+
+        assertTrue(header.setLastModified(modified + 1000));
+        assertNotEquals(fingerprint, fingerprint(values, "1.9.8"));
+    }
+
+    @Test
+    public void keepsTheMarkerNextToTheHtmlOutput() throws Exception {
+        FilePath html = new FilePath(new File(workspace, "doc/html"));
+        FilePath marker = DoxygenInputs.getMarker(html);
+
+        // the marker isn't published with the output
+        assertEquals(new File(workspace, "doc/html.inputs"), new File(marker.getRemote()));
+        marker.write("fingerprint", "UTF-8");
+        assertEquals("fingerprint", marker.readToString());
+    }
+}
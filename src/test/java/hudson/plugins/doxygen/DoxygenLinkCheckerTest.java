@@ -0,0 +1,95 @@
+package hudson.plugins.doxygen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class DoxygenLinkCheckerTest {
+
+    private static void feed(DoxygenLinkChecker checker, String path, String content, int chunkSize) {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        for (int offset = 0; offset < bytes.length; offset += chunkSize) {
+            checker.feed(path, bytes, offset, Math.min(chunkSize, bytes.length - offset));
+        }
+        checker.add(path);
+    }
+
+    @Test
+    public void resolvesTheRelativeLinks() {
+        assertEquals("classA.html", DoxygenLinkChecker.resolve("index.html", "classA.html#details"));
+        assertEquals("search/all_0.js", DoxygenLinkChecker.resolve("search/all_0.html", "all_0.js?v=1"));
+        assertEquals("doxygen.css", DoxygenLinkChecker.resolve("d1/d2/dir.html", "../.././doxygen.css"));
+        assertEquals("a & b.html", DoxygenLinkChecker.resolve("index.html", "a%20&amp;%20b.html"));
+    }
+
+    @Test
+    public void ignoresTheLinksOutsideOfTheDocumentation() {
+        assertNull(DoxygenLinkChecker.resolve("index.html", "#details"));
+        assertNull(DoxygenLinkChecker.resolve("index.html", "https://www.doxygen.org/"));
+        assertNull(DoxygenLinkChecker.resolve("index.html", "mailto:dev@example.com"));
+        assertNull(DoxygenLinkChecker.resolve("index.html", "javascript:void(0)"));
+        assertNull(DoxygenLinkChecker.resolve("index.html", "/static/style.css"));
+        assertNull(DoxygenLinkChecker.resolve("index.html", "../outside.html"));
+    }
+
+    @Test
+    public void reportsTheBrokenLinksAndTheMissingAssets() {
+        DoxygenLinkChecker checker = new DoxygenLinkChecker();
+        feed(checker, "index.html", "<html><head><link HREF=\"doxygen.css\" rel=\"stylesheet\"/>"
+                + "<script type=\"text/javascript\" src='jquery.js'></script></head>"
+                + "<body><a class=\"el\" href=\"classA.html\">A</a> <a href=\"classB.html#details\">B</a>"
+                + "<img src=\"graph.png\"/> <a href=\"#top\">top</a> <a href=\"https://www.doxygen.org/\">doxygen</a>"
+                + "<p>data-href=\"notalink.html\" and href=&quot;escaped.html&quot;</p></body></html>", 7);
+        feed(checker, "classA.html", "<a href=\"index.html\">index</a>", 3);
+        checker.add("doxygen.css");
+        checker.add("jquery.js");
+
+        DoxygenLinkChecker.Report report = checker.getReport();
+        assertEquals(2, report.getPages());
+        assertEquals(6, report.getLinks());
+        assertEquals(1, report.getBrokenLinks());
+        assertEquals(1, report.getMissingAssets());
+        assertEquals(2, report.getBroken().size());
+        DoxygenLinksAction.BrokenLink link = report.getBroken().get(0);
+        assertEquals("index.html", link.getPage());
+        assertEquals("classB.html", link.getTarget());
+        assertFalse(link.isAsset());
+        DoxygenLinksAction.BrokenLink asset = report.getBroken().get(1);
+        assertEquals("graph.png", asset.getTarget());
+        assertTrue(asset.isAsset());
+    }
+
+    @Test
+    public void linksToFilesReceivedLaterResolve() {
+        DoxygenLinkChecker checker = new DoxygenLinkChecker();
+        feed(checker, "index.html", "<a href=\"d1/page.html\">page</a>", 1024);
+        feed(checker, "d1/page.html", "<a href=\"../index.html\">index</a>", 1024);
+        assertEquals(0, checker.getReport().getBrokenLinks());
+    }
+
+    @Test
+    public void keepsOnlyTheFirstBrokenLinks() {
+        DoxygenLinkChecker checker = new DoxygenLinkChecker();
+        StringBuilder page = new StringBuilder();
+        for (int i = 0; i < DoxygenLinkChecker.MAX_REPORTED + 10; i++) {
+            page.append("<a href=\"missing").append(i).append(".html\">x</a>\n");
+        }
+        feed(checker, "index.html", page.toString(), 4096);
+        DoxygenLinkChecker.Report report = checker.getReport();
+        assertEquals(DoxygenLinkChecker.MAX_REPORTED + 10, report.getBrokenLinks());
+        assertEquals(DoxygenLinkChecker.MAX_REPORTED, report.getBroken().size());
+        assertTrue(new DoxygenLinksAction(report).isTruncated());
+    }
+
+    @Test
+    public void scansOnlyThePages() {
+        DoxygenLinkChecker checker = new DoxygenLinkChecker();
+        feed(checker, "search/search.js", "var a = ' href=\"missing.html\"';", 1024);
+        assertEquals(0, checker.getReport().getLinks());
+    }
+}
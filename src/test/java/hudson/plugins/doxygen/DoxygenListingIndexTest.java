@@ -0,0 +1,216 @@
+package hudson.plugins.doxygen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import jenkins.util.VirtualFile;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DoxygenListingIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File html;
+
+    @Before
+    public void createDocumentation() throws Exception {
+        html = folder.newFolder("html");
+        write("index.html", "<html>index</html>");
+        write("annotated.html", "<html>classes</html>");
+        write("search/search.js", "var search;");
+    }
+
+    private void write(String name, String content) throws Exception {
+        File file = new File(html, name);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void treeIsOnlyBrowsedThroughItsIndexOnceIndexed() throws Exception {
+        assertNull(DoxygenListingIndex.browse(html));
+        assertEquals(3, DoxygenListingIndex.write(html));
+        assertTrue(new File(html, DoxygenListingIndex.FILE_NAME).isFile());
+
+        // files added afterwards aren't published
+        write("unpublished.html", "<html/>");
+
+        VirtualFile root = DoxygenListingIndex.browse(html);
+        VirtualFile[] children = root.list();
+        assertEquals(3, children.length);
+        assertEquals("annotated.html", children[0].getName());
+        assertEquals("index.html", children[1].getName());
+        assertEquals("search", children[2].getName());
+        assertTrue(children[2].isDirectory());
+        assertFalse(root.child("unpublished.html").exists());
+        assertFalse(root.child(DoxygenListingIndex.FILE_NAME).exists());
+
+        VirtualFile search = root.child("search").child("search.js");
+        assertTrue(search.isFile());
+        assertEquals(11, search.length());
+        assertEquals(new File(html, "search/search.js").lastModified(), search.lastModified());
+        try (InputStream in = search.open()) {
+            assertEquals("var search;", IOUtils.toString(in, StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void packedDocumentationLeavesTheIndexOut() throws Exception {
+        DoxygenListingIndex.write(html);
+        DoxygenPackedDocs.pack(html, null);
+        VirtualFile root = DoxygenPackedDocs.browse(html);
+        assertEquals(3, root.list().length);
+        assertFalse(root.child(DoxygenListingIndex.FILE_NAME).exists());
+    }
+
+    @Test
+    public void shardedTreeIsBrowsedWithTheLayoutOfTheDocumentation() throws Exception {
+        File sharded = folder.newFolder("sharded");
+        Map<String, long[]> files = new HashMap<String, long[]>();
+        for (String path : new String[] {"search/search.js", "index.html", "annotated.html"}) {
+            File file = new File(sharded, DoxygenListingIndex.shard(path));
+            file.getParentFile().mkdirs();
+            Files.copy(new File(html, path).toPath(), file.toPath());
+            files.put(path, new long[] {file.length(), file.lastModified()});
+        }
+        assertEquals(3, DoxygenListingIndex.write(sharded, files, true));
+        assertTrue(DoxygenListingIndex.isSharded(sharded));
+        assertFalse(DoxygenListingIndex.isSharded(html));
+
+        VirtualFile root = DoxygenListingIndex.browse(sharded);
+        VirtualFile[] children = root.list();
+        assertEquals(3, children.length);
+        assertEquals("annotated.html", children[0].getName());
+        assertEquals("index.html", children[1].getName());
+        assertEquals("search", children[2].getName());
+        try (InputStream in = root.child("search").child("search.js").open()) {
+            assertEquals("var search;", IOUtils.toString(in, StandardCharsets.UTF_8));
+        }
+
+        // packed with the layout of the documentation
+        DoxygenPackedDocs.pack(sharded, null);
+        root = DoxygenPackedDocs.browse(sharded);
+        try (InputStream in = root.child("index.html").open()) {
+            assertEquals("<html>index</html>", IOUtils.toString(in, StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void directoriesComeBeforeTheSiblingsTheyPrefix() throws Exception {
+        File sharded = folder.newFolder("sharded");
+        Map<String, long[]> files = new HashMap<String, long[]>();
+        files.put("a.html", new long[] {1, 0});
+        files.put("a/b.html", new long[] {1, 0});
+        files.put("a-b.html", new long[] {1, 0});
+        DoxygenListingIndex.write(sharded, files, true);
+        assertEquals(Arrays.asList("DXL1", "L\tsharded", "D\ta", "F\t1\t0\ta/b.html", "F\t1\t0\ta-b.html", "F\t1\t0\ta.html"),
+                Files.readAllLines(new File(sharded, DoxygenListingIndex.FILE_NAME).toPath()));
+    }
+
+    @Test
+    public void shardedTreeIsArchivedWithTheLayoutOfTheDocumentation() throws Exception {
+        File sharded = folder.newFolder("sharded");
+        Map<String, long[]> files = new HashMap<String, long[]>();
+        for (String path : new String[] {"search/search.js", "index.html"}) {
+            File file = new File(sharded, DoxygenListingIndex.shard(path));
+            file.getParentFile().mkdirs();
+            Files.copy(new File(html, path).toPath(), file.toPath());
+            file.setLastModified(1234000L);
+            files.put(path, new long[] {file.length(), file.lastModified()});
+        }
+        DoxygenListingIndex.write(sharded, files, true);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(2, DoxygenListingIndex.tar(sharded, out));
+        Map<String, String> entries = new HashMap<String, String>();
+        try (TarArchiveInputStream tar = new TarArchiveInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            TarArchiveEntry entry;
+            while ((entry = tar.getNextTarEntry()) != null) {
+                assertEquals(1234000L, entry.getModTime().getTime());
+                entries.put(entry.getName(), IOUtils.toString(tar, StandardCharsets.UTF_8));
+            }
+        }
+        assertEquals(2, entries.size());
+        assertEquals("<html>index</html>", entries.get("index.html"));
+        assertEquals("var search;", entries.get("search/search.js"));
+    }
+
+    @Test
+    public void loadedIndexesAreBoundedByTheirEntries() throws Exception {
+        DoxygenListingIndex.write(html);
+        File other = folder.newFolder("other");
+        Map<String, long[]> files = new HashMap<String, long[]>();
+        files.put("index.html", new long[] {1, 0});
+        DoxygenListingIndex.write(other, files, false);
+        // 3 files and 2 directories, then 1 file and the root
+        DoxygenListingIndex.Index first = new DoxygenListingIndex.Index(html, new File(html, DoxygenListingIndex.FILE_NAME));
+        DoxygenListingIndex.Index second = new DoxygenListingIndex.Index(other, new File(other, DoxygenListingIndex.FILE_NAME));
+
+        DoxygenListingIndex.Loaded loaded = new DoxygenListingIndex.Loaded(6);
+        loaded.put("first", first);
+        assertEquals(5, loaded.getEntries());
+        loaded.put("second", second);
+        // the least recently used index is dropped
+        assertEquals(1, loaded.size());
+        assertNull(loaded.get("first"));
+        assertEquals(2, loaded.getEntries());
+
+        // the index used last is kept even if it's larger than the bound
+        DoxygenListingIndex.Loaded small = new DoxygenListingIndex.Loaded(1);
+        small.put("first", first);
+        assertEquals(first, small.get("first"));
+    }
+
+    @Test
+    public void largeDirectoriesAreListedAPageAtATime() throws Exception {
+        File large = folder.newFolder("large");
+        Map<String, long[]> files = new HashMap<String, long[]>();
+        int total = 2 * DoxygenListingIndex.PAGE_SIZE + 10;
+        for (int i = 0; i < total; i++) {
+            files.put(String.format("file%05d.html", i), new long[] {i, 0});
+        }
+        files.put("search/search.js", new long[] {1, 0});
+        DoxygenListingIndex.write(large, files, false);
+        VirtualFile root = DoxygenListingIndex.browse(large);
+
+        DoxygenListingIndex.Page first = DoxygenListingIndex.getPage(root, 0);
+        assertEquals(total + 1, first.getTotal());
+        assertEquals(0, first.getStart());
+        assertEquals(DoxygenListingIndex.PAGE_SIZE, first.getEntries().size());
+        assertEquals("file00000.html", first.getEntries().get(0).getName());
+
+        // the start is rounded to a page
+        DoxygenListingIndex.Page last = DoxygenListingIndex.getPage(root, total + 5);
+        assertEquals(2 * DoxygenListingIndex.PAGE_SIZE, last.getStart());
+        assertEquals(total + 1, last.getEnd());
+        DoxygenListingIndex.Entry search = last.getEntries().get(last.getEntries().size() - 1);
+        assertEquals("search", search.getName());
+        assertTrue(search.isDirectory());
+        assertEquals("search/", search.getHref());
+        assertEquals(2 * DoxygenListingIndex.PAGE_SIZE + 9, last.getEntries().get(last.getEntries().size() - 2).getLength());
+
+        // the small directories are left to the directory browser
+        assertNull(DoxygenListingIndex.getPage(root.child("search"), 0));
+        assertNull(DoxygenListingIndex.getPage(VirtualFile.forFile(large), 0));
+    }
+}
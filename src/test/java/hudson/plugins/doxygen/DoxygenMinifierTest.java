@@ -0,0 +1,57 @@
+package hudson.plugins.doxygen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class DoxygenMinifierTest {
+
+    private static String minify(String path, String content) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DoxygenMinifier.MinifyingOutputStream minifier = DoxygenMinifier.wrap(path, out);
+        minifier.write(content.getBytes(StandardCharsets.UTF_8));
+        minifier.close();
+        assertEquals(content.getBytes(StandardCharsets.UTF_8).length, minifier.getReceived());
+        assertEquals(out.size(), minifier.getWritten());
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void removesTheIndentationOfThePages() throws Exception {
+        assertEquals("<div class=\"header\">\n<div class=\"title\">G\u00e9n\u00e9r\u00e9</div>\n</div>\n",
+                minify("index.html", "<div class=\"header\">\r\n\r\n  <div class=\"title\">G\u00e9n\u00e9r\u00e9</div>\r\n\t</div>\r\n"));
+    }
+
+    @Test
+    public void keepsTheCodeAndThePreformattedText() throws Exception {
+        String fragment = "<div class=\"fragment\"><div class=\"line\">    <span class=\"keyword\">int</span>  x;</div>\n</div>\n";
+        assertEquals(fragment, minify("a.html", fragment));
+        String pre = "<PRE class=\"x\">\n  indented\n\n  text\n</PRE>\n";
+        assertEquals(pre + "<p>\nafter</p>", minify("a.html", pre + "<p>\n   after</p>"));
+        String script = "<script type=\"text/javascript\">\n  var a = 1 < 2;\n</script>";
+        assertEquals(script, minify("a.html", script));
+    }
+
+    @Test
+    public void removesTheCommentsOfTheStyleSheets() throws Exception {
+        assertEquals("/*! license */\nbody {\ncolor: red; \n}\na::after { content: \"/* kept */\"; }\n",
+                minify("doxygen.css", "/*! license */\n/* The doxygen style */\nbody {\n    color: red; /* red */\n}\na::after { content: \"/* kept */\"; }\n"));
+    }
+
+    @Test
+    public void keepsTheStringsAndCommentsOfTheScripts() throws Exception {
+        assertEquals("// http://x\nvar a = 'x\\\n  y';\nvar b = `\n  z`;\nc = d / 2;",
+                minify("menu.js", "// http://x\n  var a = 'x\\\n  y';\n\n  var b = `\n  z`;\n  c = d / 2;"));
+    }
+
+    @Test
+    public void leavesTheOtherFilesAlone() {
+        assertNull(DoxygenMinifier.getType("graph.png"));
+        assertNull(DoxygenMinifier.getType("jquery.js"));
+        assertEquals(DoxygenMinifier.Type.JS, DoxygenMinifier.getType("search/all_0.js"));
+    }
+}
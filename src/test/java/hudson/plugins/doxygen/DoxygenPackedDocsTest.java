@@ -0,0 +1,133 @@
+package hudson.plugins.doxygen;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import hudson.util.StreamTaskListener;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import jenkins.util.VirtualFile;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DoxygenPackedDocsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File html;
+
+    @Before
+    public void createDocumentation() throws Exception {
+        html = new File(folder.newFolder("doxygen"), "html");
+        write("index.html", "<html>index</html>");
+        write("search/search.js", "var search;");
+        write("search/all_0.js", "var all;");
+    }
+
+    private void write(String name, String content) throws Exception {
+        File file = new File(html, name);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(VirtualFile file) throws Exception {
+        try (InputStream in = file.open()) {
+            return IOUtils.toString(in, StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    public void packReplacesTheDirectory() throws Exception {
+        assertEquals(37, DoxygenPackedDocs.pack(html, null));
+        assertFalse(html.exists());
+        assertTrue(DoxygenPackedDocs.getPack(html).isFile());
+        assertFalse(new File(html.getParentFile(), "html.zip.tmp").exists());
+        assertTrue(DoxygenPackedDocs.exists(html));
+    }
+
+    @Test
+    public void browsesThePack() throws Exception {
+        DoxygenPackedDocs.pack(html, new DoxygenPackedDocs.Throttle(0));
+        VirtualFile root = DoxygenPackedDocs.browse(html);
+        assertTrue(root.isDirectory());
+
+        VirtualFile[] children = root.list();
+        assertEquals(2, children.length);
+        assertEquals("index.html", children[0].getName());
+        assertEquals("search", children[1].getName());
+        assertTrue(children[1].isDirectory());
+
+        VirtualFile search = root.child("search").child("search.js");
+        assertTrue(search.isFile());
+        assertEquals(11, search.length());
+        assertEquals("var search;", read(search));
+        assertEquals("var all;", read(root.child("search/all_0.js")));
+        assertEquals("<html>index</html>", read(root.child("index.html")));
+        assertFalse(root.child("missing.html").exists());
+        assertArrayEquals(new VirtualFile[0], root.child("index.html").list());
+    }
+
+    @Test
+    public void browsesTheDirectoryUntilItIsPacked() throws Exception {
+        VirtualFile root = DoxygenPackedDocs.browse(html);
+        assertEquals("var all;", read(root.child("search").child("all_0.js")));
+    }
+
+    @Test
+    public void packIsReadOncePerVersion() throws Exception {
+        DoxygenPackedDocs.pack(html, null);
+        File pack = DoxygenPackedDocs.getPack(html);
+        DoxygenPackedDocs.Index index = DoxygenPackedDocs.load(pack);
+        assertSame(index, DoxygenPackedDocs.load(pack));
+
+        // the files are read from the pack kept open
+        VirtualFile root = DoxygenPackedDocs.browse(html);
+        try (InputStream first = root.child("index.html").open(); InputStream second = root.child("search/search.js").open()) {
+            assertEquals("<html>index</html>", IOUtils.toString(first, StandardCharsets.UTF_8));
+            assertEquals("var search;", IOUtils.toString(second, StandardCharsets.UTF_8));
+        }
+
+        pack.setLastModified(pack.lastModified() - 60000);
+        assertNotSame(index, DoxygenPackedDocs.load(pack));
+    }
+
+    @Test
+    public void listsTheNestedDirectories() throws Exception {
+        write("search/nested/deep.js", "var deep;");
+        DoxygenPackedDocs.pack(html, null);
+        VirtualFile search = DoxygenPackedDocs.browse(html).child("search");
+        VirtualFile[] children = search.list();
+        assertEquals(3, children.length);
+        assertEquals("all_0.js", children[0].getName());
+        assertEquals("nested", children[1].getName());
+        assertTrue(children[1].isDirectory());
+        assertEquals("search.js", children[2].getName());
+        assertEquals("var deep;", read(children[1].list()[0]));
+    }
+
+    @Test
+    public void compactionPacksTheDocSets() throws Exception {
+        File set = new File(html.getParentFile(), "sets/api/html");
+        set.mkdirs();
+        Files.write(new File(set, "index.html").toPath(), "api".getBytes(StandardCharsets.UTF_8));
+        long future = System.currentTimeMillis() + 60000;
+        assertTrue(DoxygenCompactionWork.compact(set, future, null, StreamTaskListener.fromStdout()));
+        assertEquals("api", read(DoxygenPackedDocs.browse(set).child("index.html")));
+        // too recent
+        assertFalse(DoxygenCompactionWork.compact(html, 0, null, StreamTaskListener.fromStdout()));
+        assertTrue(html.isDirectory());
+    }
+}
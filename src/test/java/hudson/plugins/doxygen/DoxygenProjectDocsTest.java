@@ -0,0 +1,114 @@
+package hudson.plugins.doxygen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DoxygenProjectDocsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File root;
+
+    @Before
+    public void createRoot() throws Exception {
+        root = folder.newFolder("doxygen");
+    }
+
+    private File publish(int number, String page) throws Exception {
+        File staged = DoxygenProjectDocs.stage(root, number);
+        Files.write(new File(staged, page).toPath(), page.getBytes(StandardCharsets.UTF_8));
+        return staged;
+    }
+
+    @Test
+    public void resolvesTheLegacyDirectoryUntilTheFirstSwap() throws Exception {
+        assertEquals(new File(root, "html"), DoxygenProjectDocs.resolve(root));
+
+        File staged = publish(3, "index.html");
+        // the staged documentation isn't visible yet
+        assertEquals(new File(root, "html"), DoxygenProjectDocs.resolve(root));
+
+        assertTrue(DoxygenProjectDocs.commit(root, 3));
+        assertEquals(staged, DoxygenProjectDocs.resolve(root));
+    }
+
+    @Test
+    public void newestBuildWins() throws Exception {
+        publish(4, "a.html");
+        publish(5, "b.html");
+        assertTrue(DoxygenProjectDocs.commit(root, 5));
+        assertFalse(DoxygenProjectDocs.commit(root, 4));
+        assertEquals(new File(root, "html.5"), DoxygenProjectDocs.resolve(root));
+    }
+
+    @Test
+    public void cleanupDeletesTheReplacedTrees() throws Exception {
+        new File(root, "html").mkdirs();
+        publish(1, "old.html");
+        DoxygenProjectDocs.commit(root, 1);
+        publish(2, "index.html");
+        publish(3, "staging.html");
+        DoxygenProjectDocs.commit(root, 2);
+
+        DoxygenProjectDocs.cleanup(root);
+        assertFalse(new File(root, "html").exists());
+        assertFalse(new File(root, "html.1").exists());
+        assertTrue(new File(root, "html.2/index.html").isFile());
+        assertTrue(new File(root, "html.3").isDirectory());
+        assertTrue(new File(root, DoxygenProjectDocs.POINTER).isFile());
+    }
+
+    @Test
+    public void cleanupKeepsTheTreesOfTheOlderBuildsStillWriting() throws Exception {
+        publish(4, "slow.html");
+        publish(5, "index.html");
+        DoxygenProjectDocs.commit(root, 5);
+
+        DoxygenProjectDocs.cleanup(root);
+        assertTrue(new File(root, "html.4/slow.html").isFile());
+
+        // it lost, and is deleted once complete
+        assertFalse(DoxygenProjectDocs.commit(root, 4));
+        DoxygenProjectDocs.cleanup(root);
+        assertFalse(new File(root, "html.4").exists());
+        assertFalse(new File(root, "html.4" + DoxygenProjectDocs.STAGING_SUFFIX).exists());
+    }
+
+    @Test
+    public void cleanupDeletesTheAbandonedTrees() throws Exception {
+        publish(4, "failed.html");
+        publish(5, "index.html");
+        DoxygenProjectDocs.commit(root, 5);
+        File marker = new File(root, "html.4" + DoxygenProjectDocs.STAGING_SUFFIX);
+        assertTrue(marker.setLastModified(System.currentTimeMillis() - (DoxygenProjectDocs.STAGING_TIMEOUT + 1) * 3600 * 1000));
+
+        DoxygenProjectDocs.cleanup(root);
+        assertFalse(new File(root, "html.4").exists());
+        assertFalse(marker.exists());
+    }
+
+    @Test
+    public void discardDeletesTheStagedTree() throws Exception {
+        publish(6, "partial.html");
+        DoxygenProjectDocs.discard(root, 6);
+        assertFalse(new File(root, "html.6").exists());
+        assertFalse(new File(root, "html.6" + DoxygenProjectDocs.STAGING_SUFFIX).exists());
+    }
+
+    @Test
+    public void ignoresAnInvalidPointer() throws Exception {
+        Files.write(new File(root, DoxygenProjectDocs.POINTER).toPath(), "../../secrets".getBytes(StandardCharsets.UTF_8));
+        assertEquals(new File(root, "html"), DoxygenProjectDocs.resolve(root));
+    }
+}
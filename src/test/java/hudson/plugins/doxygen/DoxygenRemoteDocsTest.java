@@ -0,0 +1,95 @@
+package hudson.plugins.doxygen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class DoxygenRemoteDocsTest {
+
+    @Test
+    public void resolvesTheLinksOfAPage() {
+        assertEquals("doxygen.css", DoxygenRemoteDocs.resolve("index.html", "doxygen.css"));
+        assertEquals("search/search.js", DoxygenRemoteDocs.resolve("index.html", "./search/search.js"));
+        assertEquals("doxygen.css", DoxygenRemoteDocs.resolve("search/all_0.html", "../doxygen.css"));
+        assertNull(DoxygenRemoteDocs.resolve("index.html", "../../secrets"));
+    }
+
+    @Test
+    public void cacheEvictsTheLeastRecentlyUsedFiles() {
+        DoxygenRemoteDocs.Cache cache = new DoxygenRemoteDocs.Cache(100, 3);
+        cache.put("a", new byte[10]);
+        cache.put("b", new byte[10]);
+        cache.put("c", new byte[10]);
+        cache.get("a");
+        cache.put("d", new byte[10]);
+        assertEquals(3, cache.size());
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+    }
+
+    @Test
+    public void cacheIsBoundedInSize() {
+        DoxygenRemoteDocs.Cache cache = new DoxygenRemoteDocs.Cache(100, 100);
+        for (int i = 0; i < 8; i++) {
+            cache.put("f" + i, new byte[12]);
+        }
+        // 96 bytes
+        assertEquals(8, cache.size());
+        cache.get("f0");
+
+        // 108 bytes, the least recently used file is evicted
+        cache.put("f8", new byte[12]);
+        assertEquals(8, cache.size());
+        assertNull(cache.get("f1"));
+        assertNotNull(cache.get("f0"));
+        assertNotNull(cache.get("f8"));
+
+        // a file too large isn't kept, the next ones evict one file each
+        cache.put("large", new byte[12 + 12]);
+        assertNull(cache.get("large"));
+        cache.put("f9", new byte[12]);
+        cache.put("f10", new byte[12]);
+        assertEquals(8, cache.size());
+        assertNull(cache.get("f2"));
+        assertNull(cache.get("f3"));
+    }
+
+    @Test
+    public void loadedManifestsAreBoundedByTheirEntries() {
+        // 2 files in 2 directories
+        DoxygenRemoteDocs.Listing first = new DoxygenRemoteDocs.Listing();
+        first.add("index.html", 10, 0);
+        first.add("search/search.js", 10, 0);
+        DoxygenRemoteDocs.Listing second = new DoxygenRemoteDocs.Listing();
+        second.add("index.html", 10, 0);
+
+        DoxygenRemoteDocs.Loaded loaded = new DoxygenRemoteDocs.Loaded(5);
+        loaded.put("first", first);
+        assertEquals(4, loaded.getEntries());
+        loaded.put("second", second);
+        // the least recently used manifest is dropped
+        assertEquals(1, loaded.size());
+        assertNull(loaded.get("first"));
+        assertEquals(2, loaded.getEntries());
+
+        // the manifest used last is kept even if it's larger than the bound
+        DoxygenRemoteDocs.Loaded small = new DoxygenRemoteDocs.Loaded(1);
+        small.put("first", first);
+        assertNotNull(small.get("first"));
+    }
+
+    @Test
+    public void cacheSkipsTheLargeFiles() {
+        DoxygenRemoteDocs.Cache cache = new DoxygenRemoteDocs.Cache(80, 10);
+        cache.put("small", new byte[10]);
+        cache.put("large", new byte[11]);
+        assertNotNull(cache.get("small"));
+        assertNull(cache.get("large"));
+        assertTrue(cache.isCacheable(10));
+        assertFalse(cache.isCacheable(11));
+    }
+}
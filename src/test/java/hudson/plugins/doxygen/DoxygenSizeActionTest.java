@@ -0,0 +1,98 @@
+package hudson.plugins.doxygen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import hudson.model.Result;
+import hudson.model.Run;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jmock.Expectations;
+import org.jmock.Mockery;
+import org.jmock.lib.legacy.ClassImposteriser;
+import org.junit.Test;
+
+public class DoxygenSizeActionTest {
+
+    private final Mockery classContext = new Mockery() {
+        {
+            setImposteriser(ClassImposteriser.INSTANCE);
+        }
+    };
+
+    /**
+     * Mocks a completed build, which recorded the given size.
+     */
+    private Run<?, ?> build(String name, final Result result, final Run<?, ?> previous, final DoxygenSizeAction size) {
+        final Run<?, ?> run = classContext.mock(Run.class, name);
+        classContext.checking(new Expectations() {
+            {
+                allowing(run).getResult();
+                will(returnValue(result));
+                allowing(run).getPreviousCompletedBuild();
+                will(returnValue(previous));
+                allowing(run).getAction(DoxygenSizeAction.class);
+                will(returnValue(size));
+            }
+        });
+        return run;
+    }
+
+    @Test
+    public void summarizesTheLargestDirectories() {
+        Map<String, Long> sizes = new HashMap<String, Long>();
+        sizes.put("index.html", 10L);
+        sizes.put("classes.html", 20L);
+        sizes.put("search/all_0.html", 5L);
+        sizes.put("search/search.js", 50L);
+        sizes.put("d1/d2/graph.png", 100L);
+        DoxygenSizeAction size = DoxygenSizeAction.summarize(sizes);
+        assertEquals(185, size.getBytes());
+        assertEquals(5, size.getFiles());
+        assertEquals(Arrays.asList("d1", "search", DoxygenSizeAction.ROOT), new ArrayList<String>(size.getDirectories().keySet()));
+        assertEquals(Long.valueOf(30), size.getDirectories().get(DoxygenSizeAction.ROOT));
+    }
+
+    @Test
+    public void keepsOnlyTheLargestDirectories() {
+        Map<String, Long> sizes = new HashMap<String, Long>();
+        for (int i = 0; i < 2 * DoxygenSizeAction.MAX_DIRECTORIES; i++) {
+            sizes.put("d" + i + "/file.html", (long) i);
+        }
+        DoxygenSizeAction size = DoxygenSizeAction.summarize(sizes);
+        assertEquals(DoxygenSizeAction.MAX_DIRECTORIES, size.getDirectories().size());
+        assertEquals("d" + (2 * DoxygenSizeAction.MAX_DIRECTORIES - 1), size.getDirectories().keySet().iterator().next());
+    }
+
+    @Test
+    public void growthIsRelativeToTheReference() {
+        DoxygenSizeAction reference = new DoxygenSizeAction(200, 2, new HashMap<String, Long>());
+        assertEquals(50.0, new DoxygenSizeAction(300, 3, new HashMap<String, Long>()).getGrowth(reference), 0.001);
+        assertEquals(-25.0, new DoxygenSizeAction(150, 3, new HashMap<String, Long>()).getGrowth(reference), 0.001);
+    }
+
+    @Test
+    public void referenceIsTheLastSuccessfulOrUnstableBuildWithASize() {
+        DoxygenSizeAction size = new DoxygenSizeAction(200, 2, new HashMap<String, Long>());
+        Run<?, ?> first = build("first", Result.SUCCESS, null, size);
+        Run<?, ?> withoutSize = build("withoutSize", Result.SUCCESS, first, null);
+        // unstable because of its tests
+        DoxygenSizeAction unstableSize = new DoxygenSizeAction(210, 2, new HashMap<String, Long>());
+        Run<?, ?> unstable = build("unstable", Result.UNSTABLE, withoutSize, unstableSize);
+        // made unstable by the growth of its documentation
+        DoxygenSizeAction grownSize = new DoxygenSizeAction(400, 4, new HashMap<String, Long>());
+        grownSize.setExceededMaxGrowth(true);
+        Run<?, ?> grown = build("grown", Result.UNSTABLE, unstable, grownSize);
+        Run<?, ?> failed = build("failed", Result.FAILURE, grown, new DoxygenSizeAction(100, 1, new HashMap<String, Long>()));
+        Run<?, ?> current = build("current", Result.SUCCESS, failed, null);
+
+        assertSame(unstableSize, DoxygenSizeAction.getReference(current));
+        assertSame(size, DoxygenSizeAction.getReference(unstable));
+        assertNull(DoxygenSizeAction.getReference(first));
+    }
+}
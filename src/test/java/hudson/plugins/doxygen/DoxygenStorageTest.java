@@ -0,0 +1,114 @@
+package hudson.plugins.doxygen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import hudson.FilePath;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.util.StreamTaskListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+
+import jenkins.util.VirtualFile;
+
+import org.apache.commons.io.IOUtils;
+import org.jmock.Expectations;
+import org.jmock.Mockery;
+import org.jmock.lib.legacy.ClassImposteriser;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DoxygenStorageTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Mockery classContext = new Mockery() {
+        {
+            setImposteriser(ClassImposteriser.INSTANCE);
+        }
+    };
+
+    @After
+    public void clearLocalDirectory() {
+        System.clearProperty(DoxygenStorage.LOCAL_DIRECTORY);
+    }
+
+    private void write(File dir, String name, String content) throws Exception {
+        File file = new File(dir, name);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void documentationIsStoredAndBrowsedThroughTheLocalDirectory() throws Exception {
+        File root = folder.newFolder("storage");
+        System.setProperty(DoxygenStorage.LOCAL_DIRECTORY, root.getPath());
+        File html = folder.newFolder("html");
+        write(html, "index.html", "<html>index</html>");
+        write(html, "search/search.js", "var search;");
+
+        final File buildDir = folder.newFolder("12");
+        final Job<?, ?> job = classContext.mock(Job.class);
+        final Run<?, ?> build = classContext.mock(Run.class);
+        classContext.checking(new Expectations() {
+            {
+                allowing(job).getFullName();
+                will(returnValue("folder/app"));
+                allowing(build).getParent();
+                will(returnValue(job));
+                allowing(build).getNumber();
+                will(returnValue(12));
+                allowing(build).getRootDir();
+                will(returnValue(buildDir));
+            }
+        });
+
+        assertFalse(DoxygenStorage.isStored(buildDir));
+        DoxygenStorage storage = DoxygenStorage.get();
+        assertTrue(storage instanceof DoxygenStorage.LocalDirectory);
+        Map<String, Long> files = storage.publish(build, new FilePath(html), null, StreamTaskListener.fromStdout());
+        assertEquals(2, files.size());
+        assertEquals(Long.valueOf(11), files.get("search/search.js"));
+        assertTrue(new File(root, "folder/app/12/index.html").isFile());
+        assertTrue(DoxygenStorage.isStored(buildDir));
+        assertTrue(DoxygenArchiver.isOffloaded(buildDir));
+
+        VirtualFile stored = DoxygenStorage.browseStored(build);
+        assertTrue(stored.child("search").isDirectory());
+        try (InputStream in = stored.child("search/search.js").open()) {
+            assertEquals("var search;", IOUtils.toString(in, StandardCharsets.UTF_8));
+        }
+
+        // the local directory isn't configured anymore
+        System.clearProperty(DoxygenStorage.LOCAL_DIRECTORY);
+        try {
+            DoxygenStorage.browseStored(build);
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("isn't configured anymore"));
+        }
+    }
+
+    @Test
+    public void localDirectoryStoresTheBuildsByJob() throws Exception {
+        File root = folder.newFolder("storage");
+        DoxygenStorage.LocalDirectory storage = new DoxygenStorage.LocalDirectory(root);
+        assertEquals(new File(root, "folder/job/12"), storage.getDir("folder/job", 12));
+    }
+
+    @Test(expected = IOException.class)
+    public void unknownStorageIsRejected() throws Exception {
+        DoxygenStorage.get("unknown");
+    }
+}
@@ -0,0 +1,135 @@
+package hudson.plugins.doxygen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import hudson.FilePath;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DoxygenStreamingPublisherTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File html;
+    private File target;
+
+    @Before
+    public void createDirectories() throws Exception {
+        html = folder.newFolder("html");
+        target = new File(folder.newFolder("build"), "doxygen/html");
+    }
+
+    private File write(String name, String content, long age) throws Exception {
+        File file = new File(html, name);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        file.setLastModified(System.currentTimeMillis() - age);
+        return file;
+    }
+
+    private static String read(File file) throws Exception {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void publishesTheSettledFilesInBatches() throws Exception {
+        write("index.html", "index", 60000);
+        write("search/search.js", "search", 60000);
+        write("annotated.html", "being written", 0);
+
+        DoxygenStreamingPublisher publisher = new DoxygenStreamingPublisher(new FilePath(html), target);
+        publisher.start();
+        assertEquals(2, publisher.publishBatch());
+        // nothing was written since the previous batch
+        assertEquals(0, publisher.publishBatch());
+        assertFalse(target.exists());
+
+        write("annotated.html", "annotated", 0);
+        assertEquals(1, publisher.commit());
+        assertEquals(3, publisher.getTransferred());
+        assertEquals("index", read(new File(target, "index.html")));
+        assertEquals("search", read(new File(target, "search/search.js")));
+        assertEquals("annotated", read(new File(target, "annotated.html")));
+        assertFalse(new File(target.getParentFile(), "html.staging").exists());
+    }
+
+    @Test
+    public void dropsTheFilesDeletedAfterTheirBatch() throws Exception {
+        write("index.html", "index", 60000);
+        File graph = write("graph/inherit_graph_0.dot", "digraph {}", 60000);
+        write("graph/inherit_graph_0.png", "png", 60000);
+        File temporary = write("tmp/doxygen_objdb.tmp", "temporary", 60000);
+
+        DoxygenStreamingPublisher publisher = new DoxygenStreamingPublisher(new FilePath(html), target);
+        publisher.start();
+        assertEquals(4, publisher.publishBatch());
+
+        // removed by doxygen before it ended, like the dot files with DOT_CLEANUP
+        assertTrue(graph.delete());
+        assertTrue(temporary.delete());
+        assertTrue(temporary.getParentFile().delete());
+        publisher.commit();
+        assertTrue(new File(target, "index.html").isFile());
+        assertTrue(new File(target, "graph/inherit_graph_0.png").isFile());
+        assertFalse(new File(target, "graph/inherit_graph_0.dot").exists());
+        assertFalse(new File(target, "tmp").exists());
+    }
+
+    @Test
+    public void replacesThePublishedDocumentation() throws Exception {
+        target.mkdirs();
+        Files.write(new File(target, "stale.html").toPath(), "stale".getBytes(StandardCharsets.UTF_8));
+        write("index.html", "index", 60000);
+
+        DoxygenStreamingPublisher publisher = new DoxygenStreamingPublisher(new FilePath(html), target);
+        publisher.start();
+        assertEquals(1, publisher.commit());
+        assertTrue(new File(target, "index.html").isFile());
+        assertFalse(new File(target, "stale.html").exists());
+    }
+
+    @Test
+    public void abortDropsTheStagedFiles() throws Exception {
+        write("index.html", "index", 60000);
+
+        DoxygenStreamingPublisher publisher = new DoxygenStreamingPublisher(new FilePath(html), target);
+        publisher.start();
+        publisher.publishBatch();
+        publisher.abort();
+        assertFalse(new File(target.getParentFile(), "html.staging").exists());
+        assertFalse(target.exists());
+    }
+
+    @Test
+    public void publishesTheProjectDocumentationThroughItsStagingArea() throws Exception {
+        File root = folder.newFolder("project");
+        write("index.html", "index", 60000);
+
+        DoxygenStreamingPublisher publisher = new DoxygenStreamingPublisher(new FilePath(html), root, 2);
+        publisher.start();
+        publisher.publishBatch();
+        // the readers still see the previous documentation
+        assertEquals(new File(root, DoxygenProjectDocs.LEGACY_DIRECTORY), DoxygenProjectDocs.resolve(root));
+        publisher.commit();
+        assertTrue(publisher.isPublished());
+        assertEquals(DoxygenProjectDocs.getTree(root, 2), DoxygenProjectDocs.resolve(root));
+        assertEquals("index", read(new File(DoxygenProjectDocs.resolve(root), "index.html")));
+
+        // an older build doesn't replace it
+        DoxygenStreamingPublisher older = new DoxygenStreamingPublisher(new FilePath(html), root, 1);
+        older.start();
+        older.commit();
+        assertFalse(older.isPublished());
+        assertEquals(DoxygenProjectDocs.getTree(root, 2), DoxygenProjectDocs.resolve(root));
+    }
+}
@@ -0,0 +1,89 @@
+package hudson.plugins.doxygen;
+
+import static org.junit.Assert.assertEquals;
+
+import hudson.FilePath;
+import hudson.model.AbstractProject;
+import hudson.model.Descriptor;
+import hudson.model.Run;
+import hudson.model.Saveable;
+import hudson.tasks.Publisher;
+import hudson.util.DescribableList;
+import hudson.util.StreamTaskListener;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jmock.Expectations;
+import org.jmock.Mockery;
+import org.jmock.lib.legacy.ClassImposteriser;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DoxygenTagFilesTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Mockery classContext = new Mockery() {
+        {
+            setImposteriser(ClassImposteriser.INSTANCE);
+        }
+    };
+
+    /**
+     * Mocks an upstream project publishing its documentation, and its build which archived a tag file.
+     */
+    private Run<?, ?> upstream(Map<AbstractProject<?, ?>, Run<?, ?>> upstreams, final String name, boolean keepAll) throws Exception {
+        final DescribableList<Publisher, Descriptor<Publisher>> publishers = new DescribableList<Publisher, Descriptor<Publisher>>(Saveable.NOOP);
+        publishers.add(new DoxygenArchiver("Doxyfile", keepAll, null, null));
+        final File buildDir = folder.newFolder(name);
+        File tags = new File(buildDir, "doxygen/tags");
+        tags.mkdirs();
+        Files.write(new File(tags, name + ".tag").toPath(), "<tagfile/>".getBytes(StandardCharsets.UTF_8));
+
+        final AbstractProject<?, ?> project = classContext.mock(AbstractProject.class, name);
+        final Run<?, ?> run = classContext.mock(Run.class, name + "Build");
+        classContext.checking(new Expectations() {
+            {
+                allowing(project).getPublishersList();
+                will(returnValue(publishers));
+                allowing(project).getUrl();
+                will(returnValue("job/" + name + "/"));
+                allowing(project).getFullName();
+                will(returnValue(name));
+                allowing(run).getUrl();
+                will(returnValue("job/" + name + "/42/"));
+                allowing(run).getRootDir();
+                will(returnValue(buildDir));
+                allowing(run).getFullDisplayName();
+                will(returnValue(name + " #42"));
+            }
+        });
+        upstreams.put(project, run);
+        return run;
+    }
+
+    @Test
+    public void locationsAreAbsoluteForBothRetentions() throws Exception {
+        Map<AbstractProject<?, ?>, Run<?, ?>> upstreams = new LinkedHashMap<AbstractProject<?, ?>, Run<?, ?>>();
+        // the documentation of each build
+        upstream(upstreams, "core", true);
+        // the documentation of the project only
+        upstream(upstreams, "util", false);
+        File workspace = folder.newFolder("tags");
+
+        List<String> tagFiles = DoxygenTagFiles.fetch(upstreams, "/jenkins/", new FilePath(workspace), StreamTaskListener.fromStdout());
+
+        assertEquals(Arrays.asList(
+                new File(workspace, "core/core.tag").getPath() + "=/jenkins/job/core/42/doxygen/",
+                new File(workspace, "util/util.tag").getPath() + "=/jenkins/job/util/doxygen/"), tagFiles);
+        assertEquals("<tagfile/>", new String(Files.readAllBytes(new File(workspace, "core/core.tag").toPath()), StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,57 @@
+package hudson.plugins.doxygen;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class DoxygenTimingsTest {
+
+    private static final byte[] NOTE = new byte[0];
+
+    @Test
+    public void splitsTheRunInPhases() throws Exception {
+        DoxygenTimings timings = new DoxygenTimings();
+        DoxygenConsoleParser parser = new DoxygenConsoleParser(new ByteArrayOutputStream(), StandardCharsets.UTF_8, null, NOTE, NOTE);
+        parser.setTimings(timings);
+        parser.write(("0.000 sec: Searching for include files...\n"
+                + "0.120 sec: Parsing files\n"
+                + "src/App.h:3: warning: 12.000 sec: not a progress message\n"
+                + "4.500 sec: Building class list...\n"
+                + "5.000 sec: Computing class inheritance relations...\n"
+                + "6.000 sec: Sorting lists...\n"
+                + "6.250 sec: Generating class documentation...\n"
+                + "9.250 sec: Generating dot graphs using 8 parallel threads...\n"
+                + "20.000 sec: Generating search indices...\n"
+                + "21.000 sec: finished...\n").getBytes(StandardCharsets.UTF_8));
+        parser.close();
+
+        Map<DoxygenTimings.Phase, Long> durations = timings.getDurations();
+        assertEquals(4500, (long) durations.get(DoxygenTimings.Phase.PARSING));
+        assertEquals(1500, (long) durations.get(DoxygenTimings.Phase.CLASS_GRAPH));
+        assertEquals(250, (long) durations.get(DoxygenTimings.Phase.OTHER));
+        assertEquals(10750, (long) durations.get(DoxygenTimings.Phase.DOT));
+        assertEquals(4000, (long) durations.get(DoxygenTimings.Phase.HTML));
+        assertEquals(21000, timings.getTotal());
+    }
+
+    @Test
+    public void addsTheTimingsOfSeveralProcesses() {
+        DoxygenTimings first = new DoxygenTimings();
+        first.parse("1.000 sec: Parsing files");
+        first.parse("3.000 sec: Generating file documentation...");
+        DoxygenTimings second = new DoxygenTimings();
+        second.parse("0.500 sec: Parsing files");
+        second.parse("1.000 sec: Running dot...");
+
+        DoxygenTimings total = new DoxygenTimings();
+        total.add(first);
+        total.add(second);
+
+        assertEquals(2500, (long) total.getDurations().get(DoxygenTimings.Phase.PARSING));
+        assertEquals(0, (long) total.getDurations().get(DoxygenTimings.Phase.DOT));
+    }
+}
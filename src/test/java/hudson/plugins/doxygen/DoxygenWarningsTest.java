@@ -0,0 +1,114 @@
+package hudson.plugins.doxygen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DoxygenWarningsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File write(int count) throws Exception {
+        File store = new File(folder.getRoot(), "doxygen/" + DoxygenWarnings.FILE_NAME);
+        DoxygenWarnings.Writer writer = new DoxygenWarnings.Writer(store);
+        for (int i = 0; i < count; i++) {
+            DoxygenWarnings.Category category = i % 10 == 0 ? DoxygenWarnings.Category.ERROR : DoxygenWarnings.Category.WARNING;
+            writer.add("src/file" + (i % 7) + ".h", i + 1, category, "message " + i);
+        }
+        writer.close();
+        return store;
+    }
+
+    @Test
+    public void readsPagesAcrossCheckpoints() throws Exception {
+        File store = write(1000);
+
+        DoxygenWarnings.Page page = DoxygenWarnings.read(store, 600, 50, null);
+
+        assertEquals(1000, page.getTotal());
+        assertEquals(50, page.getWarnings().size());
+        DoxygenWarnings.Warning first = page.getWarnings().get(0);
+        assertEquals("src/file" + (600 % 7) + ".h", first.getFile());
+        assertEquals(601, first.getLine());
+        assertEquals("message 600", first.getMessage());
+        assertEquals("message 649", page.getWarnings().get(49).getMessage());
+    }
+
+    @Test
+    public void readsTheLastPartialPage() throws Exception {
+        File store = write(300);
+
+        assertEquals(20, DoxygenWarnings.read(store, 280, 50, null).getWarnings().size());
+        assertTrue(DoxygenWarnings.read(store, 300, 50, null).getWarnings().isEmpty());
+    }
+
+    @Test
+    public void filtersFromTheFile() throws Exception {
+        File store = write(1000);
+
+        DoxygenWarnings.Filter filter = new DoxygenWarnings.Filter("FILE3", DoxygenWarnings.Category.ERROR, null);
+        DoxygenWarnings.Page page = DoxygenWarnings.read(store, 2, 5, filter);
+
+        // errors are every 10th message, file3 every 7th: i = 10, 80, 150, ...
+        assertEquals(15, page.getTotal());
+        assertEquals(5, page.getWarnings().size());
+        assertEquals("message 150", page.getWarnings().get(0).getMessage());
+    }
+
+    @Test
+    public void visitsTheWarningsInOrder() throws Exception {
+        File store = write(1000);
+
+        final List<String> messages = new ArrayList<String>();
+        assertEquals(1000, DoxygenWarnings.visit(store, null, warning -> messages.add(warning.getMessage())));
+        assertEquals("message 0", messages.get(0));
+        assertEquals("message 999", messages.get(999));
+
+        messages.clear();
+        DoxygenWarnings.Filter filter = new DoxygenWarnings.Filter("FILE3", DoxygenWarnings.Category.ERROR, null);
+        assertEquals(15, DoxygenWarnings.visit(store, filter, warning -> messages.add(warning.getMessage())));
+        assertEquals("message 10", messages.get(0));
+
+        assertEquals(0, DoxygenWarnings.visit(new File(folder.getRoot(), "missing"), null, warning -> messages.add(warning.getMessage())));
+    }
+
+    @Test
+    public void ignoresMissingOrIncompleteStores() throws Exception {
+        assertEquals(0, DoxygenWarnings.read(new File(folder.getRoot(), "missing"), 0, 10, null).getTotal());
+
+        File store = new File(folder.getRoot(), DoxygenWarnings.FILE_NAME);
+        DoxygenWarnings.Writer writer = new DoxygenWarnings.Writer(store);
+        for (int i = 0; i < 10; i++) {
+            writer.add(null, 0, DoxygenWarnings.Category.WARNING, "a message long enough to fill the footer");
+        }
+        writer.add(null, 0, DoxygenWarnings.Category.WARNING, "not closed yet");
+        assertEquals(0, DoxygenWarnings.read(store, 0, 10, null).getTotal());
+        writer.close();
+        assertEquals(11, DoxygenWarnings.read(store, 0, 10, null).getTotal());
+    }
+
+    @Test
+    public void filtersByDoxyfile() throws Exception {
+        File store = new File(folder.getRoot(), DoxygenWarnings.FILE_NAME);
+        DoxygenWarnings.Writer writer = new DoxygenWarnings.Writer(store);
+        writer.add("core/Doxyfile", "core/App.h", 1, DoxygenWarnings.Category.WARNING, "first");
+        writer.add("ui/Doxyfile", "ui/Window.h", 2, DoxygenWarnings.Category.WARNING, "second");
+        writer.add(null, 3, DoxygenWarnings.Category.ERROR, "unknown source");
+        writer.close();
+
+        DoxygenWarnings.Page page = DoxygenWarnings.read(store, 0, 10, new DoxygenWarnings.Filter(null, null, null).fromSource("core/Doxyfile"));
+
+        assertEquals(2, page.getTotal());
+        assertEquals("core/Doxyfile", page.getWarnings().get(0).getSource());
+        assertEquals("core/App.h", page.getWarnings().get(0).getFile());
+        assertEquals("unknown source", page.getWarnings().get(1).getMessage());
+    }
+}